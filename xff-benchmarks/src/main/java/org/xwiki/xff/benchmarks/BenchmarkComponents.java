@@ -0,0 +1,82 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.xwiki.component.embed.EmbeddableComponentManager;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.filter.xff.internal.input.XFFInputFilter;
+
+/**
+ * Components needed to run the XFF filter streams outside of XWiki.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class BenchmarkComponents
+{
+    private BenchmarkComponents()
+    {
+    }
+
+    /**
+     * @return a component manager with all the components found in the class path
+     */
+    public static ComponentManager createComponentManager()
+    {
+        EmbeddableComponentManager componentManager = new EmbeddableComponentManager();
+        componentManager.initialize(BenchmarkComponents.class.getClassLoader());
+        return componentManager;
+    }
+
+    /**
+     * @return a filter ignoring all the events, so that only the reading of the package is measured
+     */
+    public static XFFInputFilter createFilter()
+    {
+        return createFilter(0);
+    }
+
+    /**
+     * @param eventTime is the time (in nanoseconds) spent on each event, to simulate a slow output
+     * @return a filter ignoring all the events after having spent some time on them
+     */
+    public static XFFInputFilter createFilter(final long eventTime)
+    {
+        return (XFFInputFilter) Proxy.newProxyInstance(BenchmarkComponents.class.getClassLoader(),
+            new Class<?>[] {XFFInputFilter.class}, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (eventTime > 0) {
+                        long end = System.nanoTime() + eventTime;
+                        while (System.nanoTime() < end) {
+                            // Busy wait, as an output converting the event would.
+                        }
+                    }
+                    return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.xwiki.xff.core.PackageGenerator;
+
+/**
+ * Synthetic package used by the benchmarks, written by {@link PackageGenerator} in a temporary folder, both as a
+ * folder and as an archive. The content is generated from a fixed seed, so that two runs read the same package.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class BenchmarkPackage
+{
+    private static final long SEED = 42;
+
+    private static final int PROPERTY_SIZE = 32;
+
+    private final Path folder;
+
+    private final Path archive;
+
+    private BenchmarkPackage(Path folder, Path archive)
+    {
+        this.folder = folder;
+        this.archive = archive;
+    }
+
+    /**
+     * Generate the package as a folder and as an archive, in a temporary folder.
+     *
+     * @param spaces is the number of spaces
+     * @param pages is the number of pages of each space
+     * @param objects is the number of objects of each page
+     * @param attachmentSize is the size of the attachment of each page, or 0 for no attachment
+     * @return the generated package
+     * @throws IOException if the package cannot be written
+     */
+    public static BenchmarkPackage generate(int spaces, int pages, int objects, int attachmentSize)
+        throws IOException
+    {
+        return generate(spaces, pages, objects, attachmentSize, 0);
+    }
+
+    /**
+     * Generate the package as a folder and as an archive, in a temporary folder.
+     *
+     * @param spaces is the number of spaces
+     * @param pages is the number of pages of each space
+     * @param objects is the number of objects of each page
+     * @param attachmentSize is the size of the attachment of each page, or 0 for no attachment
+     * @param contentSize is the size of the content of each page, written in its own file, or 0 for the default
+     *            content written in the descriptor
+     * @return the generated package
+     * @throws IOException if the package cannot be written
+     */
+    public static BenchmarkPackage generate(int spaces, int pages, int objects, int attachmentSize, int contentSize)
+        throws IOException
+    {
+        PackageGenerator generator = new PackageGenerator(SEED);
+        generator.setSpaces(spaces, 1);
+        generator.setPages(pages);
+        generator.setObjects(objects);
+        generator.setAttachments(attachmentSize > 0 ? 1 : 0, attachmentSize, attachmentSize);
+        if (contentSize > 0) {
+            generator.setSizes(contentSize, PROPERTY_SIZE, true);
+        }
+
+        Path root = Files.createTempDirectory("xff-benchmark-");
+        Path folder = root.resolve("package");
+        generator.generate(folder);
+        Path archive = root.resolve("package.xff");
+        generator.generate(Files.newOutputStream(archive));
+        return new BenchmarkPackage(folder, archive);
+    }
+
+    /**
+     * @return the package as a folder
+     */
+    public Path getFolder()
+    {
+        return this.folder;
+    }
+
+    /**
+     * @return the package as an archive
+     */
+    public Path getArchive()
+    {
+        return this.archive;
+    }
+
+    /**
+     * Delete the folder and the archive of the package.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    public void delete() throws IOException
+    {
+        Files.walkFileTree(this.folder.getParent(), new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+            {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException
+            {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xwiki.xff.core.XFFExplorer;
+import org.xwiki.xff.core.model.XFF;
+
+/**
+ * Cost of putting the files of a package in the XFF order: by going through the folders of the package
+ * ({@link XFFExplorer}) or by storing the paths in the model when they come in any order (random access reading).
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExplorerBenchmark
+{
+    /**
+     * Number of spaces of the package.
+     */
+    @Param({ "100" })
+    public int spaces;
+
+    /**
+     * Number of pages of each space.
+     */
+    @Param({ "100" })
+    public int pages;
+
+    /**
+     * Number of objects of each page.
+     */
+    @Param({ "19" })
+    public int objects;
+
+    private BenchmarkPackage xffPackage;
+
+    private List<Path> shuffledPaths;
+
+    /**
+     * Generate the package and the paths of its files in a random order.
+     *
+     * @throws IOException if the package cannot be generated
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        this.xffPackage = BenchmarkPackage.generate(this.spaces, this.pages, this.objects, 0);
+        this.shuffledPaths = new ArrayList<Path>();
+        for (Path path : new XFFExplorer(this.xffPackage.getFolder())) {
+            this.shuffledPaths.add(path);
+        }
+        Collections.shuffle(this.shuffledPaths, new Random(this.shuffledPaths.size()));
+    }
+
+    /**
+     * @throws IOException if the package cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        this.xffPackage.delete();
+    }
+
+    /**
+     * @param blackhole receives the paths
+     * @throws IOException if the folders cannot be listed
+     */
+    @Benchmark
+    public void explore(Blackhole blackhole) throws IOException
+    {
+        for (Path path : new XFFExplorer(this.xffPackage.getFolder())) {
+            blackhole.consume(path);
+        }
+    }
+
+    /**
+     * @return the paths in the XFF order
+     */
+    @Benchmark
+    public List<Path> orderModel()
+    {
+        XFF xff = new XFF();
+        for (Path path : this.shuffledPaths) {
+            xff.store(path);
+        }
+        return xff.orderedPaths();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.filter.FilterException;
+import org.xwiki.filter.input.DefaultFileInputSource;
+import org.xwiki.filter.input.DefaultInputStreamInputSource;
+import org.xwiki.filter.input.InputFilterStream;
+import org.xwiki.filter.input.InputFilterStreamFactory;
+import org.xwiki.filter.xff.internal.XFFFilterUtils;
+import org.xwiki.filter.xff.internal.input.XFFInputFilter;
+
+/**
+ * Cost of reading a whole package with the XFF input filter stream, in each of its modes: from a folder, from an
+ * archive file read sequentially or in random access, and from a stream, possibly reading ahead on several threads.
+ * The events are ignored.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReaderBenchmark
+{
+    private static final String SOURCE = "source";
+
+    /**
+     * How the package is read: <tt>directory</tt>, <tt>zip</tt>, <tt>randomAccess</tt> or <tt>stream</tt>.
+     */
+    @Param({ "directory", "zip", "randomAccess", "stream" })
+    public String mode;
+
+    /**
+     * True to read the descriptors with StAX instead of JAXB.
+     */
+    @Param({ "false", "true" })
+    public boolean streamingDescriptors;
+
+    /**
+     * Number of spaces of the package.
+     */
+    @Param({ "10" })
+    public int spaces;
+
+    /**
+     * Number of pages of each space.
+     */
+    @Param({ "100" })
+    public int pages;
+
+    /**
+     * Number of objects of each page.
+     */
+    @Param({ "100" })
+    public int objects;
+
+    /**
+     * Size of the attachment of each page.
+     */
+    @Param({ "16384" })
+    public int attachmentSize;
+
+    /**
+     * Size of the content of each page, written in a property file, or 0 to keep a small content in the descriptors.
+     * Run e.g. with <tt>-p mode=directory -p spaces=1 -p pages=20 -p contentSize=4194304</tt> to measure the reading of
+     * big content files.
+     */
+    @Param({ "0" })
+    public int contentSize;
+
+    /**
+     * Number of threads reading the package ahead of time, for the folders and the archives read sequentially.
+     */
+    @Param({ "1", "4" })
+    public int threads;
+
+    /**
+     * Time (in nanoseconds) spent by the output on each event. Run e.g. with <tt>-p mode=zip -p eventTime=20000</tt>
+     * to measure how much of the reading overlaps with a slow output.
+     */
+    @Param({ "0" })
+    public long eventTime;
+
+    private BenchmarkPackage xffPackage;
+
+    private InputFilterStreamFactory factory;
+
+    private XFFInputFilter filter;
+
+    /**
+     * @throws Exception if the package cannot be generated or the filter stream cannot be found
+     */
+    @Setup
+    public void setUp() throws Exception
+    {
+        this.xffPackage = BenchmarkPackage.generate(this.spaces, this.pages, this.objects, this.attachmentSize,
+            this.contentSize);
+        ComponentManager componentManager = BenchmarkComponents.createComponentManager();
+        this.factory = componentManager.getInstance(InputFilterStreamFactory.class, XFFFilterUtils.ROLEHINT);
+        this.filter = BenchmarkComponents.createFilter(this.eventTime);
+    }
+
+    /**
+     * @throws IOException if the package cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        this.xffPackage.delete();
+    }
+
+    /**
+     * @throws FilterException if the package cannot be read
+     * @throws IOException if the package cannot be closed
+     */
+    @Benchmark
+    public void read() throws FilterException, IOException
+    {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("streamingDescriptors", this.streamingDescriptors);
+        properties.put("threads", this.threads);
+        if ("directory".equals(this.mode)) {
+            properties.put(SOURCE, new DefaultFileInputSource(this.xffPackage.getFolder().toFile()));
+        } else if ("stream".equals(this.mode)) {
+            properties.put(SOURCE,
+                new DefaultInputStreamInputSource(Files.newInputStream(this.xffPackage.getArchive()), true));
+        } else {
+            properties.put(SOURCE, new DefaultFileInputSource(this.xffPackage.getArchive().toFile()));
+            properties.put("randomAccess", "randomAccess".equals(this.mode));
+        }
+        try (InputFilterStream inputFilterStream = this.factory.createInputFilterStream(properties)) {
+            inputFilterStream.read(this.filter);
+        }
+    }
+}
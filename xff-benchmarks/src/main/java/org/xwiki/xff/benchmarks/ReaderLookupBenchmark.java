@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.filter.FilterException;
+import org.xwiki.filter.xff.input.Reader;
+import org.xwiki.filter.xff.input.XFFInputProperties;
+import org.xwiki.filter.xff.internal.input.ReaderPool;
+
+/**
+ * Cost of getting the reader of each object of a package with 100k objects: looked up in the component manager each
+ * time, or reused from a {@link ReaderPool}.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReaderLookupBenchmark
+{
+    private static final int OBJECTS = 100000;
+
+    private static final String HINT = "objects";
+
+    private ComponentManager componentManager;
+
+    /**
+     * Initialize the components.
+     */
+    @Setup
+    public void setUp()
+    {
+        this.componentManager = BenchmarkComponents.createComponentManager();
+    }
+
+    /**
+     * @param blackhole receives the readers
+     * @throws ComponentLookupException if the reader cannot be found
+     */
+    @Benchmark
+    @OperationsPerInvocation(OBJECTS)
+    public void lookup(Blackhole blackhole) throws ComponentLookupException
+    {
+        for (int i = 0; i < OBJECTS; i++) {
+            blackhole.consume(this.componentManager.getInstance(Reader.class, HINT));
+        }
+    }
+
+    /**
+     * @param blackhole receives the readers
+     * @throws FilterException if the reader cannot be found
+     */
+    @Benchmark
+    @OperationsPerInvocation(OBJECTS)
+    public void pool(Blackhole blackhole) throws FilterException
+    {
+        ReaderPool readerPool = new ReaderPool(this.componentManager, new XFFInputProperties());
+        for (int i = 0; i < OBJECTS; i++) {
+            Reader reader = readerPool.acquire(HINT);
+            blackhole.consume(reader);
+            readerPool.release(HINT, reader);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xwiki.filter.xff.internal.JAXBContextRegistry;
+import org.xwiki.filter.xff.internal.StAXDescriptorReader;
+import org.xwiki.rest.model.jaxb.Object;
+import org.xwiki.rest.model.jaxb.Page;
+
+/**
+ * Cost of reading one descriptor: with a new JAXB context for each file (as the readers used to do), with the shared
+ * contexts of {@link JAXBContextRegistry}, and with {@link StAXDescriptorReader}.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UnmarshalBenchmark
+{
+    private static final String PAGE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<page xmlns=\"http://www.xwiki.org\">\n  <title>Title of Space.Page</title>\n"
+        + "  <parent>Space.WebHome</parent>\n  <content>This is content of Space.Page.</content>\n</page>\n";
+
+    private static final String OBJECT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<object xmlns=\"http://www.xwiki.org\">\n  <className>XWiki.StyleSheetExtension</className>\n"
+        + "  <property name=\"cache\">\n    <value>long</value>\n  </property>\n"
+        + "  <property name=\"name\">\n    <value>theme</value>\n  </property>\n"
+        + "  <property name=\"use\">\n    <value>onDemand</value>\n  </property>\n</object>\n";
+
+    /**
+     * Kind of descriptor: <tt>page</tt> or <tt>object</tt>.
+     */
+    @Param({ "page", "object" })
+    public String descriptor;
+
+    private byte[] content;
+
+    private Class<?> type;
+
+    /**
+     * Prepare the descriptor.
+     */
+    @Setup
+    public void setUp()
+    {
+        boolean page = "page".equals(this.descriptor);
+        this.content = (page ? PAGE : OBJECT).getBytes(StandardCharsets.UTF_8);
+        this.type = page ? Page.class : Object.class;
+    }
+
+    /**
+     * @return the descriptor
+     * @throws JAXBException if the descriptor cannot be read
+     */
+    @Benchmark
+    public java.lang.Object newContext() throws JAXBException
+    {
+        return JAXBContext.newInstance(this.type).createUnmarshaller()
+            .unmarshal(new ByteArrayInputStream(this.content));
+    }
+
+    /**
+     * @return the descriptor
+     * @throws JAXBException if the descriptor cannot be read
+     */
+    @Benchmark
+    public java.lang.Object sharedContext() throws JAXBException
+    {
+        return JAXBContextRegistry.unmarshal(new ByteArrayInputStream(this.content), this.type);
+    }
+
+    /**
+     * @return the descriptor
+     * @throws XMLStreamException if the descriptor cannot be read
+     */
+    @Benchmark
+    public java.lang.Object streaming() throws XMLStreamException
+    {
+        return StAXDescriptorReader.read(new ByteArrayInputStream(this.content), this.type);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xwiki.xff.core.XFFZipper;
+
+/**
+ * Cost of writing a package as an archive with {@link XFFZipper}.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZipperBenchmark
+{
+    /**
+     * Number of spaces of the package.
+     */
+    @Param({ "20" })
+    public int spaces;
+
+    /**
+     * Number of pages of each space.
+     */
+    @Param({ "100" })
+    public int pages;
+
+    /**
+     * Number of objects of each page.
+     */
+    @Param({ "5" })
+    public int objects;
+
+    /**
+     * Size of the attachment of each page.
+     */
+    @Param({ "0", "65536" })
+    public int attachmentSize;
+
+    /**
+     * Number of threads compressing the files.
+     */
+    @Param({ "1", "4" })
+    public int threads;
+
+    private BenchmarkPackage xffPackage;
+
+    private Path archive;
+
+    /**
+     * @throws IOException if the package cannot be generated
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        this.xffPackage = BenchmarkPackage.generate(this.spaces, this.pages, this.objects, this.attachmentSize);
+        this.archive = Files.createTempFile("xff-benchmark-", ".xff");
+    }
+
+    /**
+     * @throws IOException if the package cannot be deleted
+     */
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        this.xffPackage.delete();
+        Files.deleteIfExists(this.archive);
+    }
+
+    /**
+     * @return the size of the archive
+     * @throws IOException if the archive cannot be written
+     */
+    @Benchmark
+    public long zip() throws IOException
+    {
+        XFFZipper zipper = new XFFZipper(this.xffPackage.getFolder());
+        zipper.setThreads(this.threads);
+        zipper.xff(this.archive);
+        return zipper.getCompressedSize();
+    }
+}
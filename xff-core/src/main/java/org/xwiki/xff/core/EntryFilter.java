@@ -0,0 +1,252 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Select the files of a package with include and exclude patterns on their path relative to the root of the package,
+ * e.g. <tt>wikis/xwiki/spaces/Sandbox/**</tt>. In a pattern, <tt>*</tt> matches any part of a folder or file name,
+ * <tt>?</tt> matches one character of a name and <tt>**</tt> matches any number of folders. A file is selected when
+ * it matches one of the include patterns (or there are none) and none of the exclude patterns. Folders can be
+ * checked too, so that the folders which cannot contain any selected file are not even listed.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class EntryFilter
+{
+    /**
+     * The filter selecting all the files.
+     */
+    public static final EntryFilter ALL = new EntryFilter(null, null);
+
+    private static final char SEPARATOR = '/';
+
+    private static final String ANY_FOLDERS = "**";
+
+    private final List<Glob> includes;
+
+    private final List<Glob> excludes;
+
+    /**
+     * A compiled pattern, as a whole and name by name.
+     */
+    private static final class Glob
+    {
+        private final Pattern pattern;
+
+        /**
+         * The pattern of each name, null for <tt>**</tt>.
+         */
+        private final Pattern[] names;
+
+        private final boolean subtree;
+
+        private Glob(String glob)
+        {
+            String[] globNames = glob.split(String.valueOf(SEPARATOR), -1);
+            this.names = new Pattern[globNames.length];
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < globNames.length; i++) {
+                if (ANY_FOLDERS.equals(globNames[i])) {
+                    // Any number of folders, including none.
+                    if (i == globNames.length - 1) {
+                        regex.append(i > 0 ? "(?:/.*)?" : ".*");
+                    } else {
+                        regex.append(i > 0 ? "(?:/[^/]+)*" : "(?:[^/]+/)*");
+                    }
+                } else {
+                    // A leading ** already ends with a separator.
+                    if (i > 1 || (i == 1 && !ANY_FOLDERS.equals(globNames[0]))) {
+                        regex.append(SEPARATOR);
+                    }
+                    String nameRegex = toRegex(globNames[i]);
+                    this.names[i] = Pattern.compile(nameRegex);
+                    regex.append(nameRegex);
+                }
+            }
+            this.pattern = Pattern.compile(regex.toString());
+            this.subtree = ANY_FOLDERS.equals(globNames[globNames.length - 1]);
+        }
+
+        private boolean matches(String path)
+        {
+            return this.pattern.matcher(path).matches();
+        }
+
+        /**
+         * @return true if a file in the folder might match the pattern
+         */
+        private boolean matchesInside(String[] folderNames)
+        {
+            for (int i = 0; i < folderNames.length; i++) {
+                if (i >= this.names.length) {
+                    return false;
+                }
+                if (this.names[i] == null) {
+                    return true;
+                }
+                if (!this.names[i].matcher(folderNames[i]).matches()) {
+                    return false;
+                }
+            }
+            return folderNames.length < this.names.length;
+        }
+
+        private static String toRegex(String name)
+        {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : name.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '*' ? "[^/]*" : "[^/]");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return regex.toString();
+        }
+    }
+
+    /**
+     * @param includes are the patterns of the files to select, all the files being selected when null or empty
+     * @param excludes are the patterns of the files to skip, possibly null
+     */
+    public EntryFilter(Collection<String> includes, Collection<String> excludes)
+    {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+    }
+
+    private static List<Glob> compile(Collection<String> globs)
+    {
+        if (globs == null || globs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Glob> compiled = new ArrayList<Glob>(globs.size());
+        for (String glob : globs) {
+            String trimmed = glob.trim();
+            if (!trimmed.isEmpty()) {
+                compiled.add(new Glob(trimmed));
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * @return true if all the files are selected
+     */
+    public boolean isAll()
+    {
+        return this.includes.isEmpty() && this.excludes.isEmpty();
+    }
+
+    /**
+     * @param name is the path of a file relative to the root of the package, with <tt>/</tt> as separator (e.g. the
+     *            name of a zip entry)
+     * @return true if the file is selected
+     */
+    public boolean accept(String name)
+    {
+        if (isAll()) {
+            return true;
+        }
+        boolean included = this.includes.isEmpty();
+        for (Glob include : this.includes) {
+            if (include.matches(name)) {
+                included = true;
+                break;
+            }
+        }
+        if (!included) {
+            return false;
+        }
+        for (Glob exclude : this.excludes) {
+            if (exclude.matches(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param path is the path of a file relative to the root of the package
+     * @return true if the file is selected
+     */
+    public boolean accept(Path path)
+    {
+        return isAll() || accept(toName(path));
+    }
+
+    /**
+     * Tell if a folder might contain selected files, which is not the case when it is excluded as a whole (by a
+     * pattern ending with <tt>/**</tt>) or when none of the include patterns can match a file inside it.
+     *
+     * @param path is the path of a folder relative to the root of the package
+     * @return false if none of the files of the folder can be selected
+     */
+    public boolean acceptFolder(Path path)
+    {
+        if (isAll() || path.getNameCount() == 0 || path.toString().isEmpty()) {
+            return true;
+        }
+        String name = toName(path);
+        for (Glob exclude : this.excludes) {
+            if (exclude.subtree && exclude.matches(name)) {
+                return false;
+            }
+        }
+        if (this.includes.isEmpty()) {
+            return true;
+        }
+        String[] folderNames = name.split(String.valueOf(SEPARATOR));
+        for (Glob include : this.includes) {
+            if (include.matchesInside(folderNames)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toName(Path path)
+    {
+        StringBuilder name = new StringBuilder();
+        for (Path element : path) {
+            if (name.length() > 0) {
+                name.append(SEPARATOR);
+            }
+            name.append(element.toString());
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.xwiki.xff.core.model.Attachment;
+import org.xwiki.xff.core.model.Page;
+import org.xwiki.xff.core.model.Property;
+import org.xwiki.xff.core.model.Space;
+import org.xwiki.xff.core.model.Wiki;
+
+/**
+ * Generate synthetic packages, to test or benchmark the tools reading packages on realistic volumes. The package is
+ * made of wikis containing nested spaces, each space containing pages with objects and attachments, and each wiki
+ * having a <tt>Classes</tt> space with the classes of the objects. The files are written one at a time in the XFF
+ * order, either in a folder or directly in an archive, so that the package is never kept in memory. The content only
+ * depends on the seed and the settings: the same generator always writes the same package.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class PackageGenerator
+{
+    private static final String SEPARATOR = "/";
+
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+    private static final String XMLNS = " xmlns=\"http://www.xwiki.org\">\n";
+
+    private static final String CLASSES_SPACE = "Classes";
+
+    private static final String VALUE = "    <value>";
+
+    private static final String PROPERTY_END = "  </property>\n";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int WORD_SIZE = 8;
+
+    private static final int LETTERS = 26;
+
+    private final long seed;
+
+    private int wikis = 1;
+
+    private int spaces = 2;
+
+    private int spaceDepth = 1;
+
+    private int pages = 5;
+
+    private int classes = 1;
+
+    private int classProperties = 3;
+
+    private int objects = 2;
+
+    private int contentSize = 1024;
+
+    private int propertySize = 32;
+
+    private boolean propertyFiles;
+
+    private int attachments;
+
+    private long minAttachmentSize;
+
+    private long maxAttachmentSize;
+
+    private long entryCount;
+
+    private long size;
+
+    /**
+     * Where the files of the package are written.
+     */
+    private interface Output
+    {
+        void write(String name, byte[] content) throws IOException;
+
+        void write(String name, long length, Random random) throws IOException;
+    }
+
+    /**
+     * @param seed is the seed of the random content, the same seed giving the same package
+     */
+    public PackageGenerator(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @param wikis is the number of wikis, 1 by default
+     */
+    public void setWikis(int wikis)
+    {
+        this.wikis = wikis;
+    }
+
+    /**
+     * @param spaces is the number of spaces of each wiki, and of sub-spaces of each space when the spaces are nested,
+     *            2 by default
+     * @param depth is the number of levels of nested spaces, 1 by default (no nested spaces)
+     */
+    public void setSpaces(int spaces, int depth)
+    {
+        this.spaces = spaces;
+        this.spaceDepth = depth;
+    }
+
+    /**
+     * @param pages is the number of pages of each space, 5 by default
+     */
+    public void setPages(int pages)
+    {
+        this.pages = pages;
+    }
+
+    /**
+     * @param classes is the number of classes of each wiki, 1 by default
+     * @param properties is the number of properties of each class, 3 by default
+     */
+    public void setClasses(int classes, int properties)
+    {
+        this.classes = classes;
+        this.classProperties = properties;
+    }
+
+    /**
+     * @param objects is the number of objects of each page, 2 by default, their classes being used in turn
+     */
+    public void setObjects(int objects)
+    {
+        this.objects = objects;
+    }
+
+    /**
+     * @param contentSize is the number of characters of the content of the pages, 1024 by default
+     * @param propertySize is the number of characters of the values of the object properties, 32 by default
+     * @param propertyFiles true to write the content of the pages and the values of the object properties in their
+     *            own files (e.g. <tt>properties/content.xwiki21</tt>) instead of in the descriptors
+     */
+    public void setSizes(int contentSize, int propertySize, boolean propertyFiles)
+    {
+        this.contentSize = contentSize;
+        this.propertySize = propertySize;
+        this.propertyFiles = propertyFiles;
+    }
+
+    /**
+     * Set the attachments of the pages, none by default. The sizes are spread on a logarithmic scale between the
+     * minimum and the maximum, so that there are many small attachments and a few big ones.
+     *
+     * @param attachments is the number of attachments of each page
+     * @param minSize is the size of the smallest attachments, in bytes
+     * @param maxSize is the size of the biggest attachments, in bytes
+     */
+    public void setAttachments(int attachments, long minSize, long maxSize)
+    {
+        this.attachments = attachments;
+        this.minAttachmentSize = minSize;
+        this.maxAttachmentSize = maxSize;
+    }
+
+    /**
+     * Write the package in a folder.
+     *
+     * @param folder is the root folder of the package, created if needed
+     * @throws IOException if a file cannot be written
+     */
+    public void generate(final Path folder) throws IOException
+    {
+        generate(new Output()
+        {
+            @Override
+            public void write(String name, byte[] content) throws IOException
+            {
+                Path path = createFile(name);
+                Files.write(path, content);
+            }
+
+            @Override
+            public void write(String name, long length, Random random) throws IOException
+            {
+                try (OutputStream outputStream = Files.newOutputStream(createFile(name))) {
+                    writeBytes(outputStream, length, random);
+                }
+            }
+
+            private Path createFile(String name) throws IOException
+            {
+                Path path = folder.resolve(name);
+                Files.createDirectories(path.getParent());
+                return path;
+            }
+        });
+    }
+
+    /**
+     * Write the package as an archive.
+     *
+     * @param outputStream is where the archive is written, closed once the archive is complete
+     * @throws IOException if the archive cannot be written
+     */
+    public void generate(OutputStream outputStream) throws IOException
+    {
+        try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE))) {
+            generate(new Output()
+            {
+                @Override
+                public void write(String name, byte[] content) throws IOException
+                {
+                    zos.putNextEntry(createEntry(name));
+                    zos.write(content);
+                    zos.closeEntry();
+                }
+
+                @Override
+                public void write(String name, long length, Random random) throws IOException
+                {
+                    zos.putNextEntry(createEntry(name));
+                    writeBytes(zos, length, random);
+                    zos.closeEntry();
+                }
+
+                private ZipEntry createEntry(String name)
+                {
+                    ZipEntry entry = new ZipEntry(name);
+                    // A fixed time, so that the archive only depends on the seed.
+                    entry.setTime(0);
+                    return entry;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of files of the last generated package
+     */
+    public long getEntryCount()
+    {
+        return this.entryCount;
+    }
+
+    /**
+     * @return the size of the files of the last generated package, in bytes
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    private void generate(Output output) throws IOException
+    {
+        this.entryCount = 0;
+        this.size = 0;
+        Random random = new Random(this.seed);
+        List<String> wikiNames = names("wiki", this.wikis);
+        for (String wiki : wikiNames) {
+            String wikiPath = Wiki.WIKI_HINT + SEPARATOR + wiki;
+            write(output, wikiPath + SEPARATOR + Wiki.WIKI_FILENAME,
+                "<wiki" + XMLNS + "  <id>" + wiki + "</id>\n  <name>" + wiki + "</name>\n</wiki>\n");
+            Map<String, String> spaceNames = new TreeMap<String, String>();
+            for (String space : names("Space", this.spaces)) {
+                spaceNames.put(space, space);
+            }
+            if (this.classes > 0) {
+                spaceNames.put(CLASSES_SPACE, null);
+            }
+            for (Map.Entry<String, String> space : spaceNames.entrySet()) {
+                String spacePath = wikiPath + SEPARATOR + Space.SPACE_HINT + SEPARATOR + space.getKey();
+                if (space.getValue() == null) {
+                    generateClasses(output, wiki, spacePath);
+                } else {
+                    generateSpace(output, random, wiki, space.getKey(), spacePath, 1);
+                }
+            }
+        }
+    }
+
+    private void generateClasses(Output output, String wiki, String spacePath) throws IOException
+    {
+        writeSpace(output, wiki, CLASSES_SPACE, spacePath);
+        for (String page : names("Class", this.classes)) {
+            String classPath = spacePath + SEPARATOR + Page.PAGE_HINT + SEPARATOR + page + SEPARATOR
+                + org.xwiki.xff.core.model.Class.CLASS_HINT + SEPARATOR;
+            StringBuilder xml = new StringBuilder(XML_HEADER).append("<class").append(XMLNS);
+            xml.append("  <id>").append(CLASSES_SPACE).append('.').append(page).append("</id>\n");
+            xml.append("  <name>").append(CLASSES_SPACE).append('.').append(page).append("</name>\n");
+            for (String property : names("property", this.classProperties)) {
+                xml.append("  <property name=\"").append(property).append("\" type=\"String\">\n");
+                xml.append("    <attribute name=\"name\" value=\"").append(property).append("\"/>\n");
+                xml.append("    <attribute name=\"prettyName\" value=\"").append(property).append("\"/>\n");
+                xml.append(PROPERTY_END);
+            }
+            xml.append("</class>\n");
+            // The page descriptor is written before the class.
+            write(output, spacePath + SEPARATOR + Page.PAGE_HINT + SEPARATOR + page + SEPARATOR
+                + Page.PAGE_FILENAME, XML_HEADER + "<page" + XMLNS + "  <title>" + page + "</title>\n</page>\n");
+            write(output, classPath + org.xwiki.xff.core.model.Class.CLASS_FILENAME, xml.toString());
+        }
+    }
+
+    private void generateSpace(Output output, Random random, String wiki, String space, String spacePath, int level)
+        throws IOException
+    {
+        writeSpace(output, wiki, space, spacePath);
+        for (String page : names("Page", this.pages)) {
+            generatePage(output, random, spacePath + SEPARATOR + Page.PAGE_HINT + SEPARATOR + page);
+        }
+        if (level < this.spaceDepth) {
+            for (String child : names("Space", this.spaces)) {
+                generateSpace(output, random, wiki, child,
+                    spacePath + SEPARATOR + Space.SPACE_HINT + SEPARATOR + child, level + 1);
+            }
+        }
+    }
+
+    private void writeSpace(Output output, String wiki, String space, String spacePath) throws IOException
+    {
+        write(output, spacePath + SEPARATOR + Space.SPACE_FILENAME, "<space" + XMLNS + "  <id>" + wiki + ':' + space
+            + "</id>\n  <wiki>" + wiki + "</wiki>\n  <name>" + space + "</name>\n</space>\n");
+    }
+
+    private void generatePage(Output output, Random random, String pagePath) throws IOException
+    {
+        String content = text(random, this.contentSize);
+        StringBuilder xml = new StringBuilder(XML_HEADER).append("<page").append(XMLNS);
+        xml.append("  <title>").append(pagePath.substring(pagePath.lastIndexOf('/') + 1)).append("</title>\n");
+        if (!this.propertyFiles) {
+            xml.append("  <content>").append(content).append("</content>\n");
+        }
+        xml.append("</page>\n");
+        write(output, pagePath + SEPARATOR + Page.PAGE_FILENAME, xml.toString());
+        if (this.propertyFiles) {
+            write(output, pagePath + SEPARATOR + Property.PROPERTY_HINT + SEPARATOR + "content.xwiki21", content);
+        }
+
+        for (String attachment : names("attachment", this.attachments)) {
+            output.write(pagePath + SEPARATOR + Attachment.ATTACHMENTS_HINT + SEPARATOR + attachment + ".bin",
+                attachmentSize(random), random);
+        }
+
+        // The objects are ordered on "className/number", as in XFFExplorer.
+        Map<String, String> objectPaths = new TreeMap<String, String>();
+        for (int i = 0; i < this.objects; i++) {
+            String className = CLASSES_SPACE + ".Class" + pad(i % Math.max(this.classes, 1), this.classes);
+            objectPaths.put(className + SEPARATOR + (i / Math.max(this.classes, 1)), className);
+        }
+        for (Map.Entry<String, String> object : objectPaths.entrySet()) {
+            generateObject(output, random,
+                pagePath + SEPARATOR + org.xwiki.xff.core.model.Object.OBJECT_HINT + SEPARATOR + object.getKey(),
+                object.getValue());
+        }
+    }
+
+    private void generateObject(Output output, Random random, String objectPath, String className)
+        throws IOException
+    {
+        List<String> properties = names("property", this.classProperties);
+        List<String> values = new ArrayList<String>(properties.size());
+        StringBuilder xml = new StringBuilder(XML_HEADER).append("<object").append(XMLNS);
+        xml.append("  <className>").append(className).append("</className>\n");
+        for (String property : properties) {
+            String value = text(random, this.propertySize);
+            values.add(value);
+            xml.append("  <property name=\"").append(property).append("\">\n");
+            xml.append(VALUE).append(this.propertyFiles ? "" : value).append("</value>\n");
+            xml.append(PROPERTY_END);
+        }
+        xml.append("</object>\n");
+        write(output, objectPath + SEPARATOR + org.xwiki.xff.core.model.Object.OBJECT_FILENAME, xml.toString());
+        if (this.propertyFiles) {
+            for (int i = 0; i < properties.size(); i++) {
+                write(output, objectPath + SEPARATOR + Property.PROPERTY_HINT + SEPARATOR + properties.get(i)
+                    + ".txt", values.get(i));
+            }
+        }
+    }
+
+    private void write(Output output, String name, String content) throws IOException
+    {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        output.write(name, bytes);
+        this.entryCount++;
+        this.size += bytes.length;
+    }
+
+    private void writeBytes(OutputStream outputStream, long length, Random random) throws IOException
+    {
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(length, 1))];
+        long remaining = length;
+        while (remaining > 0) {
+            random.nextBytes(buffer);
+            int count = (int) Math.min(buffer.length, remaining);
+            outputStream.write(buffer, 0, count);
+            remaining -= count;
+        }
+        this.entryCount++;
+        this.size += length;
+    }
+
+    private long attachmentSize(Random random)
+    {
+        double ratio = random.nextDouble();
+        if (this.maxAttachmentSize <= this.minAttachmentSize) {
+            return this.minAttachmentSize;
+        }
+        double min = Math.log(Math.max(this.minAttachmentSize, 1));
+        double max = Math.log(this.maxAttachmentSize);
+        return Math.max(this.minAttachmentSize, Math.round(Math.exp(min + ratio * (max - min))));
+    }
+
+    /**
+     * Random words of lower case letters, which can be written as is in the XML descriptors.
+     */
+    private static String text(Random random, int length)
+    {
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = i % (WORD_SIZE + 1) == WORD_SIZE ? ' ' : (char) ('a' + random.nextInt(LETTERS));
+        }
+        return new String(text);
+    }
+
+    /**
+     * The names of some elements, in the XFF order (the order of the names).
+     */
+    private static List<String> names(String prefix, int count)
+    {
+        List<String> names = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + pad(i, count));
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Pad the numbers to the same length, so that the elements are in the same order as their number.
+     */
+    private static String pad(int number, int count)
+    {
+        String digits = String.valueOf(number);
+        int length = String.valueOf(Math.max(count - 1, 0)).length();
+        StringBuilder padded = new StringBuilder(length);
+        for (int i = digits.length(); i < length; i++) {
+            padded.append('0');
+        }
+        return padded.append(digits).toString();
+    }
+}
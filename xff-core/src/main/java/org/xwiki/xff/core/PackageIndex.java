@@ -0,0 +1,233 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.xwiki.xff.core.model.Page;
+import org.xwiki.xff.core.model.Space;
+import org.xwiki.xff.core.model.Wiki;
+
+/**
+ * Index of a XFF package, kept in a file next to it, telling where the entries of each wiki, space and page are in
+ * the archive. Since the entries of a page are written one after the other, a page is described by the range of
+ * bytes of its entries, and a wiki or a space by the range of its descriptor. The index is a text file sorted on the
+ * paths of the wikis, spaces and pages, so that {@link PackageIndexReader} can find a page with a binary search
+ * without reading the whole index nor parsing the central directory of the archive.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class PackageIndex
+{
+    /**
+     * Extension of the index file, added to the name of the package.
+     */
+    public static final String EXTENSION = ".index";
+
+    static final String HEADER = "xff-index 1 ";
+
+    static final char SEPARATOR = '\t';
+
+    private static final char PATH_SEPARATOR = '/';
+
+    /**
+     * Ranges of the wikis, spaces and pages, by path.
+     */
+    private final Map<String, Range> ranges = new TreeMap<String, Range>();
+
+    /**
+     * Paths whose entries are not contiguous in the archive, and which cannot be indexed.
+     */
+    private final Set<String> scattered = new HashSet<String>();
+
+    private String lastPath;
+
+    /**
+     * A range of bytes of the archive, containing complete entries (local headers and data).
+     */
+    public static final class Range
+    {
+        private final long offset;
+
+        private long length;
+
+        /**
+         * @param offset is the position of the first local header of the range
+         * @param length is the number of bytes of the range
+         */
+        public Range(long offset, long length)
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @return the position of the first local header of the range
+         */
+        public long getOffset()
+        {
+            return this.offset;
+        }
+
+        /**
+         * @return the number of bytes of the range
+         */
+        public long getLength()
+        {
+            return this.length;
+        }
+    }
+
+    /**
+     * @param packagePath is a XFF package
+     * @return the default path of its index, next to it
+     */
+    public static Path getIndexPath(Path packagePath)
+    {
+        return packagePath.resolveSibling(packagePath.getFileName() + EXTENSION);
+    }
+
+    /**
+     * @param archivePath is a XFF package
+     * @return the first line of its index, with the size of the archive and the position and the CRC-32 of its
+     *         central directory, which change as soon as an entry of the archive is changed
+     * @throws IOException if the archive cannot be read or is not a zip archive
+     */
+    static String getHeader(Path archivePath) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(archivePath, StandardOpenOption.READ)) {
+            ZipArchiveIndex.Directory directory = ZipArchiveIndex.locate(channel);
+            return HEADER + channel.size() + ' ' + directory.getOffset() + ' '
+                + Long.toHexString(ZipArchiveIndex.getChecksum(channel, directory));
+        }
+    }
+
+    /**
+     * Find the wiki, space or page an entry belongs to.
+     *
+     * @param name is the name of an entry
+     * @return the path of the deepest wiki, space or page containing the entry (e.g.
+     *         <tt>wikis/xwiki/spaces/Space/pages/Page</tt>), or null if the entry is outside of any wiki or space
+     */
+    public static String getOwner(String name)
+    {
+        int end = 0;
+        int position = 0;
+        while (true) {
+            int hintEnd = name.indexOf(PATH_SEPARATOR, position);
+            if (hintEnd < 0 || !isElementHint(name.substring(position, hintEnd))) {
+                break;
+            }
+            int idEnd = name.indexOf(PATH_SEPARATOR, hintEnd + 1);
+            if (idEnd < 0) {
+                break;
+            }
+            end = idEnd;
+            position = idEnd + 1;
+        }
+        return end > 0 ? name.substring(0, end) : null;
+    }
+
+    private static boolean isElementHint(String hint)
+    {
+        return Wiki.WIKI_HINT.equals(hint) || Space.SPACE_HINT.equals(hint) || Page.PAGE_HINT.equals(hint);
+    }
+
+    /**
+     * @param path is the path of a wiki, space or page
+     * @return the paths of the wikis and spaces containing it, from the root one
+     */
+    public static List<String> getAncestors(String path)
+    {
+        List<String> ancestors = new ArrayList<String>();
+        int position = path.indexOf(PATH_SEPARATOR);
+        while (position > 0) {
+            position = path.indexOf(PATH_SEPARATOR, position + 1);
+            if (position < 0) {
+                break;
+            }
+            ancestors.add(path.substring(0, position));
+            position = path.indexOf(PATH_SEPARATOR, position + 1);
+        }
+        return ancestors;
+    }
+
+    /**
+     * Add an entry, in the order of the archive.
+     *
+     * @param name is the name of the entry
+     * @param offset is the position of the local header of the entry
+     * @param end is the position just after the data of the entry
+     */
+    public void add(String name, long offset, long end)
+    {
+        String path = getOwner(name);
+        if (path == null || path.indexOf(SEPARATOR) >= 0 || path.indexOf('\n') >= 0 || this.scattered.contains(path)) {
+            return;
+        }
+        Range range = this.ranges.get(path);
+        if (range == null) {
+            this.ranges.put(path, new Range(offset, end - offset));
+        } else if (path.equals(this.lastPath)) {
+            range.length = end - range.offset;
+        } else {
+            // The entries of this path are not contiguous, they have to be found from the central directory.
+            this.ranges.remove(path);
+            this.scattered.add(path);
+        }
+        this.lastPath = path;
+    }
+
+    /**
+     * @param path is the index file to write
+     * @param archivePath is the indexed archive, whose size and central directory are recorded to know if the index
+     *            is still valid when reading it
+     * @throws IOException if the index cannot be written
+     */
+    public void write(Path path, Path archivePath) throws IOException
+    {
+        String header = getHeader(archivePath);
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(header);
+            writer.write('\n');
+            for (Map.Entry<String, Range> range : this.ranges.entrySet()) {
+                writer.write(range.getKey());
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(range.getValue().getOffset()));
+                writer.write(SEPARATOR);
+                writer.write(Long.toString(range.getValue().getLength()));
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipException;
+
+/**
+ * Find the wikis, spaces and pages in the index of a package (see {@link PackageIndex}), with a binary search on the
+ * sorted lines of the index: only a few lines are read whatever the size of the package.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class PackageIndexReader implements Closeable
+{
+    private static final int LINE_BUFFER_SIZE = 256;
+
+    private static final int FIELD_COUNT = 3;
+
+    private final FileChannel channel;
+
+    /**
+     * Position of the first line after the header.
+     */
+    private final long bodyOffset;
+
+    private final long size;
+
+    private PackageIndexReader(FileChannel channel, long bodyOffset) throws IOException
+    {
+        this.channel = channel;
+        this.bodyOffset = bodyOffset;
+        this.size = channel.size();
+    }
+
+    /**
+     * Open the index of a package.
+     *
+     * @param indexPath is the index file
+     * @param archivePath is the package, the index being ignored when it has been written for another version of the
+     *            package (the size of the package or its central directory are different)
+     * @return the index, or null if it does not exist or does not match the package
+     * @throws IOException if the index or the package cannot be read
+     */
+    public static PackageIndexReader open(Path indexPath, Path archivePath) throws IOException
+    {
+        if (!Files.isRegularFile(indexPath)) {
+            return null;
+        }
+        String archiveHeader;
+        try {
+            archiveHeader = PackageIndex.getHeader(archivePath);
+        } catch (ZipException e) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ);
+        try {
+            String header = readLine(channel, 0);
+            if (header == null || !header.equals(archiveHeader)) {
+                channel.close();
+                return null;
+            }
+            return new PackageIndexReader(channel, header.getBytes(StandardCharsets.UTF_8).length + 1);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param path is the path of a wiki, space or page in the package (e.g.
+     *            <tt>wikis/xwiki/spaces/Space/pages/Page</tt>)
+     * @return the range of the archive containing its entries (only the descriptor for a wiki or a space), or null if
+     *         it's not in the index
+     * @throws IOException if the index cannot be read
+     */
+    public PackageIndex.Range find(String path) throws IOException
+    {
+        // The lines starting in [low, high) are the ones which can still match, low being always the start of a line.
+        long low = this.bodyOffset;
+        long high = this.size;
+        while (low < high) {
+            long middle = low + (high - low) / 2;
+            long lineOffset = middle == low ? low : nextLine(middle - 1);
+            if (lineOffset >= high) {
+                high = middle;
+                continue;
+            }
+            String line = readLine(this.channel, lineOffset);
+            if (line == null) {
+                return null;
+            }
+            int separator = line.indexOf(PackageIndex.SEPARATOR);
+            int comparison = (separator < 0 ? line : line.substring(0, separator)).compareTo(path);
+            if (comparison == 0) {
+                return parseRange(line);
+            } else if (comparison < 0) {
+                low = lineOffset + line.getBytes(StandardCharsets.UTF_8).length + 1;
+            } else {
+                high = lineOffset;
+            }
+        }
+        return null;
+    }
+
+    private static PackageIndex.Range parseRange(String line) throws IOException
+    {
+        String[] fields = line.split(String.valueOf(PackageIndex.SEPARATOR));
+        if (fields.length != FIELD_COUNT) {
+            throw new IOException(String.format("Invalid line in the package index [%s].", line));
+        }
+        try {
+            return new PackageIndex.Range(Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+        } catch (NumberFormatException e) {
+            throw new IOException(String.format("Invalid line in the package index [%s].", line), e);
+        }
+    }
+
+    /**
+     * @return the position of the line following the given position, or the end of the index
+     */
+    private long nextLine(long position) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(LINE_BUFFER_SIZE);
+        long current = position;
+        while (current < this.size) {
+            buffer.clear();
+            int count = this.channel.read(buffer, current);
+            if (count <= 0) {
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                if (buffer.get(i) == '\n') {
+                    return current + i + 1;
+                }
+            }
+            current += count;
+        }
+        return this.size;
+    }
+
+    /**
+     * @return the line starting at the given position, without the line feed, or null at the end of the index
+     */
+    private static String readLine(FileChannel channel, long position) throws IOException
+    {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(LINE_BUFFER_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(LINE_BUFFER_SIZE);
+        long current = position;
+        while (true) {
+            buffer.clear();
+            int count = channel.read(buffer, current);
+            if (count <= 0) {
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                if (buffer.get(i) == '\n') {
+                    line.write(buffer.array(), 0, i);
+                    return new String(line.toByteArray(), StandardCharsets.UTF_8);
+                }
+            }
+            line.write(buffer.array(), 0, count);
+            current += count;
+        }
+        return line.size() > 0 ? new String(line.toByteArray(), StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.channel.close();
+    }
+}
@@ -20,44 +20,104 @@
 package org.xwiki.xff.core;
 
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import org.xwiki.xff.core.model.XFF;
+import org.xwiki.xff.core.model.Attachment;
+import org.xwiki.xff.core.model.Page;
+import org.xwiki.xff.core.model.Property;
+import org.xwiki.xff.core.model.Space;
+import org.xwiki.xff.core.model.Wiki;
 
 /**
  * This explorer will go through the folders of the package and provide interface to get the files in a correct order.
- * 
+ * The folders are listed one at a time, only when the iteration reaches them, so that the first files are available
+ * immediately and only the folders on the way to the current file are kept in memory.
+ *
  * @version $Id$
  * @since 7.1
  */
-public class XFFExplorer extends SimpleFileVisitor<Path> implements Iterator<Path>, Iterable<Path>
+public class XFFExplorer implements Iterator<Path>, Iterable<Path>
 {
+    /**
+     * Separator used to build the sort key of objects, same as the one of the paths.
+     */
+    private static final String SEPARATOR = "/";
+
     /**
      * Root path to remind because XFF is only working with relative paths.
      */
     private Path rootPath;
 
     /**
-     * List of paths of the XFF package (only referring to files).
+     * Content of the folders being explored, from the deepest one to the root one. Each item is either the relative
+     * path of a file or a {@link Folder} which has not been listed yet.
+     */
+    private Deque<Iterator<Object>> stack;
+
+    /**
+     * Next path to give back, or null if there are no more files.
+     */
+    private Path nextPath;
+
+    /**
+     * Selection of the files, the folders which cannot contain any selected file being skipped without being listed.
      */
-    private List<Path> paths;
+    private EntryFilter filter = EntryFilter.ALL;
 
     /**
-     * Current index, used for the iterator.
+     * Kind of folders in the package, which define the files and sub-folders taken into account and their order.
      */
-    private int index = -1;
+    private enum Kind
+    {
+        /** The root of the package. */
+        ROOT,
+        /** A folder in <tt>wikis</tt>. */
+        WIKI,
+        /** A folder in <tt>spaces</tt>. */
+        SPACE,
+        /** A folder in <tt>pages</tt>. */
+        PAGE,
+        /** A folder in <tt>classes/properties</tt>. */
+        CLASS_PROPERTY,
+        /** A folder in <tt>objects/&lt;className&gt;</tt>. */
+        OBJECT
+    }
 
     /**
-     * Initialize the Walker by parsing the folder and ordering the files.
-     * 
+     * A folder of the package waiting to be listed.
+     */
+    private static final class Folder
+    {
+        private final Kind kind;
+
+        private final Path path;
+
+        private Folder(Kind kind, Path path)
+        {
+            this.kind = kind;
+            this.path = path;
+        }
+    }
+
+    /**
+     * Initialize the Walker on the root folder of the package.
+     *
      * @param path is the root path where to look for a XFF package.
      * @throws IOException whenever there is problems in reading files or walking through the folders.
      */
@@ -66,38 +126,218 @@ public class XFFExplorer extends SimpleFileVisitor<Path> implements Iterator<Pat
         this.init(path);
     }
 
+    /**
+     * Initialize the Walker on the root folder of the package, only giving the files selected by a filter.
+     *
+     * @param path is the root path where to look for a XFF package.
+     * @param filter selects the files to give, the folders which cannot contain selected files being not listed
+     * @throws IOException whenever there is problems in reading files or walking through the folders.
+     * @since 0.4.1
+     */
+    public XFFExplorer(Path path, EntryFilter filter) throws IOException
+    {
+        this.filter = filter;
+        this.init(path);
+    }
+
     private void init(Path path) throws IOException
     {
         this.rootPath = path;
-        this.paths = new ArrayList<Path>();
-        FileVisitor<Path> visitor = new SimpleFileVisitor<Path>()
-        {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
-            {
-                paths.add(rootPath.relativize(file));
-                return FileVisitResult.CONTINUE;
+        this.stack = new ArrayDeque<Iterator<Object>>();
+        this.stack.push(list(new Folder(Kind.ROOT, path.relativize(path))).iterator());
+        this.nextPath = this.advance();
+    }
+
+    /**
+     * Go through the folders until the next file in the XFF order.
+     */
+    private Path advance() throws IOException
+    {
+        while (!this.stack.isEmpty()) {
+            Iterator<Object> items = this.stack.peek();
+            if (!items.hasNext()) {
+                this.stack.pop();
+                continue;
+            }
+            Object item = items.next();
+            if (item instanceof Path) {
+                return (Path) item;
             }
-        };
-        Files.walkFileTree(path, visitor);
-        XFF xff = new XFF();
-        for (Path p : this.paths) {
-            xff.store(p);
+            this.stack.push(list((Folder) item).iterator());
         }
-        this.paths = xff.orderedPaths();
+        return null;
+    }
+
+    /**
+     * List the files and sub-folders of a folder in the XFF order, without going into the sub-folders. Each folder is
+     * read only once, the expected files and sub-folders being looked up in its content instead of being checked one
+     * by one on the file system.
+     */
+    private List<Object> list(Folder folder) throws IOException
+    {
+        List<Object> items = new ArrayList<Object>();
+        Path path = folder.path;
+        Map<String, Boolean> children = listChildren(path);
+        switch (folder.kind) {
+            case ROOT:
+                addFolders(items, path, children, Space.SPACE_HINT, Kind.SPACE);
+                addFolders(items, path, children, Wiki.WIKI_HINT, Kind.WIKI);
+                break;
+            case WIKI:
+                addFile(items, path, children, Wiki.WIKI_FILENAME);
+                addFolders(items, path, children, Space.SPACE_HINT, Kind.SPACE);
+                break;
+            case SPACE:
+                addFile(items, path, children, Space.SPACE_FILENAME);
+                addFolders(items, path, children, Page.PAGE_HINT, Kind.PAGE);
+                addFolders(items, path, children, Space.SPACE_HINT, Kind.SPACE);
+                break;
+            case PAGE:
+                addFile(items, path, children, Page.PAGE_FILENAME);
+                addFiles(items, path, children, Property.PROPERTY_HINT);
+                addFiles(items, path, children, Attachment.ATTACHMENTS_HINT);
+                if (isFolder(children, org.xwiki.xff.core.model.Class.CLASS_HINT)
+                    && this.filter.acceptFolder(path.resolve(org.xwiki.xff.core.model.Class.CLASS_HINT))) {
+                    Path classPath = path.resolve(org.xwiki.xff.core.model.Class.CLASS_HINT);
+                    Map<String, Boolean> classChildren = listChildren(classPath);
+                    addFile(items, classPath, classChildren, org.xwiki.xff.core.model.Class.CLASS_FILENAME);
+                    addFolders(items, classPath, classChildren, Property.PROPERTY_HINT, Kind.CLASS_PROPERTY);
+                }
+                if (isFolder(children, org.xwiki.xff.core.model.Object.OBJECT_HINT)) {
+                    addObjects(items, path.resolve(org.xwiki.xff.core.model.Object.OBJECT_HINT));
+                }
+                break;
+            case CLASS_PROPERTY:
+                for (Map.Entry<String, Boolean> child : children.entrySet()) {
+                    if (!child.getValue()) {
+                        addFile(items, path.resolve(child.getKey()));
+                    }
+                }
+                break;
+            case OBJECT:
+                addFile(items, path, children, org.xwiki.xff.core.model.Object.OBJECT_FILENAME);
+                addFiles(items, path, children, Property.PROPERTY_HINT);
+                break;
+            default:
+                break;
+        }
+        return items;
+    }
+
+    private static boolean isFolder(Map<String, Boolean> children, String name)
+    {
+        return Boolean.TRUE.equals(children.get(name));
+    }
+
+    private void addFile(List<Object> items, Path path, Map<String, Boolean> children, String name)
+    {
+        if (Boolean.FALSE.equals(children.get(name))) {
+            addFile(items, path.resolve(name));
+        }
+    }
+
+    private void addFile(List<Object> items, Path filePath)
+    {
+        if (this.filter.accept(filePath)) {
+            items.add(filePath);
+        }
+    }
+
+    private void addFiles(List<Object> items, Path path, Map<String, Boolean> children, String name)
+        throws IOException
+    {
+        if (isFolder(children, name)) {
+            Path folderPath = path.resolve(name);
+            if (!this.filter.acceptFolder(folderPath)) {
+                return;
+            }
+            for (Map.Entry<String, Boolean> child : listChildren(folderPath).entrySet()) {
+                if (!child.getValue()) {
+                    addFile(items, folderPath.resolve(child.getKey()));
+                }
+            }
+        }
+    }
+
+    private void addFolders(List<Object> items, Path path, Map<String, Boolean> children, String name, Kind kind)
+        throws IOException
+    {
+        if (isFolder(children, name)) {
+            Path folderPath = path.resolve(name);
+            if (!this.filter.acceptFolder(folderPath)) {
+                return;
+            }
+            for (Map.Entry<String, Boolean> child : listChildren(folderPath).entrySet()) {
+                Path childPath = folderPath.resolve(child.getKey());
+                if (child.getValue() && this.filter.acceptFolder(childPath)) {
+                    items.add(new Folder(kind, childPath));
+                }
+            }
+        }
+    }
+
+    /**
+     * Objects are ordered on "className/number", as they are identified in the page.
+     */
+    private void addObjects(List<Object> items, Path path) throws IOException
+    {
+        Map<String, Path> objects = new TreeMap<String, Path>();
+        if (!this.filter.acceptFolder(path)) {
+            return;
+        }
+        for (Map.Entry<String, Boolean> classChild : listChildren(path).entrySet()) {
+            Path classPath = path.resolve(classChild.getKey());
+            if (classChild.getValue() && this.filter.acceptFolder(classPath)) {
+                for (Map.Entry<String, Boolean> objectChild : listChildren(classPath).entrySet()) {
+                    if (objectChild.getValue() && this.filter.acceptFolder(classPath.resolve(objectChild.getKey()))) {
+                        objects.put(classChild.getKey() + SEPARATOR + objectChild.getKey(),
+                            classPath.resolve(objectChild.getKey()));
+                    }
+                }
+            }
+        }
+        for (Path objectPath : objects.values()) {
+            items.add(new Folder(Kind.OBJECT, objectPath));
+        }
+    }
+
+    /**
+     * List the content of a folder, sorted by name, telling for each child if it's a folder or a file. Other kinds of
+     * children are ignored.
+     */
+    private Map<String, Boolean> listChildren(Path path) throws IOException
+    {
+        Map<String, Boolean> children = new TreeMap<String, Boolean>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.rootPath.resolve(path))) {
+            for (Path child : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+                if (attributes.isDirectory() || attributes.isRegularFile()) {
+                    children.put(child.getFileName().toString(), attributes.isDirectory());
+                }
+            }
+        }
+        return children;
     }
 
     @Override
     public boolean hasNext()
     {
-        return index + 1 < this.paths.size();
+        return this.nextPath != null;
     }
 
     @Override
     public Path next()
     {
-        this.index += 1;
-        return this.paths.get(this.index);
+        if (this.nextPath == null) {
+            throw new NoSuchElementException();
+        }
+        Path path = this.nextPath;
+        try {
+            this.nextPath = this.advance();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return path;
     }
 
     @Override
@@ -111,10 +351,24 @@ public class XFFExplorer extends SimpleFileVisitor<Path> implements Iterator<Pat
     {
         throw new UnsupportedOperationException("The XFF Walker does not implement the remove method");
     }
-    
+
+    /**
+     * Get the remaining files of the package as a stream, in the XFF order. Folders which cannot be read are reported
+     * with an {@link UncheckedIOException}.
+     *
+     * @return the relative paths of the files, in the XFF order
+     * @since 0.4.1
+     */
+    public Stream<Path> stream()
+    {
+        Spliterator<Path> spliterator =
+            Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+        return StreamSupport.stream(spliterator, false);
+    }
+
     /**
      * Get the root path of the XFF package (a folder).
-     * 
+     *
      * @return the root path of the XFF package
      */
     public Path getPath() {
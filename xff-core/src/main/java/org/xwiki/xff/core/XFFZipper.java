@@ -19,30 +19,137 @@
  */
 package org.xwiki.xff.core;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.xwiki.xff.core.internal.CompressedEntry;
+import org.xwiki.xff.core.internal.EntryCompressor;
+import org.xwiki.xff.core.internal.PackageManifest;
+import org.xwiki.xff.core.internal.PreviousPackage;
+import org.xwiki.xff.core.internal.ZipArchiveWriter;
+import org.xwiki.xff.core.model.Attachment;
 
 /**
- * Create zip file out of a XFF folder structure.
+ * Create zip file out of a XFF folder structure. The files are compressed on a pool of threads and written once, in
+ * the XFF order, directly in the archive. The size of the package and the time spent are available once written.
+ * Packaging can be made reproducible with a fixed timestamp, and incremental with a manifest of the last package. An
+ * index of the pages can be written next to the package, to read a page without going through the whole package.
  * 
  * @version $Id$
  * @since 7.1
  */
 public class XFFZipper
 {
+    /**
+     * Extensions of the attachments which are already compressed, and stored as is by default.
+     *
+     * @since 0.4.1
+     */
+    public static final Set<String> DEFAULT_STORED_EXTENSIONS = Collections.unmodifiableSet(new HashSet<String>(
+        Arrays.asList("png", "jpg", "jpeg", "gif", "webp", "zip", "jar", "xar", "xff", "gz", "tgz", "bz2", "xz", "7z",
+            "docx", "xlsx", "pptx", "odt", "ods", "odp", "mp3", "mp4", "ogg", "webm", "avi", "mov")));
+
+    /**
+     * Number of tasks compressed ahead by each thread.
+     */
+    private static final int WINDOW_PER_THREAD = 2;
+
+    /**
+     * Number of consecutive files compressed by a task, so that the threads don't spend more time handing over
+     * small files than compressing them.
+     */
+    private static final int FILES_PER_TASK = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SEPARATOR = "/";
+
     /**
      * To explore into XFF package.
      */
     private XFFExplorer packageExplorer;
 
+    /**
+     * Number of threads compressing the files.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Compression level of the deflated files.
+     */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Extensions of the attachments stored without compression.
+     */
+    private Set<String> storedExtensions = DEFAULT_STORED_EXTENSIONS;
+
+    /**
+     * Modification time of all the entries in milliseconds, or a negative value to use the one of the files.
+     */
+    private long timestamp = -1;
+
+    /**
+     * Description of the files of the last package, to package again only the files which have changed.
+     */
+    private Path manifestPath;
+
+    /**
+     * Index of the wikis, spaces and pages of the package, written next to it.
+     */
+    private Path indexPath;
+
+    /**
+     * Number of files written in the last package.
+     */
+    private long entryCount;
+
+    /**
+     * Number of files copied from the previous package instead of being compressed again.
+     */
+    private long reusedCount;
+
+    /**
+     * Size of the files written in the last package, before compression.
+     */
+    private long size;
+
+    /**
+     * Size of the last package.
+     */
+    private long compressedSize;
+
+    /**
+     * Time spent to write the last package, in nanoseconds.
+     */
+    private long duration;
+
     /**
      * Initialize the Walker by parsing the folder and ordering the files.
      * 
@@ -55,30 +162,414 @@ public class XFFZipper
     }
 
     /**
-     * Create an XFF package from the folder.
+     * @param threads is the number of threads compressing the files, the available processors by default
+     * @since 0.4.1
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param compressionLevel is the compression level of the deflated files, from 0 to 9 or
+     *            {@link Deflater#DEFAULT_COMPRESSION}
+     * @since 0.4.1
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @param storedExtensions are the extensions of the attachments which are stored without compression, because
+     *            they are already compressed
+     * @since 0.4.1
+     */
+    public void setStoredExtensions(Collection<String> storedExtensions)
+    {
+        Set<String> extensions = new HashSet<String>();
+        for (String extension : storedExtensions) {
+            extensions.add(extension.toLowerCase(Locale.ROOT));
+        }
+        this.storedExtensions = extensions;
+    }
+
+    /**
+     * Use the same modification time for all the entries, so that packaging the same files always gives the same
+     * package.
+     *
+     * @param timestamp is the modification time of the entries in milliseconds, or a negative value to use the
+     *            modification time of the files (the default)
+     * @since 0.4.1
+     */
+    public void setTimestamp(long timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Package incrementally: the files which have not changed since the last package written to the same path are
+     * copied from it instead of being compressed again. The manifest describes the files of the last package and is
+     * updated each time a package is written.
+     *
+     * @param manifestPath is the manifest of the last package, or null to compress all the files (the default)
+     * @since 0.4.1
+     */
+    public void setManifest(Path manifestPath)
+    {
+        this.manifestPath = manifestPath;
+    }
+
+    /**
+     * Write an index of the wikis, spaces and pages of the package, telling where their entries are in the archive,
+     * so that a page can be read without going through the whole package (see {@link PackageIndexReader}). The index
+     * is only written with {@link #xff(Path)}.
+     *
+     * @param indexPath is the index file, usually {@link PackageIndex#getIndexPath(Path)}, or null to not write an
+     *            index (the default)
+     * @since 0.4.1
+     */
+    public void setIndex(Path indexPath)
+    {
+        this.indexPath = indexPath;
+    }
+
+    /**
+     * Create an XFF package from the folder. When packaging incrementally, the previous package is kept if the new one
+     * cannot be written.
      * 
      * @param path to the file you want to write the package into.
      * @throws IOException if file path is incorrect or if there is problem to find files of the package.
-     * @throws URISyntaxException only if path is incorrect
-     */
-    public void xff(Path path) throws IOException, URISyntaxException
-    {
-        Map<String, String> options = new HashMap<>();
-        options.put("create", "true");
-        options.put("encoding", "UTF-8");
-        Path rootPath = this.packageExplorer.getPath();
-        URI xffURI = URI.create(String.format("jar:file:%s", path.toString()));
-        try (FileSystem xff = FileSystems.newFileSystem(xffURI, options)) {
-            for (Path p : this.packageExplorer) {
-                Path filePath = rootPath.resolve(p);
-                Path xffPath = xff.getPath(p.toString());
-                Path dirPath = xff.getPath(xffPath.subpath(0, xffPath.getNameCount() - 1).toString());
-                if (!Files.isDirectory(dirPath)) {
-                    Files.createDirectories(dirPath);
+     */
+    public void xff(Path path) throws IOException
+    {
+        PackageIndex index = null;
+        if (this.indexPath != null) {
+            // An index left from a previous package must never describe an incomplete package.
+            Files.deleteIfExists(this.indexPath);
+            index = new PackageIndex();
+        }
+        if (this.manifestPath == null) {
+            write(new ZipArchiveWriter(open(path)), null, null, index);
+            writeIndex(index, path);
+            return;
+        }
+
+        String settings = getSettings();
+        PackageManifest previousManifest = PackageManifest.read(this.manifestPath, settings);
+        // The manifest is removed until the new package is complete, so that an incomplete package is never reused.
+        Files.deleteIfExists(this.manifestPath);
+        Path previousPath = path.resolveSibling(path.getFileName() + ".previous");
+        boolean moved = false;
+        PreviousPackage previousPackage = null;
+        if (!previousManifest.isEmpty() && Files.isRegularFile(path)) {
+            Files.move(path, previousPath, StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+            previousPackage = openPreviousPackage(previousPath, previousManifest);
+        }
+        PackageManifest manifest = new PackageManifest(settings);
+        boolean complete = false;
+        try {
+            write(new ZipArchiveWriter(open(path)), previousPackage, manifest, index);
+            complete = true;
+        } finally {
+            if (previousPackage != null) {
+                previousPackage.close();
+            }
+            if (moved) {
+                restore(previousPath, path, previousManifest, complete);
+            }
+        }
+        manifest.write(this.manifestPath);
+        writeIndex(index, path);
+    }
+
+    private static PreviousPackage openPreviousPackage(Path previousPath, PackageManifest previousManifest)
+    {
+        try {
+            return new PreviousPackage(previousPath, previousManifest);
+        } catch (IOException e) {
+            // The previous package cannot be read, all the files are compressed again.
+            return null;
+        }
+    }
+
+    /**
+     * The previous package is the only good copy until the new package is complete: it is put back with its manifest
+     * when the new package cannot be written.
+     */
+    private void restore(Path previousPath, Path path, PackageManifest previousManifest, boolean complete)
+        throws IOException
+    {
+        if (complete) {
+            Files.deleteIfExists(previousPath);
+        } else {
+            Files.move(previousPath, path, StandardCopyOption.REPLACE_EXISTING);
+            previousManifest.write(this.manifestPath);
+        }
+    }
+
+    private void writeIndex(PackageIndex index, Path path) throws IOException
+    {
+        if (index != null) {
+            index.write(this.indexPath, path);
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException
+    {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * The settings which change the content of the entries: entries of a package written with other settings cannot
+     * be reused.
+     */
+    private String getSettings()
+    {
+        return String.format("level=%d;stored=%s;timestamp=%d", this.compressionLevel,
+            new TreeSet<String>(this.storedExtensions), this.timestamp);
+    }
+
+    /**
+     * Create an XFF package from the folder and stream it.
+     *
+     * @param outputStream is where the package is written, closed once the package is complete
+     * @throws IOException if the package cannot be written or if there is problem to find files of the package
+     * @since 0.4.1
+     */
+    public void xff(OutputStream outputStream) throws IOException
+    {
+        write(new ZipArchiveWriter(new BufferedOutputStream(outputStream, BUFFER_SIZE)), null, null, null);
+    }
+
+    /**
+     * Write the package, reusing the entries of the previous package if any and describing the files in the manifest
+     * and the index if any.
+     */
+    private void write(ZipArchiveWriter archiveWriter, PreviousPackage previousPackage, PackageManifest manifest,
+        PackageIndex index) throws IOException
+    {
+        long start = System.nanoTime();
+        this.entryCount = 0;
+        this.reusedCount = 0;
+        this.size = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        Deque<Future<List<CompressedEntry>>> window = new ArrayDeque<Future<List<CompressedEntry>>>();
+        int windowSize = this.threads * WINDOW_PER_THREAD;
+        try (EntryCompressor compressor = new EntryCompressor(this.compressionLevel)) {
+            compressor.setTimestamp(this.timestamp);
+            compressor.setPreviousPackage(previousPackage, manifest != null);
+            try (ZipArchiveWriter writer = archiveWriter) {
+                boolean complete = false;
+                try {
+                    while (true) {
+                        while (window.size() < windowSize && this.packageExplorer.hasNext()) {
+                            List<Path> relativePaths = new ArrayList<Path>(FILES_PER_TASK);
+                            while (relativePaths.size() < FILES_PER_TASK && this.packageExplorer.hasNext()) {
+                                relativePaths.add(this.packageExplorer.next());
+                            }
+                            window.add(executor.submit(compressTask(compressor, relativePaths)));
+                        }
+                        if (window.isEmpty()) {
+                            break;
+                        }
+                        List<CompressedEntry> entries = getEntries(window.poll());
+                        try {
+                            writeEntries(writer, entries, manifest, index);
+                        } finally {
+                            dispose(entries);
+                        }
+                    }
+                    complete = true;
+                } finally {
+                    if (!complete) {
+                        // An incomplete package gets no central directory, so that it is never taken for a package.
+                        writer.abort();
+                    }
+                }
+            }
+            // The central directory is written when the archive is closed.
+            this.compressedSize = archiveWriter.getBytesWritten();
+        } finally {
+            executor.shutdownNow();
+            discard(window);
+            this.duration = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Write the entries compressed by a task, in the order of the package.
+     */
+    private void writeEntries(ZipArchiveWriter writer, List<CompressedEntry> entries, PackageManifest manifest,
+        PackageIndex index) throws IOException
+    {
+        for (CompressedEntry entry : entries) {
+            long offset = writer.getBytesWritten();
+            writer.write(entry);
+            if (index != null) {
+                index.add(entry.getName(), offset, writer.getBytesWritten());
+            }
+            this.entryCount++;
+            this.size += entry.getSize();
+            if (entry.isReused()) {
+                this.reusedCount++;
+            }
+            if (manifest != null) {
+                manifest.put(entry.getName(), entry.getSize(), entry.getLastModified(), entry.getHash());
+            }
+        }
+    }
+
+    /**
+     * @return the number of files written in the last package
+     * @since 0.4.1
+     */
+    public long getEntryCount()
+    {
+        return this.entryCount;
+    }
+
+    /**
+     * @return the number of files of the last package copied from the previous package, see
+     *         {@link #setManifest(Path)}
+     * @since 0.4.1
+     */
+    public long getReusedCount()
+    {
+        return this.reusedCount;
+    }
+
+    /**
+     * @return the size of the files written in the last package, before compression
+     * @since 0.4.1
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the size of the last package
+     * @since 0.4.1
+     */
+    public long getCompressedSize()
+    {
+        return this.compressedSize;
+    }
+
+    /**
+     * @return the time spent to write the last package, in milliseconds
+     * @since 0.4.1
+     */
+    public long getDuration()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.duration);
+    }
+
+    /**
+     * @return the number of bytes of files packaged per second in the last package
+     * @since 0.4.1
+     */
+    public long getThroughput()
+    {
+        return this.duration > 0 ? (long) ((double) this.size * TimeUnit.SECONDS.toNanos(1) / this.duration) : 0;
+    }
+
+    private Callable<List<CompressedEntry>> compressTask(final EntryCompressor compressor,
+        final List<Path> relativePaths)
+    {
+        final Path rootPath = this.packageExplorer.getPath();
+        return new Callable<List<CompressedEntry>>()
+        {
+            @Override
+            public List<CompressedEntry> call() throws IOException
+            {
+                List<CompressedEntry> entries = new ArrayList<CompressedEntry>(relativePaths.size());
+                try {
+                    for (Path relativePath : relativePaths) {
+                        int method = isStored(relativePath) ? ZipEntry.STORED : ZipEntry.DEFLATED;
+                        entries.add(
+                            compressor.compress(rootPath.resolve(relativePath), getEntryName(relativePath), method));
+                    }
+                } catch (IOException e) {
+                    dispose(entries);
+                    throw e;
+                }
+                return entries;
+            }
+        };
+    }
+
+    /**
+     * Attachments which are already compressed are stored as is.
+     */
+    private boolean isStored(Path relativePath)
+    {
+        int count = relativePath.getNameCount();
+        if (count < 2 || !Attachment.ATTACHMENTS_HINT.equals(relativePath.getName(count - 2).toString())) {
+            return false;
+        }
+        String fileName = relativePath.getFileName().toString();
+        int index = fileName.lastIndexOf('.');
+        return index >= 0 && this.storedExtensions.contains(fileName.substring(index + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Names of zip entries always use '/' as separator, whatever the file system.
+     */
+    private static String getEntryName(Path relativePath)
+    {
+        StringBuilder name = new StringBuilder();
+        for (Path element : relativePath) {
+            if (name.length() > 0) {
+                name.append(SEPARATOR);
+            }
+            name.append(element.toString());
+        }
+        return name.toString();
+    }
+
+    private static List<CompressedEntry> getEntries(Future<List<CompressedEntry>> future) throws IOException
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing the XFF package.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to compress a file of the XFF package.", e.getCause());
+        }
+    }
+
+    /**
+     * Release the files compressed, once written or because of an error.
+     */
+    private static void dispose(List<CompressedEntry> entries) throws IOException
+    {
+        for (CompressedEntry entry : entries) {
+            entry.dispose();
+        }
+    }
+
+    /**
+     * Release the files compressed but not written because of an error.
+     */
+    private static void discard(Deque<Future<List<CompressedEntry>>> window)
+    {
+        for (Future<List<CompressedEntry>> future : window) {
+            if (!future.cancel(true) && future.isDone()) {
+                try {
+                    dispose(future.get());
+                } catch (Exception e) {
+                    // The files have not been compressed or cannot be deleted, nothing more can be done.
                 }
-                Files.copy(filePath, xffPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
             }
         }
-        // zos.close();
+        window.clear();
     }
 }
@@ -0,0 +1,421 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Read the central directory of a zip archive, to know where the raw data of each entry is without reading the
+ * entries. Unlike {@link java.util.zip.ZipFile}, the position of the local headers is available, so that the
+ * compressed data can be copied as is.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class ZipArchiveIndex
+{
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int END_SIZE = 22;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static final int ZIP64_END_SIZE = 56;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int SHORT_MASK = 0xFFFF;
+
+    private static final int EXTRA_HEADER_SIZE = 4;
+
+    private static final int END_COUNT = 10;
+
+    private static final int END_DIRECTORY_SIZE = 12;
+
+    private static final int END_DIRECTORY_OFFSET = 16;
+
+    private static final int LOCATOR_END_OFFSET = 8;
+
+    private static final int ZIP64_END_COUNT = 32;
+
+    private static final int ZIP64_END_DIRECTORY_SIZE = 40;
+
+    private static final int ZIP64_END_DIRECTORY_OFFSET = 48;
+
+    private static final int CENTRAL_METHOD = 10;
+
+    private static final int CENTRAL_CRC = 16;
+
+    private static final int CENTRAL_COMPRESSED_SIZE = 20;
+
+    private static final int CENTRAL_SIZE = 24;
+
+    private static final int CENTRAL_NAME_LENGTH = 28;
+
+    private static final int CENTRAL_EXTRA_LENGTH = 30;
+
+    private static final int CENTRAL_COMMENT_LENGTH = 32;
+
+    private static final int CENTRAL_LOCAL_HEADER_OFFSET = 42;
+
+    private static final int LOCAL_NAME_LENGTH = 26;
+
+    private static final int LOCAL_EXTRA_LENGTH = 28;
+
+    private static final int CHECKSUM_BUFFER_SIZE = 65536;
+
+    /**
+     * The location of the central directory of an archive, as described at the end of the archive.
+     */
+    public static final class Directory
+    {
+        private final long offset;
+
+        private final long size;
+
+        private final long count;
+
+        private Directory(long offset, long size, long count)
+        {
+            this.offset = offset;
+            this.size = size;
+            this.count = count;
+        }
+
+        /**
+         * @return the position of the central directory in the archive
+         */
+        public long getOffset()
+        {
+            return this.offset;
+        }
+
+        /**
+         * @return the number of bytes of the central directory
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        /**
+         * @return the number of entries of the archive
+         */
+        public long getCount()
+        {
+            return this.count;
+        }
+    }
+
+    /**
+     * An entry of the archive, as described in the central directory.
+     */
+    public static final class Entry
+    {
+        private final String name;
+
+        private final int method;
+
+        private final long crc;
+
+        private final long size;
+
+        private final long compressedSize;
+
+        private final long localHeaderOffset;
+
+        private Entry(String name, int method, long crc, long size, long compressedSize, long localHeaderOffset)
+        {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        /**
+         * @return the name of the entry
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * @return the compression method
+         */
+        public int getMethod()
+        {
+            return this.method;
+        }
+
+        /**
+         * @return the CRC-32 of the uncompressed data
+         */
+        public long getCrc()
+        {
+            return this.crc;
+        }
+
+        /**
+         * @return the size of the uncompressed data
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        /**
+         * @return the size of the data in the archive
+         */
+        public long getCompressedSize()
+        {
+            return this.compressedSize;
+        }
+
+        /**
+         * @return the position of the local header in the archive
+         */
+        public long getLocalHeaderOffset()
+        {
+            return this.localHeaderOffset;
+        }
+    }
+
+    private ZipArchiveIndex()
+    {
+    }
+
+    /**
+     * Read the central directory of an archive.
+     *
+     * @param channel is the archive
+     * @return the entries of the archive, by name, in the order of the central directory
+     * @throws IOException if the archive cannot be read or is not a zip archive
+     */
+    public static Map<String, Entry> read(FileChannel channel) throws IOException
+    {
+        Directory location = locate(channel);
+        if (location.getSize() > Integer.MAX_VALUE) {
+            throw new ZipException("The central directory is too big.");
+        }
+
+        ByteBuffer directory = readFully(channel, location.getOffset(), (int) location.getSize());
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        int position = 0;
+        for (long i = 0; i < location.getCount(); i++) {
+            Entry entry = readEntry(directory, position);
+            entries.put(entry.getName(), entry);
+            position += CENTRAL_HEADER_SIZE + (directory.getShort(position + CENTRAL_NAME_LENGTH) & SHORT_MASK)
+                + (directory.getShort(position + CENTRAL_EXTRA_LENGTH) & SHORT_MASK)
+                + (directory.getShort(position + CENTRAL_COMMENT_LENGTH) & SHORT_MASK);
+        }
+        return entries;
+    }
+
+    /**
+     * Find the central directory of an archive, without reading it.
+     *
+     * @param channel is the archive
+     * @return the location of the central directory
+     * @throws IOException if the archive cannot be read or is not a zip archive
+     */
+    public static Directory locate(FileChannel channel) throws IOException
+    {
+        long archiveSize = channel.size();
+        int tailSize = (int) Math.min(archiveSize, END_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = readFully(channel, archiveSize - tailSize, tailSize);
+        int endPosition = -1;
+        for (int position = tailSize - END_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_SIGNATURE) {
+                endPosition = position;
+                break;
+            }
+        }
+        if (endPosition < 0) {
+            throw new ZipException("Unable to find the end of the central directory.");
+        }
+
+        long count = tail.getShort(endPosition + END_COUNT) & SHORT_MASK;
+        long directorySize = tail.getInt(endPosition + END_DIRECTORY_SIZE) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(endPosition + END_DIRECTORY_OFFSET) & ZIP64_MAGIC;
+        if (count == ZIP64_MAGIC_COUNT || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) {
+            long locatorOffset = archiveSize - tailSize + endPosition - ZIP64_LOCATOR_SIZE;
+            ByteBuffer locator = readFully(channel, locatorOffset, ZIP64_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                ByteBuffer end = readFully(channel, locator.getLong(LOCATOR_END_OFFSET), ZIP64_END_SIZE);
+                if (end.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("Invalid ZIP64 end of central directory.");
+                }
+                count = end.getLong(ZIP64_END_COUNT);
+                directorySize = end.getLong(ZIP64_END_DIRECTORY_SIZE);
+                directoryOffset = end.getLong(ZIP64_END_DIRECTORY_OFFSET);
+            }
+        }
+        return new Directory(directoryOffset, directorySize, count);
+    }
+
+    /**
+     * Compute the CRC-32 of the central directory of an archive. Since the central directory contains the name, the
+     * CRC-32 and the position of every entry, it changes as soon as an entry of the archive is changed.
+     *
+     * @param channel is the archive
+     * @param directory is the location of its central directory
+     * @return the CRC-32 of the central directory
+     * @throws IOException if the central directory cannot be read
+     */
+    public static long getChecksum(FileChannel channel, Directory directory) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(directory.getSize(), CHECKSUM_BUFFER_SIZE));
+        long position = directory.getOffset();
+        long end = position + directory.getSize();
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of the zip archive.");
+            }
+            crc.update(buffer.array(), 0, count);
+            position += count;
+        }
+        return crc.getValue();
+    }
+
+    private static Entry readEntry(ByteBuffer directory, int position) throws ZipException
+    {
+        if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid central directory header.");
+        }
+        int method = directory.getShort(position + CENTRAL_METHOD) & SHORT_MASK;
+        long crc = directory.getInt(position + CENTRAL_CRC) & ZIP64_MAGIC;
+        long compressedSize = directory.getInt(position + CENTRAL_COMPRESSED_SIZE) & ZIP64_MAGIC;
+        long size = directory.getInt(position + CENTRAL_SIZE) & ZIP64_MAGIC;
+        int nameLength = directory.getShort(position + CENTRAL_NAME_LENGTH) & SHORT_MASK;
+        int extraLength = directory.getShort(position + CENTRAL_EXTRA_LENGTH) & SHORT_MASK;
+        long localHeaderOffset = directory.getInt(position + CENTRAL_LOCAL_HEADER_OFFSET) & ZIP64_MAGIC;
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = directory.get(position + CENTRAL_HEADER_SIZE + i);
+        }
+
+        // The ZIP64 extra field only contains the values which don't fit in the header, in this order.
+        int extra = position + CENTRAL_HEADER_SIZE + nameLength;
+        int extraEnd = extra + extraLength;
+        while (extra + EXTRA_HEADER_SIZE <= extraEnd) {
+            int id = directory.getShort(extra) & SHORT_MASK;
+            int length = directory.getShort(extra + 2) & SHORT_MASK;
+            if (id == ZIP64_EXTRA_ID) {
+                int field = extra + EXTRA_HEADER_SIZE;
+                if (size == ZIP64_MAGIC) {
+                    size = directory.getLong(field);
+                    field += Long.BYTES;
+                }
+                if (compressedSize == ZIP64_MAGIC) {
+                    compressedSize = directory.getLong(field);
+                    field += Long.BYTES;
+                }
+                if (localHeaderOffset == ZIP64_MAGIC) {
+                    localHeaderOffset = directory.getLong(field);
+                }
+                break;
+            }
+            extra += EXTRA_HEADER_SIZE + length;
+        }
+
+        return new Entry(new String(name, StandardCharsets.UTF_8), method, crc, size, compressedSize,
+            localHeaderOffset);
+    }
+
+    /**
+     * Find the position of the data of an entry, just after its local header.
+     *
+     * @param channel is the archive
+     * @param entry is an entry of the archive
+     * @return the position of the data of the entry in the archive
+     * @throws IOException if the local header cannot be read
+     */
+    public static long getDataOffset(FileChannel channel, Entry entry) throws IOException
+    {
+        ByteBuffer header = readFully(channel, entry.getLocalHeaderOffset(), LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException(String.format("Invalid local header for the entry [%s].", entry.getName()));
+        }
+        return entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + (header.getShort(LOCAL_NAME_LENGTH) & SHORT_MASK)
+            + (header.getShort(LOCAL_EXTRA_LENGTH) & SHORT_MASK);
+    }
+
+    /**
+     * Read the data of an entry, as it is stored in the archive.
+     *
+     * @param channel is the archive
+     * @param entry is an entry of the archive, small enough to be kept in memory
+     * @return the data of the entry, compressed or not depending on the entry method
+     * @throws IOException if the entry cannot be read
+     */
+    public static byte[] readData(FileChannel channel, Entry entry) throws IOException
+    {
+        return readFully(channel, getDataOffset(channel, entry), (int) entry.getCompressedSize()).array();
+    }
+
+    /**
+     * Read a part of the file with positional reads, which can be done from several threads at the same time.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the zip archive.");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A file of the package, ready to be written in the archive: its data is already compressed (or stored as is) and
+ * its CRC and sizes are known, so that the local header can be written before the data. The data is either in
+ * memory or in a file, possibly at some position in it (e.g. in a previous archive).
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class CompressedEntry
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+
+    private final int method;
+
+    private final long dosTime;
+
+    private final long crc;
+
+    private final long size;
+
+    private final long compressedSize;
+
+    private byte[] data;
+
+    private Path dataPath;
+
+    private long dataOffset;
+
+    private boolean temporary;
+
+    private String hash;
+
+    private long lastModified;
+
+    private boolean reused;
+
+    /**
+     * @param name is the name of the entry in the archive
+     * @param method is the compression method, {@link java.util.zip.ZipEntry#STORED} or
+     *            {@link java.util.zip.ZipEntry#DEFLATED}
+     * @param dosTime is the last modification time of the entry, in MS-DOS format
+     * @param crc is the CRC-32 of the uncompressed data
+     * @param size is the size of the uncompressed data
+     * @param compressedSize is the size of the data written in the archive
+     */
+    public CompressedEntry(String name, int method, long dosTime, long crc, long size, long compressedSize)
+    {
+        this.name = name;
+        this.method = method;
+        this.dosTime = dosTime;
+        this.crc = crc;
+        this.size = size;
+        this.compressedSize = compressedSize;
+    }
+
+    /**
+     * @param data is the data written in the archive, kept in memory
+     * @return this entry
+     */
+    public CompressedEntry setData(byte[] data)
+    {
+        this.data = data;
+        return this;
+    }
+
+    /**
+     * @param dataPath is the file containing the data written in the archive
+     * @param dataOffset is the position of the data in the file
+     * @param temporary true if the file has to be deleted once written
+     * @return this entry
+     */
+    public CompressedEntry setDataPath(Path dataPath, long dataOffset, boolean temporary)
+    {
+        this.dataPath = dataPath;
+        this.dataOffset = dataOffset;
+        this.temporary = temporary;
+        return this;
+    }
+
+    /**
+     * @param hash is the hash of the uncompressed data, to find out later if the file has changed
+     * @param lastModified is the last modification time of the file, in milliseconds
+     * @return this entry
+     */
+    public CompressedEntry setFingerprint(String hash, long lastModified)
+    {
+        this.hash = hash;
+        this.lastModified = lastModified;
+        return this;
+    }
+
+    /**
+     * @param reused true if the data is copied from a previous archive
+     * @return this entry
+     */
+    public CompressedEntry setReused(boolean reused)
+    {
+        this.reused = reused;
+        return this;
+    }
+
+    /**
+     * @return the name of the entry in the archive
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * @return the compression method
+     */
+    public int getMethod()
+    {
+        return this.method;
+    }
+
+    /**
+     * @return the last modification time of the entry, in MS-DOS format
+     */
+    public long getDosTime()
+    {
+        return this.dosTime;
+    }
+
+    /**
+     * @return the CRC-32 of the uncompressed data
+     */
+    public long getCrc()
+    {
+        return this.crc;
+    }
+
+    /**
+     * @return the size of the uncompressed data
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the size of the data written in the archive
+     */
+    public long getCompressedSize()
+    {
+        return this.compressedSize;
+    }
+
+    /**
+     * @return the file containing the data written in the archive, or null if the data is in memory
+     */
+    public Path getDataPath()
+    {
+        return this.data == null ? this.dataPath : null;
+    }
+
+    /**
+     * @return the position of the data in the file returned by {@link #getDataPath()}
+     */
+    public long getDataOffset()
+    {
+        return this.dataOffset;
+    }
+
+    /**
+     * @return the hash of the uncompressed data, or null if not computed
+     */
+    public String getHash()
+    {
+        return this.hash;
+    }
+
+    /**
+     * @return the last modification time of the file, in milliseconds
+     */
+    public long getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * @return true if the data is copied from a previous archive
+     */
+    public boolean isReused()
+    {
+        return this.reused;
+    }
+
+    /**
+     * Copy the data of the entry, as it should be written in the archive.
+     *
+     * @param outputStream is the archive
+     * @throws IOException if the data cannot be read or written
+     */
+    public void writeData(OutputStream outputStream) throws IOException
+    {
+        if (this.data != null) {
+            outputStream.write(this.data);
+        } else {
+            try (InputStream inputStream = Files.newInputStream(this.dataPath)) {
+                skipFully(inputStream, this.dataOffset);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = this.compressedSize;
+                while (remaining > 0) {
+                    int count = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (count < 0) {
+                        throw new EOFException(String.format("Missing data for the entry [%s].", this.name));
+                    }
+                    outputStream.write(buffer, 0, count);
+                    remaining -= count;
+                }
+            }
+        }
+    }
+
+    private static void skipFully(InputStream inputStream, long count) throws IOException
+    {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException("Unable to reach the data of the entry.");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Release the resources used to keep the data, once written or if the archive is not written.
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    public void dispose() throws IOException
+    {
+        if (this.temporary) {
+            Files.deleteIfExists(this.dataPath);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+import java.util.Queue;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Compress the files of a package, independently of each other so that several files can be compressed at the same
+ * time on different threads. Small files are compressed in memory, bigger ones in a temporary file. When a previous
+ * archive is available, the files which have not changed are not compressed again but copied from it.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class EntryCompressor implements Closeable
+{
+    /**
+     * Files bigger than this are compressed in a temporary file instead of in memory.
+     */
+    private static final long MAX_MEMORY_SIZE = 1024L * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int SMALL_BUFFER_SIZE = 8 * 1024;
+
+    private static final int DOS_MIN_YEAR = 1980;
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The compression level of the deflated entries.
+     */
+    private final int level;
+
+    /**
+     * Deflaters which can be reused, since creating one allocates native memory.
+     */
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    /**
+     * The modification time of all the entries in MS-DOS format, or -1 to use the one of the files.
+     */
+    private long fixedDosTime = -1;
+
+    /**
+     * The previous archive, whose entries are reused when the files have not changed.
+     */
+    private PreviousPackage previousPackage;
+
+    /**
+     * True if the hash of the files is computed.
+     */
+    private boolean hashing;
+
+    /**
+     * @param level is the compression level of the deflated entries, see {@link Deflater}
+     */
+    public EntryCompressor(int level)
+    {
+        this.level = level;
+    }
+
+    /**
+     * Use a fixed modification time for all the entries, so that the archive only depends on the content of the
+     * files. The time is converted in UTC, to get the same archive whatever the time zone.
+     *
+     * @param timestamp is the modification time of all the entries in milliseconds, or a negative value to use the
+     *            modification time of the files
+     */
+    public void setTimestamp(long timestamp)
+    {
+        this.fixedDosTime = timestamp < 0 ? -1 : toDosTime(timestamp, TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Reuse the entries of a previous archive when the files have not changed, and compute the hash of the files so
+     * that the next archive can do the same.
+     *
+     * @param previousPackage is the previous archive, or null to compress all the files without computing hashes
+     * @param hashing true to compute the hash of the files
+     */
+    public void setPreviousPackage(PreviousPackage previousPackage, boolean hashing)
+    {
+        this.previousPackage = previousPackage;
+        this.hashing = hashing;
+    }
+
+    /**
+     * Compress a file.
+     *
+     * @param filePath is the file to compress
+     * @param name is the name of the entry in the archive
+     * @param method is {@link ZipEntry#DEFLATED} to compress the file or {@link ZipEntry#STORED} to keep it as is
+     * @return the entry to write in the archive
+     * @throws IOException if the file cannot be read or the temporary file cannot be written
+     */
+    public CompressedEntry compress(Path filePath, String name, int method) throws IOException
+    {
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        long dosTime = this.fixedDosTime >= 0 ? this.fixedDosTime : toDosTime(lastModified, TimeZone.getDefault());
+        CompressedEntry entry = reuse(name, method, dosTime, size, lastModified, null);
+        if (entry != null) {
+            return entry;
+        }
+
+        MessageDigest digest = this.hashing ? createDigest() : null;
+        if (size <= MAX_MEMORY_SIZE) {
+            byte[] content = Files.readAllBytes(filePath);
+            String hash = null;
+            if (digest != null) {
+                hash = toHex(digest.digest(content));
+                entry = reuse(name, method, dosTime, content.length, lastModified, hash);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            byte[] data = method == ZipEntry.STORED ? content : deflate(content);
+            return new CompressedEntry(name, method, dosTime, crc.getValue(), content.length, data.length)
+                .setData(data).setFingerprint(hash, lastModified);
+        }
+
+        if (digest != null && this.previousPackage != null && this.previousPackage.getFile(name) != null) {
+            // Read the file once to know if it has changed before compressing it.
+            try (InputStream inputStream = Files.newInputStream(filePath)) {
+                copy(inputStream, null, new CRC32(), digest);
+            }
+            String hash = toHex(digest.digest());
+            entry = reuse(name, method, dosTime, size, lastModified, hash);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        CRC32 crc = new CRC32();
+        if (method == ZipEntry.STORED) {
+            try (InputStream inputStream = Files.newInputStream(filePath)) {
+                size = copy(inputStream, null, crc, digest);
+            }
+            return new CompressedEntry(name, method, dosTime, crc.getValue(), size, size)
+                .setDataPath(filePath, 0, false).setFingerprint(digest != null ? toHex(digest.digest()) : null,
+                    lastModified);
+        }
+        Path dataPath = Files.createTempFile("xff-entry-", ".tmp");
+        try {
+            try (OutputStream data = Files.newOutputStream(dataPath)) {
+                size = deflate(filePath, data, crc, digest);
+            }
+            return new CompressedEntry(name, method, dosTime, crc.getValue(), size, Files.size(dataPath))
+                .setDataPath(dataPath, 0, true).setFingerprint(digest != null ? toHex(digest.digest()) : null,
+                    lastModified);
+        } catch (IOException e) {
+            Files.deleteIfExists(dataPath);
+            throw e;
+        }
+    }
+
+    private CompressedEntry reuse(String name, int method, long dosTime, long size, long lastModified, String hash)
+        throws IOException
+    {
+        if (this.previousPackage == null) {
+            return null;
+        }
+        return this.previousPackage.reuse(name, method, dosTime, size, lastModified, hash);
+    }
+
+    private Deflater getDeflater()
+    {
+        Deflater deflater = this.deflaters.poll();
+        return deflater != null ? deflater : new Deflater(this.level, true);
+    }
+
+    private void releaseDeflater(Deflater deflater)
+    {
+        deflater.reset();
+        this.deflaters.add(deflater);
+    }
+
+    /**
+     * Deflate a small content in one go, without the buffers of a stream.
+     */
+    private byte[] deflate(byte[] content)
+    {
+        Deflater deflater = getDeflater();
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream data = new ByteArrayOutputStream(content.length / 2 + SMALL_BUFFER_SIZE / 8);
+            byte[] buffer = new byte[Math.min(SMALL_BUFFER_SIZE, content.length + SMALL_BUFFER_SIZE / 8)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                data.write(buffer, 0, count);
+            }
+            return data.toByteArray();
+        } finally {
+            releaseDeflater(deflater);
+        }
+    }
+
+    private long deflate(Path filePath, OutputStream data, CRC32 crc, MessageDigest digest) throws IOException
+    {
+        Deflater deflater = getDeflater();
+        try (InputStream inputStream = Files.newInputStream(filePath)) {
+            DeflaterOutputStream deflaterStream = new DeflaterOutputStream(data, deflater, BUFFER_SIZE);
+            long size = copy(inputStream, deflaterStream, crc, digest);
+            deflaterStream.finish();
+            return size;
+        } finally {
+            releaseDeflater(deflater);
+        }
+    }
+
+    /**
+     * Copy a stream while computing its CRC and optionally its hash, the output being optional.
+     */
+    private static long copy(InputStream inputStream, OutputStream outputStream, CRC32 crc, MessageDigest digest)
+        throws IOException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        int count;
+        while ((count = inputStream.read(buffer)) >= 0) {
+            crc.update(buffer, 0, count);
+            if (digest != null) {
+                digest.update(buffer, 0, count);
+            }
+            if (outputStream != null) {
+                outputStream.write(buffer, 0, count);
+            }
+            size += count;
+        }
+        return size;
+    }
+
+    private static MessageDigest createDigest()
+    {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Convert a time to the MS-DOS format used in the zip headers.
+     *
+     * @param time is the time in milliseconds since the epoch
+     * @param timeZone is the time zone in which the time is expressed
+     * @return the time in MS-DOS format
+     */
+    public static long toDosTime(long time, TimeZone timeZone)
+    {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < DOS_MIN_YEAR) {
+            // 1980-01-01 00:00:00
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - DOS_MIN_YEAR) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21)
+            | (calendar.get(Calendar.DAY_OF_MONTH) << 16) | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+            | (calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    @Override
+    public void close()
+    {
+        Deflater deflater;
+        while ((deflater = this.deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core.internal;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Description of the files packaged in the last archive (size, last modification time and hash), kept next to the
+ * archive to know which entries can be copied from it when packaging again. The manifest is only valid for the
+ * settings it has been written with (compression level, stored extensions, timestamp), since they change the content
+ * of the entries.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class PackageManifest
+{
+    private static final String HEADER = "xff-manifest 1 ";
+
+    private static final String SEPARATOR = "\t";
+
+    private static final int FIELD_COUNT = 4;
+
+    /**
+     * The settings the archive has been written with.
+     */
+    private final String settings;
+
+    /**
+     * Files of the archive, by entry name.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * A file of the archive.
+     */
+    public static final class Entry
+    {
+        private final long size;
+
+        private final long lastModified;
+
+        private final String hash;
+
+        private Entry(long size, long lastModified, String hash)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        /**
+         * @return the size of the file
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        /**
+         * @return the last modification time of the file, in milliseconds
+         */
+        public long getLastModified()
+        {
+            return this.lastModified;
+        }
+
+        /**
+         * @return the hash of the content of the file
+         */
+        public String getHash()
+        {
+            return this.hash;
+        }
+    }
+
+    /**
+     * @param settings are the settings the archive is written with
+     */
+    public PackageManifest(String settings)
+    {
+        this.settings = settings;
+    }
+
+    /**
+     * Read a manifest. When the manifest does not exist or has been written with other settings, an empty manifest is
+     * returned, so that nothing is reused.
+     *
+     * @param path is the manifest file
+     * @param settings are the settings of the new archive
+     * @return the manifest
+     * @throws IOException if the manifest cannot be read
+     */
+    public static PackageManifest read(Path path, String settings) throws IOException
+    {
+        PackageManifest manifest = new PackageManifest(settings);
+        if (!Files.isRegularFile(path)) {
+            return manifest;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            if (!(HEADER + settings).equals(reader.readLine())) {
+                return manifest;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, FIELD_COUNT);
+                if (fields.length == FIELD_COUNT) {
+                    manifest.put(fields[3], Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            return new PackageManifest(settings);
+        }
+        return manifest;
+    }
+
+    /**
+     * @param name is the name of the entry
+     * @return the description of the file, or null if the file is not in the archive
+     */
+    public Entry get(String name)
+    {
+        return this.entries.get(name);
+    }
+
+    /**
+     * @param name is the name of the entry
+     * @param size is the size of the file
+     * @param lastModified is the last modification time of the file, in milliseconds
+     * @param hash is the hash of the content of the file
+     */
+    public void put(String name, long size, long lastModified, String hash)
+    {
+        this.entries.put(name, new Entry(size, lastModified, hash));
+    }
+
+    /**
+     * @return true if no file is described
+     */
+    public boolean isEmpty()
+    {
+        return this.entries.isEmpty();
+    }
+
+    /**
+     * @param path is the manifest file to write
+     * @throws IOException if the manifest cannot be written
+     */
+    public void write(Path path) throws IOException
+    {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + this.settings);
+            writer.newLine();
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                Entry file = entry.getValue();
+                writer.write(file.getSize() + SEPARATOR + file.getLastModified() + SEPARATOR + file.getHash()
+                    + SEPARATOR + entry.getKey());
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+import org.xwiki.xff.core.ZipArchiveIndex;
+
+/**
+ * A package written before, whose entries can be copied as is, without being compressed again, when the files have
+ * not changed. A file is considered unchanged when its size and last modification time are the ones of the manifest,
+ * or else when the hash of its content is the one of the manifest.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class PreviousPackage implements Closeable
+{
+    /**
+     * Entries smaller than this are copied in memory.
+     */
+    private static final long MAX_MEMORY_SIZE = 64 * 1024;
+
+    /**
+     * The previous archive.
+     */
+    private final Path path;
+
+    /**
+     * The previous archive, read from several threads with positional reads.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The entries of the previous archive.
+     */
+    private final Map<String, ZipArchiveIndex.Entry> entries;
+
+    /**
+     * The files of the previous archive.
+     */
+    private final PackageManifest manifest;
+
+    /**
+     * @param path is the previous archive
+     * @param manifest describes the files of the previous archive
+     * @throws IOException if the previous archive cannot be read
+     */
+    public PreviousPackage(Path path, PackageManifest manifest) throws IOException
+    {
+        this.path = path;
+        this.manifest = manifest;
+        if (manifest.isEmpty()) {
+            this.channel = null;
+            this.entries = Collections.emptyMap();
+        } else {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                this.entries = ZipArchiveIndex.read(this.channel);
+            } catch (IOException e) {
+                this.channel.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param name is the name of an entry
+     * @return the description of the file in the previous archive, or null if it cannot be reused
+     */
+    public PackageManifest.Entry getFile(String name)
+    {
+        return this.entries.containsKey(name) ? this.manifest.get(name) : null;
+    }
+
+    /**
+     * Get an entry of the previous archive, if the file has not changed.
+     *
+     * @param name is the name of the entry
+     * @param method is the compression method expected for the entry
+     * @param dosTime is the last modification time of the new entry, in MS-DOS format
+     * @param size is the size of the file
+     * @param lastModified is the last modification time of the file
+     * @param hash is the hash of the content of the file, or null to compare only the size and the time
+     * @return the entry, with its data in the previous archive, or null if the file has changed
+     * @throws IOException if the previous archive cannot be read
+     */
+    public CompressedEntry reuse(String name, int method, long dosTime, long size, long lastModified, String hash)
+        throws IOException
+    {
+        PackageManifest.Entry file = getFile(name);
+        ZipArchiveIndex.Entry entry = this.entries.get(name);
+        if (file == null || entry.getMethod() != method || entry.getSize() != size || file.getSize() != size) {
+            return null;
+        }
+        boolean unchanged = hash == null ? file.getLastModified() == lastModified : hash.equals(file.getHash());
+        if (!unchanged) {
+            return null;
+        }
+        CompressedEntry compressedEntry =
+            new CompressedEntry(name, method, dosTime, entry.getCrc(), size, entry.getCompressedSize());
+        if (entry.getCompressedSize() <= MAX_MEMORY_SIZE) {
+            // Copying small entries from memory avoids opening the previous archive again for each of them.
+            compressedEntry.setData(ZipArchiveIndex.readData(this.channel, entry));
+        } else {
+            compressedEntry.setDataPath(this.path, ZipArchiveIndex.getDataOffset(this.channel, entry), false);
+        }
+        return compressedEntry.setFingerprint(file.getHash(), lastModified).setReused(true);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.channel != null) {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write a zip archive sequentially, from entries whose data is already compressed. Each entry is written once, with
+ * its sizes in the local header, and the central directory is written when the archive is closed. The ZIP64
+ * extensions are used only when the sizes, the offsets or the number of entries need it. An archive whose writing
+ * failed is {@link #abort() aborted} instead, so that it has no central directory. When writing to a channel,
+ * the data kept in files (big or stored entries) is transferred directly from the file to the archive.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class ZipArchiveWriter implements Closeable
+{
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int VERSION = 20;
+
+    private static final int ZIP64_VERSION = 45;
+
+    /**
+     * General purpose flag telling that the names are encoded in UTF-8.
+     */
+    private static final int UTF8_FLAG = 0x0800;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int ZIP64_END_SIZE = 44;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    /**
+     * Size of the ZIP64 extra field of a local header: id, length, size and compressed size.
+     */
+    private static final int ZIP64_LOCAL_EXTRA_SIZE = 20;
+
+    private static final int ZIP64_LOCAL_EXTRA_DATA_SIZE = 16;
+
+    private static final int EXTRA_HEADER_SIZE = 4;
+
+    private static final int SHORT_SHIFT = 16;
+
+    private static final int INT_SHIFT = 32;
+
+    private static final int BYTE_SHIFT = 8;
+
+    private static final int SHORT_VALUE_MASK = 0xFFFF;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The archive, counting the written bytes to know the offsets of the headers.
+     */
+    private final CountingOutputStream outputStream;
+
+    /**
+     * The channel under the output stream, if any.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * Central directory, built while the entries are written.
+     */
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+    private long entryCount;
+
+    private boolean closed;
+
+    /**
+     * Output stream counting the written bytes.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream
+    {
+        private long count;
+
+        private CountingOutputStream(OutputStream outputStream)
+        {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+    }
+
+    /**
+     * @param outputStream is where the archive is written, closed with the writer
+     */
+    public ZipArchiveWriter(OutputStream outputStream)
+    {
+        this.outputStream = new CountingOutputStream(outputStream);
+        this.channel = null;
+    }
+
+    /**
+     * @param channel is where the archive is written, closed with the writer
+     */
+    public ZipArchiveWriter(WritableByteChannel channel)
+    {
+        this.outputStream =
+            new CountingOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        this.channel = channel;
+    }
+
+    /**
+     * Write an entry (local header and data) at the current position of the archive.
+     *
+     * @param entry is the entry to write
+     * @throws IOException if the entry cannot be written
+     */
+    public void write(CompressedEntry entry) throws IOException
+    {
+        long offset = this.outputStream.count;
+        byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+        boolean zip64 = entry.getSize() >= ZIP64_MAGIC || entry.getCompressedSize() >= ZIP64_MAGIC;
+
+        ByteArrayOutputStream header =
+            new ByteArrayOutputStream(LOCAL_HEADER_SIZE + name.length + ZIP64_LOCAL_EXTRA_SIZE);
+        writeInt(header, LOCAL_HEADER_SIGNATURE);
+        writeShort(header, zip64 ? ZIP64_VERSION : VERSION);
+        writeShort(header, UTF8_FLAG);
+        writeShort(header, entry.getMethod());
+        writeInt(header, entry.getDosTime());
+        writeInt(header, entry.getCrc());
+        writeInt(header, zip64 ? ZIP64_MAGIC : entry.getCompressedSize());
+        writeInt(header, zip64 ? ZIP64_MAGIC : entry.getSize());
+        writeShort(header, name.length);
+        writeShort(header, zip64 ? ZIP64_LOCAL_EXTRA_SIZE : 0);
+        header.write(name);
+        if (zip64) {
+            writeShort(header, ZIP64_EXTRA_ID);
+            writeShort(header, ZIP64_LOCAL_EXTRA_DATA_SIZE);
+            writeLong(header, entry.getSize());
+            writeLong(header, entry.getCompressedSize());
+        }
+        header.writeTo(this.outputStream);
+        writeData(entry);
+
+        writeCentralHeader(entry, name, offset);
+        this.entryCount++;
+    }
+
+    private void writeData(CompressedEntry entry) throws IOException
+    {
+        Path dataPath = entry.getDataPath();
+        if (this.channel == null || dataPath == null) {
+            entry.writeData(this.outputStream);
+            return;
+        }
+        // Let the system copy the file to the archive, without going through the heap.
+        this.outputStream.flush();
+        try (FileChannel source = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            long end = entry.getDataOffset() + entry.getCompressedSize();
+            long position = entry.getDataOffset();
+            while (position < end) {
+                long count = source.transferTo(position, end - position, this.channel);
+                if (count <= 0) {
+                    throw new EOFException(String.format("Missing data for the entry [%s].", entry.getName()));
+                }
+                position += count;
+            }
+            this.outputStream.count += entry.getCompressedSize();
+        }
+    }
+
+    private void writeCentralHeader(CompressedEntry entry, byte[] name, long offset) throws IOException
+    {
+        ByteArrayOutputStream extra = new ByteArrayOutputStream();
+        if (entry.getSize() >= ZIP64_MAGIC) {
+            writeLong(extra, entry.getSize());
+        }
+        if (entry.getCompressedSize() >= ZIP64_MAGIC) {
+            writeLong(extra, entry.getCompressedSize());
+        }
+        if (offset >= ZIP64_MAGIC) {
+            writeLong(extra, offset);
+        }
+        boolean zip64 = extra.size() > 0;
+
+        ByteArrayOutputStream header = this.centralDirectory;
+        writeInt(header, CENTRAL_HEADER_SIGNATURE);
+        writeShort(header, zip64 ? ZIP64_VERSION : VERSION);
+        writeShort(header, zip64 ? ZIP64_VERSION : VERSION);
+        writeShort(header, UTF8_FLAG);
+        writeShort(header, entry.getMethod());
+        writeInt(header, entry.getDosTime());
+        writeInt(header, entry.getCrc());
+        writeInt(header, Math.min(entry.getCompressedSize(), ZIP64_MAGIC));
+        writeInt(header, Math.min(entry.getSize(), ZIP64_MAGIC));
+        writeShort(header, name.length);
+        writeShort(header, zip64 ? extra.size() + EXTRA_HEADER_SIZE : 0);
+        // Comment length, disk number, internal and external attributes.
+        writeShort(header, 0);
+        writeShort(header, 0);
+        writeShort(header, 0);
+        writeInt(header, 0);
+        writeInt(header, Math.min(offset, ZIP64_MAGIC));
+        header.write(name);
+        if (zip64) {
+            writeShort(header, ZIP64_EXTRA_ID);
+            writeShort(header, extra.size());
+            extra.writeTo(header);
+        }
+    }
+
+    /**
+     * @return the number of bytes written in the archive so far
+     */
+    public long getBytesWritten()
+    {
+        return this.outputStream.count;
+    }
+
+    /**
+     * Close the archive without writing its central directory, after a failure: an incomplete archive must never be
+     * mistaken for a complete one. Closing an archive already closed has no effect.
+     *
+     * @throws IOException if the archive cannot be closed
+     */
+    public void abort() throws IOException
+    {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.outputStream.close();
+    }
+
+    /**
+     * Write the central directory and close the archive. Closing an archive already closed (or aborted) has no
+     * effect.
+     *
+     * @throws IOException if the central directory cannot be written
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            long offset = this.outputStream.count;
+            long size = this.centralDirectory.size();
+            this.centralDirectory.writeTo(this.outputStream);
+
+            ByteArrayOutputStream end = new ByteArrayOutputStream();
+            boolean zip64 = this.entryCount >= ZIP64_MAGIC_COUNT || offset >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+            if (zip64) {
+                long zip64EndOffset = offset + size;
+                writeInt(end, ZIP64_END_SIGNATURE);
+                writeLong(end, ZIP64_END_SIZE);
+                writeShort(end, ZIP64_VERSION);
+                writeShort(end, ZIP64_VERSION);
+                writeInt(end, 0);
+                writeInt(end, 0);
+                writeLong(end, this.entryCount);
+                writeLong(end, this.entryCount);
+                writeLong(end, size);
+                writeLong(end, offset);
+                writeInt(end, ZIP64_LOCATOR_SIGNATURE);
+                writeInt(end, 0);
+                writeLong(end, zip64EndOffset);
+                writeInt(end, 1);
+            }
+            writeInt(end, END_SIGNATURE);
+            writeShort(end, 0);
+            writeShort(end, 0);
+            writeShort(end, (int) Math.min(this.entryCount, ZIP64_MAGIC_COUNT));
+            writeShort(end, (int) Math.min(this.entryCount, ZIP64_MAGIC_COUNT));
+            writeInt(end, Math.min(size, ZIP64_MAGIC));
+            writeInt(end, Math.min(offset, ZIP64_MAGIC));
+            writeShort(end, 0);
+            end.writeTo(this.outputStream);
+        } finally {
+            this.outputStream.close();
+        }
+    }
+
+    private static void writeShort(ByteArrayOutputStream outputStream, int value)
+    {
+        outputStream.write(value & BYTE_MASK);
+        outputStream.write((value >>> BYTE_SHIFT) & BYTE_MASK);
+    }
+
+    private static void writeInt(ByteArrayOutputStream outputStream, long value)
+    {
+        writeShort(outputStream, (int) (value & SHORT_VALUE_MASK));
+        writeShort(outputStream, (int) ((value >>> SHORT_SHIFT) & SHORT_VALUE_MASK));
+    }
+
+    private static void writeLong(ByteArrayOutputStream outputStream, long value)
+    {
+        writeInt(outputStream, value & ZIP64_MAGIC);
+        writeInt(outputStream, (value >>> INT_SHIFT) & ZIP64_MAGIC);
+    }
+}
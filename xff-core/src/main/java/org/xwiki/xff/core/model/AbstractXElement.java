@@ -0,0 +1,69 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.xff.core.model;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Common code of the elements of the package. A path is stored by going down the tree one name at a time, without
+ * building sub-paths, and the ordered paths are computed in one pass, each element resolving the paths of its
+ * children against its own prefix.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+abstract class AbstractXElement implements XElement
+{
+    @Override
+    public void store(Path path)
+    {
+        this.store(path, 0);
+    }
+
+    /**
+     * Store the path if related to the current element, else send it to a child element.
+     *
+     * @param path is the relative path to the file
+     * @param index is the index of the first name of the path which is relative to the current element
+     */
+    abstract void store(Path path, int index);
+
+    @Override
+    public List<Path> orderedPaths()
+    {
+        List<Path> paths = new ArrayList<Path>();
+        this.collectPaths(Paths.get(""), paths);
+        return paths;
+    }
+
+    /**
+     * @param path is the relative path to the file
+     * @param index is the index of the name
+     * @param name is the expected name
+     * @return true if the name at the given index of the path is the expected one
+     */
+    static boolean isName(Path path, int index, String name)
+    {
+        return name.equals(path.getName(index).toString());
+    }
+}
@@ -20,8 +20,6 @@
 package org.xwiki.xff.core.model;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -32,7 +30,7 @@ import java.util.TreeMap;
  * @version $Id$
  * @since 7.1
  */
-public class Class implements XElement
+public class Class extends AbstractXElement
 {
     /**
      * Prefix used in the path for classes.
@@ -64,35 +62,34 @@ public class Class implements XElement
     }
 
     @Override
-    public void store(Path path)
+    void store(Path path, int index)
     {
-        if (path.getFileName().toString().equals(Class.CLASS_FILENAME)) {
+        int count = path.getNameCount();
+        if (count == index + 1 && isName(path, index, Class.CLASS_FILENAME)) {
             this.hasFile = true;
-        } else if (path.toString().startsWith(Property.PROPERTY_HINT)) {
-            String propertyName = path.getName(1).toString();
-            Path subPath = path.subpath(2, path.getNameCount());
-            if (!this.properties.containsKey(propertyName)) {
-                this.properties.put(propertyName, new Property());
+        } else if (count == index + 3 && isName(path, index, Property.PROPERTY_HINT)) {
+            String propertyName = path.getName(index + 1).toString();
+            Property property = this.properties.get(propertyName);
+            if (property == null) {
+                property = new Property();
+                this.properties.put(propertyName, property);
             }
-            this.properties.get(propertyName).store(subPath);
+            property.store(path, index + 2);
         }
     }
 
     @Override
-    public List<Path> orderedPaths()
+    public void collectPaths(Path prefix, List<Path> paths)
     {
-        List<Path> paths = new ArrayList<Path>();
         if (this.hasFile) {
-            paths.add(Paths.get(Class.CLASS_FILENAME));
+            paths.add(prefix.resolve(Class.CLASS_FILENAME));
         }
-        for (String propertyName : this.properties.keySet()) {
-            List<Path> subPaths = this.properties.get(propertyName).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(Property.PROPERTY_HINT, propertyName, subPath.toString());
-                paths.add(outPath);
+        if (!this.properties.isEmpty()) {
+            Path propertiesPath = prefix.resolve(Property.PROPERTY_HINT);
+            for (Map.Entry<String, Property> property : this.properties.entrySet()) {
+                property.getValue().collectPaths(propertiesPath.resolve(property.getKey()), paths);
             }
         }
-        return paths;
     }
 
 }
@@ -20,11 +20,7 @@
 package org.xwiki.xff.core.model;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  * Represent the structure of an object.
@@ -32,7 +28,7 @@ import java.util.TreeMap;
  * @version $Id$
  * @since 7.1
  */
-public class Object implements XElement
+public class Object extends AbstractXElement
 {
     /**
      * Prefix used in the path for objects.
@@ -52,7 +48,7 @@ public class Object implements XElement
     /**
      * List of paths for properties in this object.
      */
-    private Map<String, Property> properties;
+    private Property properties;
 
     /**
      * Empty constructors initializing attributes.
@@ -60,39 +56,27 @@ public class Object implements XElement
     public Object()
     {
         this.hasFile = false;
-        this.properties = new TreeMap<String, Property>();
+        this.properties = new Property();
     }
 
     @Override
-    public void store(Path path)
+    void store(Path path, int index)
     {
-        if (Object.OBJECT_FILENAME.equals(path.getFileName().toString())) {
+        int count = path.getNameCount();
+        if (count == index + 1 && isName(path, index, Object.OBJECT_FILENAME)) {
             this.hasFile = true;
-        } else if (path.toString().startsWith(Property.PROPERTY_HINT)) {
-            String propertyName = path.getName(0).toString();
-            Path subPath = path.subpath(1, path.getNameCount());
-            if (!this.properties.containsKey(propertyName)) {
-                this.properties.put(propertyName, new Property());
-            }
-            this.properties.get(propertyName).store(subPath);
+        } else if (count == index + 2 && isName(path, index, Property.PROPERTY_HINT)) {
+            this.properties.store(path, index + 1);
         }
     }
 
     @Override
-    public List<Path> orderedPaths()
+    public void collectPaths(Path prefix, List<Path> paths)
     {
-        List<Path> paths = new ArrayList<Path>();
         if (this.hasFile) {
-            paths.add(Paths.get(Object.OBJECT_FILENAME));
+            paths.add(prefix.resolve(Object.OBJECT_FILENAME));
         }
-        for (String propertyName : this.properties.keySet()) {
-            List<Path> subPaths = this.properties.get(propertyName).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(Property.PROPERTY_HINT, subPath.toString());
-                paths.add(outPath);
-            }
-        }
-        return paths;
+        this.properties.collectPaths(prefix.resolve(Property.PROPERTY_HINT), paths);
     }
 
 }
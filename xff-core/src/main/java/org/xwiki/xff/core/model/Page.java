@@ -20,8 +20,6 @@
 package org.xwiki.xff.core.model;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -32,7 +30,7 @@ import java.util.TreeMap;
  * @version $Id$
  * @since 7.1
  */
-public class Page implements XElement
+public class Page extends AbstractXElement
 {
     /**
      * Prefix used in the path for pages.
@@ -44,6 +42,11 @@ public class Page implements XElement
      */
     public static final String PAGE_FILENAME = "page.xml";
 
+    /**
+     * Separator between the class name and the number of an object, as in the path.
+     */
+    private static final String OBJECT_SEPARATOR = "/";
+
     /**
      * Remember if there is a file describing the page.
      */
@@ -52,20 +55,20 @@ public class Page implements XElement
     /**
      * List of paths for metadata for this page.
      */
-    private List<Path> metadata;
+    private Property metadata;
 
     /**
      * List of paths for attachments in this page.
      */
-    private Map<String, Attachment> attachments;
+    private Attachment attachments;
 
     /**
-     * List of paths for classes in this page.
+     * Class defined in this page.
      */
-    private Map<String, org.xwiki.xff.core.model.Class> classes;
+    private org.xwiki.xff.core.model.Class xClass;
 
     /**
-     * List of paths for objects in this page.
+     * List of paths for objects in this page, identified by "className/number".
      */
     private Map<String, org.xwiki.xff.core.model.Object> objects;
 
@@ -75,78 +78,52 @@ public class Page implements XElement
     public Page()
     {
         this.hasFile = false;
-        this.metadata = new ArrayList<Path>();
-        this.attachments = new TreeMap<String, Attachment>();
-        this.classes = new TreeMap<String, org.xwiki.xff.core.model.Class>();
+        this.metadata = new Property();
+        this.attachments = new Attachment();
+        this.xClass = new org.xwiki.xff.core.model.Class();
         this.objects = new TreeMap<String, org.xwiki.xff.core.model.Object>();
     }
 
     @Override
-    public void store(Path path)
+    void store(Path path, int index)
     {
-        if (Page.PAGE_FILENAME.equals(path.getFileName().toString())) {
-            this.hasFile = true;
-        } else if (path.toString().startsWith(Property.PROPERTY_HINT)) {
-            if (path.getNameCount() == 2) {
-                this.metadata.add(path);
-            }
-
-        } else if (path.toString().startsWith(Attachment.ATTACHMENTS_HINT)) {
-            String attachmentName = path.getName(1).toString();
-            Path subPath = path.subpath(1, path.getNameCount());
-            if (!this.attachments.containsKey(attachmentName)) {
-                this.attachments.put(attachmentName, new Attachment());
-            }
-            this.attachments.get(attachmentName).store(subPath);
-
-        } else if (path.toString().startsWith(Class.CLASS_HINT)) {
-            String className = path.getName(1).toString();
-            Path subPath = path.subpath(1, path.getNameCount());
-            if (!this.classes.containsKey(className)) {
-                this.classes.put(className, new org.xwiki.xff.core.model.Class());
+        int count = path.getNameCount();
+        if (count == index + 1) {
+            if (isName(path, index, Page.PAGE_FILENAME)) {
+                this.hasFile = true;
             }
-            this.classes.get(className).store(subPath);
-        } else if (path.toString().startsWith(Object.OBJECT_HINT)) {
-            String objectName = path.subpath(1, 3).toString();
-            Path subPath = path.subpath(3, path.getNameCount());
-            if (!this.objects.containsKey(objectName)) {
-                this.objects.put(objectName, new org.xwiki.xff.core.model.Object());
+        } else if (isName(path, index, Property.PROPERTY_HINT)) {
+            this.metadata.store(path, index + 1);
+        } else if (isName(path, index, Attachment.ATTACHMENTS_HINT)) {
+            this.attachments.store(path, index + 1);
+        } else if (isName(path, index, Class.CLASS_HINT)) {
+            this.xClass.store(path, index + 1);
+        } else if (count > index + 3 && isName(path, index, Object.OBJECT_HINT)) {
+            String objectName =
+                path.getName(index + 1).toString() + OBJECT_SEPARATOR + path.getName(index + 2).toString();
+            org.xwiki.xff.core.model.Object object = this.objects.get(objectName);
+            if (object == null) {
+                object = new org.xwiki.xff.core.model.Object();
+                this.objects.put(objectName, object);
             }
-            this.objects.get(objectName).store(subPath);
+            object.store(path, index + 3);
         }
     }
 
     @Override
-    public List<Path> orderedPaths()
+    public void collectPaths(Path prefix, List<Path> paths)
     {
-        List<Path> paths = new ArrayList<Path>();
         if (this.hasFile) {
-            paths.add(Paths.get(Page.PAGE_FILENAME));
-        }
-        for (Path metadataPath : this.metadata) {
-            paths.add(metadataPath);
-        }
-        for (String attachmentName : this.attachments.keySet()) {
-            List<Path> subPaths = this.attachments.get(attachmentName).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(Attachment.ATTACHMENTS_HINT, subPath.toString());
-                paths.add(outPath);
-            }
-        }
-        for (String className : this.classes.keySet()) {
-            List<Path> subPaths = this.classes.get(className).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(org.xwiki.xff.core.model.Class.CLASS_HINT, subPath.toString());
-                paths.add(outPath);
-            }
+            paths.add(prefix.resolve(Page.PAGE_FILENAME));
         }
-        for (String objectName : this.objects.keySet()) {
-            List<Path> subPaths = this.objects.get(objectName).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(org.xwiki.xff.core.model.Object.OBJECT_HINT, objectName, subPath.toString());
-                paths.add(outPath);
+        this.metadata.collectPaths(prefix.resolve(Property.PROPERTY_HINT), paths);
+        this.attachments.collectPaths(prefix.resolve(Attachment.ATTACHMENTS_HINT), paths);
+        this.xClass.collectPaths(prefix.resolve(org.xwiki.xff.core.model.Class.CLASS_HINT), paths);
+        if (!this.objects.isEmpty()) {
+            Path objectsPath = prefix.resolve(org.xwiki.xff.core.model.Object.OBJECT_HINT);
+            for (Map.Entry<String, org.xwiki.xff.core.model.Object> object : this.objects.entrySet()) {
+                object.getValue().collectPaths(objectsPath.resolve(object.getKey()), paths);
             }
         }
-        return paths;
     }
 }
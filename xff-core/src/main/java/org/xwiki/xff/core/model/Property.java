@@ -20,8 +20,6 @@
 package org.xwiki.xff.core.model;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -32,7 +30,7 @@ import java.util.TreeSet;
  * @version $Id$
  * @since 7.1
  */
-public class Property implements XElement
+public class Property extends AbstractXElement
 {
     /**
      * Prefix used in the path for attachments.
@@ -53,20 +51,18 @@ public class Property implements XElement
     }
 
     @Override
-    public void store(Path path)
+    void store(Path path, int index)
     {
-        if (path.getNameCount() == 1) {
-            this.properties.add(path.toString());
+        if (path.getNameCount() == index + 1) {
+            this.properties.add(path.getName(index).toString());
         }
     }
 
     @Override
-    public List<Path> orderedPaths()
+    public void collectPaths(Path prefix, List<Path> paths)
     {
-        List<Path> paths = new ArrayList<Path>();
         for (String propertyName : this.properties) {
-            paths.add(Paths.get(propertyName));
+            paths.add(prefix.resolve(propertyName));
         }
-        return paths;
     }
 }
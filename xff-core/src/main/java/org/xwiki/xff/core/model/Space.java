@@ -20,8 +20,6 @@
 package org.xwiki.xff.core.model;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -32,7 +30,7 @@ import java.util.TreeMap;
  * @version $Id$
  * @since 7.1
  */
-public class Space implements XElement
+public class Space extends AbstractXElement
 {
     /**
      * Prefix used in the path for spaces.
@@ -70,48 +68,71 @@ public class Space implements XElement
     }
 
     @Override
-    public void store(Path path)
+    void store(Path path, int index)
     {
-        if (path.getFileName().toString().equals(Space.SPACE_FILENAME)) {
+        int count = path.getNameCount();
+        if (count == index + 1 && isName(path, index, Space.SPACE_FILENAME)) {
             this.hasFile = true;
-        } else if (path.toString().startsWith(Page.PAGE_HINT)) {
-            String pageName = path.getName(1).toString();
-            Path subPath = path.subpath(2, path.getNameCount());
-            if (!this.pages.containsKey(pageName)) {
-                this.pages.put(pageName, new Page());
+        } else if (count > index + 2 && isName(path, index, Page.PAGE_HINT)) {
+            String pageName = path.getName(index + 1).toString();
+            Page page = this.pages.get(pageName);
+            if (page == null) {
+                page = new Page();
+                this.pages.put(pageName, page);
             }
-            this.pages.get(pageName).store(subPath);
-        } else if (path.toString().startsWith(Space.SPACE_HINT)) {
-            String spaceName = path.getName(1).toString();
-            Path subPath = path.subpath(2, path.getNameCount());
-            if (!this.spaces.containsKey(spaceName)) {
-                this.spaces.put(spaceName, new Space());
-            }
-            this.spaces.get(spaceName).store(subPath);
+            page.store(path, index + 2);
+        } else if (count > index + 2 && isName(path, index, Space.SPACE_HINT)) {
+            storeSpace(this.spaces, path, index + 1);
         }
     }
 
     @Override
-    public List<Path> orderedPaths()
+    public void collectPaths(Path prefix, List<Path> paths)
     {
-        List<Path> paths = new ArrayList<Path>();
         if (this.hasFile) {
-            paths.add(Paths.get(Space.SPACE_FILENAME));
+            paths.add(prefix.resolve(Space.SPACE_FILENAME));
         }
-        for (String pageName : this.pages.keySet()) {
-            List<Path> subPaths = this.pages.get(pageName).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(Page.PAGE_HINT, pageName, subPath.toString());
-                paths.add(outPath);
+        if (!this.pages.isEmpty()) {
+            Path pagesPath = prefix.resolve(Page.PAGE_HINT);
+            for (Map.Entry<String, Page> page : this.pages.entrySet()) {
+                page.getValue().collectPaths(pagesPath.resolve(page.getKey()), paths);
             }
         }
-        for (String spaceName : this.spaces.keySet()) {
-            List<Path> subPaths = this.spaces.get(spaceName).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(Space.SPACE_HINT, spaceName, subPath.toString());
-                paths.add(outPath);
+        collectSpaces(this.spaces, prefix, paths);
+    }
+
+    /**
+     * Store a path in the space named by the path at the given index, creating the space if needed.
+     *
+     * @param spaces are the spaces of the parent element
+     * @param path is the relative path to the file
+     * @param index is the index of the name of the space in the path
+     */
+    static void storeSpace(Map<String, Space> spaces, Path path, int index)
+    {
+        String spaceName = path.getName(index).toString();
+        Space space = spaces.get(spaceName);
+        if (space == null) {
+            space = new Space();
+            spaces.put(spaceName, space);
+        }
+        space.store(path, index + 1);
+    }
+
+    /**
+     * Add the ordered paths of the spaces of a parent element.
+     *
+     * @param spaces are the spaces of the parent element
+     * @param prefix is the path of the parent element
+     * @param paths is the list where the ordered paths are added
+     */
+    static void collectSpaces(Map<String, Space> spaces, Path prefix, List<Path> paths)
+    {
+        if (!spaces.isEmpty()) {
+            Path spacesPath = prefix.resolve(Space.SPACE_HINT);
+            for (Map.Entry<String, Space> space : spaces.entrySet()) {
+                space.getValue().collectPaths(spacesPath.resolve(space.getKey()), paths);
             }
         }
-        return paths;
     }
 }
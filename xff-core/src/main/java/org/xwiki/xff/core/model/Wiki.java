@@ -20,8 +20,6 @@
 package org.xwiki.xff.core.model;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -32,7 +30,7 @@ import java.util.TreeMap;
  * @version $Id$
  * @since 7.1
  */
-public class Wiki implements XElement
+public class Wiki extends AbstractXElement
 {
     /**
      * Prefix used in the path for wikis.
@@ -64,34 +62,22 @@ public class Wiki implements XElement
     }
 
     @Override
-    public void store(Path path)
+    void store(Path path, int index)
     {
-        if (path.getFileName().toString().equals(Wiki.WIKI_FILENAME)) {
+        int count = path.getNameCount();
+        if (count == index + 1 && isName(path, index, Wiki.WIKI_FILENAME)) {
             this.hasFile = true;
-        } else if (path.toString().startsWith(Space.SPACE_HINT)) {
-            String spaceName = path.getName(1).toString();
-            Path subPath = path.subpath(2, path.getNameCount());
-            if (!this.spaces.containsKey(spaceName)) {
-                this.spaces.put(spaceName, new Space());
-            }
-            this.spaces.get(spaceName).store(subPath);
+        } else if (count > index + 2 && isName(path, index, Space.SPACE_HINT)) {
+            Space.storeSpace(this.spaces, path, index + 1);
         }
     }
 
     @Override
-    public List<Path> orderedPaths()
+    public void collectPaths(Path prefix, List<Path> paths)
     {
-        List<Path> paths = new ArrayList<Path>();
         if (this.hasFile) {
-            paths.add(Paths.get(Wiki.WIKI_FILENAME));
+            paths.add(prefix.resolve(Wiki.WIKI_FILENAME));
         }
-        for (String spaceName : this.spaces.keySet()) {
-            List<Path> subPaths = this.spaces.get(spaceName).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(Space.SPACE_HINT, spaceName, subPath.toString());
-                paths.add(outPath);
-            }
-        }
-        return paths;
+        Space.collectSpaces(this.spaces, prefix, paths);
     }
 }
@@ -44,4 +44,19 @@ public interface XElement
      * @return a list of path correctly ordered for XFF.
      */
     List<Path> orderedPaths();
+
+    /**
+     * Add the relative paths of the files of this element to a list, in the XFF order. The paths are resolved against
+     * the given prefix, so that a whole package can be ordered in one pass without rebuilding the paths at each level.
+     *
+     * @param prefix is the path of this element, relative to the root of the package
+     * @param paths is the list where the ordered paths are added
+     * @since 0.4.1
+     */
+    default void collectPaths(Path prefix, List<Path> paths)
+    {
+        for (Path path : this.orderedPaths()) {
+            paths.add(prefix.resolve(path));
+        }
+    }
 }
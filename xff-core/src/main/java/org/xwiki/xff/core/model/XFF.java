@@ -20,8 +20,6 @@
 package org.xwiki.xff.core.model;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -32,111 +30,53 @@ import java.util.TreeMap;
  * @version $Id$
  * @since 7.1
  */
-public class XFF implements XElement
+public class XFF extends AbstractXElement
 {
+    /**
+     * List of paths for wikis in this package.
+     */
+    private Map<String, Wiki> wikis;
 
     /**
-     * List of paths for elements in this package.
+     * List of paths for spaces at the root of this package.
      */
-    private Map<String, XElement> elements;
+    private Map<String, Space> spaces;
 
     /**
      * Empty constructors initializing attributes.
      */
     public XFF()
     {
-        this.elements = new TreeMap<String, XElement>();
-    }
-
-    private void storeWiki(Path path)
-    {
-        String wikiName = path.subpath(0, 2).toString();
-        Path subPath = path.subpath(2, path.getNameCount());
-        if (!this.elements.containsKey(wikiName)) {
-            this.elements.put(wikiName, new Wiki());
-        }
-        this.elements.get(wikiName).store(subPath);
-    }
-
-    private void storeSpace(Path path)
-    {
-        String spaceName = path.subpath(0, 2).toString();
-        Path subPath = path.subpath(2, path.getNameCount());
-        if (!this.elements.containsKey(spaceName)) {
-            this.elements.put(spaceName, new Space());
-        }
-        this.elements.get(spaceName).store(subPath);
-    }
-
-    private void storePage(Path path)
-    {
-        String pageName = path.subpath(0, 2).toString();
-        Path subPath = path.subpath(2, path.getNameCount());
-        if (!this.elements.containsKey(pageName)) {
-            this.elements.put(pageName, new Space());
-        }
-        this.elements.get(pageName).store(subPath);
-    }
-
-    private void storeAttachment(Path path)
-    {
-        String attachmentName = path.subpath(0, 2).toString();
-        Path subPath = path.subpath(1, path.getNameCount());
-        if (!this.elements.containsKey(attachmentName)) {
-            this.elements.put(attachmentName, new Space());
-        }
-        this.elements.get(attachmentName).store(subPath);
-    }
-
-    private void storeClass(Path path)
-    {
-        String className = path.subpath(0, 1).toString();
-        Path subPath = path.subpath(1, path.getNameCount());
-        if (!this.elements.containsKey(className)) {
-            this.elements.put(className, new Space());
-        }
-        this.elements.get(className).store(subPath);
-    }
-
-    private void storeObject(Path path)
-    {
-        String objectName = path.subpath(0, 3).toString();
-        Path subPath = path.subpath(3, path.getNameCount());
-        if (!this.elements.containsKey(objectName)) {
-            this.elements.put(objectName, new Space());
-        }
-        this.elements.get(objectName).store(subPath);
+        this.wikis = new TreeMap<String, Wiki>();
+        this.spaces = new TreeMap<String, Space>();
     }
 
     @Override
-    public void store(Path path)
+    void store(Path path, int index)
     {
-        if (path.toString().startsWith(Wiki.WIKI_HINT)) {
-            this.storeWiki(path);
-        } else if (path.toString().startsWith(Space.SPACE_HINT)) {
-            this.storeSpace(path);
-        } else if (path.toString().startsWith(Page.PAGE_HINT)) {
-            this.storePage(path);
-        } else if (path.toString().startsWith(Attachment.ATTACHMENTS_HINT)) {
-            this.storeAttachment(path);
-        } else if (path.toString().startsWith(Class.CLASS_HINT)) {
-            this.storeClass(path);
-        } else if (path.toString().startsWith(Object.OBJECT_HINT)) {
-            this.storeObject(path);
+        int count = path.getNameCount();
+        if (count > index + 2 && isName(path, index, Wiki.WIKI_HINT)) {
+            String wikiName = path.getName(index + 1).toString();
+            Wiki wiki = this.wikis.get(wikiName);
+            if (wiki == null) {
+                wiki = new Wiki();
+                this.wikis.put(wikiName, wiki);
+            }
+            wiki.store(path, index + 2);
+        } else if (count > index + 2 && isName(path, index, Space.SPACE_HINT)) {
+            Space.storeSpace(this.spaces, path, index + 1);
         }
     }
 
     @Override
-    public List<Path> orderedPaths()
+    public void collectPaths(Path prefix, List<Path> paths)
     {
-        List<Path> paths = new ArrayList<Path>();
-        for (String elementName : this.elements.keySet()) {
-            List<Path> subPaths = this.elements.get(elementName).orderedPaths();
-            for (Path subPath : subPaths) {
-                Path outPath = Paths.get(elementName, subPath.toString());
-                paths.add(outPath);
+        Space.collectSpaces(this.spaces, prefix, paths);
+        if (!this.wikis.isEmpty()) {
+            Path wikisPath = prefix.resolve(Wiki.WIKI_HINT);
+            for (Map.Entry<String, Wiki> wiki : this.wikis.entrySet()) {
+                wiki.getValue().collectPaths(wikisPath.resolve(wiki.getKey()), paths);
             }
         }
-        return paths;
     }
 }
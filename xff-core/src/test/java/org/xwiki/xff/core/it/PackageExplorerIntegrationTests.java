@@ -19,16 +19,39 @@
  */
 package org.xwiki.xff.core.it;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.junit.Test;
+import org.xwiki.xff.core.EntryFilter;
+import org.xwiki.xff.core.PackageGenerator;
+import org.xwiki.xff.core.PackageIndex;
+import org.xwiki.xff.core.PackageIndexReader;
 import org.xwiki.xff.core.XFFExplorer;
+import org.xwiki.xff.core.XFFZipper;
+import org.xwiki.xff.core.ZipArchiveIndex;
 
 public class PackageExplorerIntegrationTests
 {
@@ -73,4 +96,130 @@ public class PackageExplorerIntegrationTests
             System.out.println(path.toString());
         }
     }
+
+    @Test
+    public void filtered() throws IOException
+    {
+        Path xffPath = Paths.get("target/test-classes/package");
+        EntryFilter filter = new EntryFilter(Arrays.asList("wikis/xwiki/spaces/Space/**"),
+            Arrays.asList("**/attachments/**", "**/SubSpace/**"));
+        assertFalse(filter.acceptFolder(Paths.get("wikis/templatewiki")));
+        assertFalse(filter.acceptFolder(Paths.get("wikis/xwiki/spaces/MySpace")));
+        assertFalse(filter.acceptFolder(Paths.get("wikis/xwiki/spaces/Space/spaces/SubSpace")));
+        assertTrue(filter.acceptFolder(Paths.get("wikis/xwiki")));
+        assertTrue(filter.accept("wikis/xwiki/spaces/Space/space.xml"));
+        assertFalse(filter.accept("wikis/xwiki/spaces/Space/pages/Page/attachments/logo1.png"));
+
+        List<Path> paths = new ArrayList<Path>();
+        for (Path path : new XFFExplorer(xffPath, filter)) {
+            paths.add(path);
+        }
+        assertEquals(Arrays.asList(Paths.get("wikis/xwiki/spaces/Space/space.xml"),
+            Paths.get("wikis/xwiki/spaces/Space/pages/Page/page.xml"),
+            Paths.get("wikis/xwiki/spaces/Space/pages/Page/classes/class.xml"),
+            Paths.get("wikis/xwiki/spaces/Space/pages/Page/classes/properties/answer/customDisplay.xwiki21"),
+            Paths.get("wikis/xwiki/spaces/Space/pages/Page/objects/Space.Page/0/object.xml"),
+            Paths.get("wikis/xwiki/spaces/Space/pages/Page/objects/XWiki.StyleSheetExtension/0/object.xml"),
+            Paths.get("wikis/xwiki/spaces/Space/pages/Page/objects/XWiki.StyleSheetExtension/0/properties/code.css")),
+            paths);
+    }
+
+    @Test
+    public void indexed() throws Exception
+    {
+        Path xffPath = Paths.get("target/test-classes/package");
+        Path zipPath = Files.createTempFile("xff-", ".xff");
+        Path indexPath = PackageIndex.getIndexPath(zipPath);
+        try {
+            XFFZipper zipper = new XFFZipper(xffPath);
+            zipper.setIndex(indexPath);
+            zipper.xff(zipPath);
+
+            String page = "wikis/xwiki/spaces/Space/pages/Page";
+            assertEquals(page, PackageIndex.getOwner(page + "/objects/Space.Page/0/object.xml"));
+            assertEquals(Arrays.asList("wikis/xwiki", "wikis/xwiki/spaces/Space"), PackageIndex.getAncestors(page));
+
+            List<String> names = new ArrayList<String>();
+            try (PackageIndexReader index = PackageIndexReader.open(indexPath, zipPath);
+                FileChannel channel = FileChannel.open(zipPath)) {
+                assertNull(index.find("wikis/xwiki/spaces/Space/pages/Missing"));
+                PackageIndex.Range range = index.find(page);
+                byte[] data = new byte[(int) range.getLength()];
+                channel.position(range.getOffset());
+                new DataInputStream(Channels.newInputStream(channel)).readFully(data);
+                ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(data));
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    names.add(entry.getName());
+                }
+            }
+            assertEquals(Arrays.asList(page + "/page.xml", page + "/attachments/logo1.png",
+                page + "/attachments/logo2.png", page + "/classes/class.xml",
+                page + "/classes/properties/answer/customDisplay.xwiki21", page + "/objects/Space.Page/0/object.xml",
+                page + "/objects/XWiki.StyleSheetExtension/0/object.xml",
+                page + "/objects/XWiki.StyleSheetExtension/0/properties/code.css"), names);
+
+            // An index which does not match the package is ignored, even when the package has the same size.
+            try (FileChannel channel = FileChannel.open(zipPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // Change the CRC-32 of the first entry in the central directory.
+                ByteBuffer crc = ByteBuffer.allocate(1);
+                long position = ZipArchiveIndex.locate(channel).getOffset() + 16;
+                channel.read(crc, position);
+                crc.put(0, (byte) (crc.get(0) ^ 1));
+                crc.rewind();
+                channel.write(crc, position);
+            }
+            assertNull(PackageIndexReader.open(indexPath, zipPath));
+        } finally {
+            Files.deleteIfExists(indexPath);
+            Files.deleteIfExists(zipPath);
+        }
+    }
+
+    @Test
+    public void generated() throws Exception
+    {
+        PackageGenerator generator = new PackageGenerator(42);
+        generator.setWikis(2);
+        generator.setSpaces(2, 2);
+        generator.setPages(2);
+        generator.setClasses(1, 3);
+        generator.setObjects(12);
+        generator.setSizes(100, 10, true);
+        generator.setAttachments(2, 10, 1000);
+
+        Path folder = Files.createTempDirectory("xff-");
+        try {
+            generator.generate(folder);
+            long entryCount = generator.getEntryCount();
+            List<String> paths = new ArrayList<String>();
+            for (Path path : new XFFExplorer(folder)) {
+                paths.add(path.toString().replace('\\', '/'));
+            }
+            assertEquals(entryCount, paths.size());
+            assertTrue(paths.contains("wikis/wiki1/spaces/Space1/spaces/Space0/pages/Page1/objects/Classes.Class0/11/"
+                + "properties/property2.txt"));
+            assertTrue(paths.contains("wikis/wiki0/spaces/Classes/pages/Class0/classes/class.xml"));
+
+            // The archive has the same files, in the XFF order, and only depends on the seed.
+            ByteArrayOutputStream archive = new ByteArrayOutputStream();
+            generator.generate(archive);
+            assertEquals(entryCount, generator.getEntryCount());
+            List<String> names = new ArrayList<String>();
+            try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    names.add(entry.getName());
+                }
+            }
+            assertEquals(paths, names);
+            ByteArrayOutputStream sameArchive = new ByteArrayOutputStream();
+            generator.generate(sameArchive);
+            assertArrayEquals(archive.toByteArray(), sameArchive.toByteArray());
+        } finally {
+            try (Stream<Path> files = Files.walk(folder)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
 }
@@ -19,17 +19,23 @@
  */
 package org.xwiki.filter.xff.input;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import javax.inject.Inject;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.filter.FilterException;
+import org.xwiki.filter.xff.internal.DescriptorInputStream;
+import org.xwiki.filter.xff.internal.JAXBContextRegistry;
+import org.xwiki.filter.xff.internal.PathInputStream;
+import org.xwiki.filter.xff.internal.StAXDescriptorReader;
 import org.xwiki.filter.xff.internal.input.XFFInputFilter;
 
 /**
@@ -56,6 +62,11 @@ public abstract class AbstractReader implements Reader
      */
     protected XFFInputFilter proxyFilter;
 
+    /**
+     * Properties of the import.
+     */
+    protected XFFInputProperties properties;
+
     /**
      * Child reader.
      */
@@ -71,14 +82,59 @@ public abstract class AbstractReader implements Reader
      */
     protected String lastReaderId;
 
+    /**
+     * Hint of the child reader.
+     */
+    private String readerHint;
+
+    /**
+     * What the readers of the import share, e.g. the child readers to reuse instead of looking up new ones.
+     */
+    private ImportContext importContext;
+
     /**
      * The component manager. We need it because we have to access components dynamically.
      */
     @Inject
     private ComponentManager componentManager;
 
+    @Override
+    public void setProperties(XFFInputProperties properties)
+    {
+        this.properties = properties;
+    }
+
+    /**
+     * @param importContext is what the readers of the import share, from which the child readers are taken
+     * @since 0.4.1
+     */
+    public void setImportContext(ImportContext importContext)
+    {
+        this.importContext = importContext;
+    }
+
+    @Override
+    public boolean isReusable()
+    {
+        return true;
+    }
+
+    @Override
+    public void reset()
+    {
+        this.filter = null;
+        this.proxyFilter = null;
+        this.reader = null;
+        this.readerHint = null;
+        this.started = false;
+        this.lastReaderId = null;
+    }
+
     /**
-     * Convert XML input stream into a JAX-B object.
+     * Convert XML input stream into a JAX-B object. The {@link javax.xml.bind.JAXBContext} of each type is shared
+     * between all readers (see {@link JAXBContextRegistry}). When {@link XFFInputProperties#isStreamingDescriptors()}
+     * is enabled, the XML is read with {@link StAXDescriptorReader} instead. If the XML has already been parsed (see
+     * {@link DescriptorInputStream}), the parsed object is returned directly.
      * 
      * @param inputStream is the XML as input.
      * @param type is the class in which the XML should be converted
@@ -86,15 +142,84 @@ public abstract class AbstractReader implements Reader
      */
     protected Object unmarshal(InputStream inputStream, Class<?> type)
     {
+        if (inputStream instanceof DescriptorInputStream) {
+            Object descriptor = ((DescriptorInputStream) inputStream).getDescriptor();
+            if (type.isInstance(descriptor)) {
+                return descriptor;
+            }
+        }
+        ImportMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.start(ImportMetrics.Stage.UNMARSHAL, null);
+        }
         try {
-            JAXBContext jc = JAXBContext.newInstance(type);
-            Unmarshaller unmarshaller = jc.createUnmarshaller();
-            return unmarshaller.unmarshal(inputStream);
-        } catch (JAXBException e) {
+            if (this.properties != null && this.properties.isStreamingDescriptors()) {
+                return StAXDescriptorReader.read(inputStream, type);
+            }
+            return JAXBContextRegistry.unmarshal(inputStream, type);
+        } catch (JAXBException | XMLStreamException e) {
             String message = String.format("Unable to unmarshal the type '%s'", type.toString());
             logger.error(message, e);
             return null;
+        } finally {
+            if (metrics != null) {
+                metrics.stop();
+            }
+        }
+    }
+
+    /**
+     * Read a property file (e.g. <tt>properties/content.xwiki21</tt>) as a UTF-8 string. The files of a package
+     * folder are read directly from the file system, big ones being mapped in memory.
+     *
+     * @param path is the path of the file, to report errors
+     * @param inputStream is the content of the file
+     * @return the content of the file
+     * @throws FilterException if the file cannot be read
+     * @since 0.4.1
+     */
+    protected String readProperty(EntryPath path, InputStream inputStream) throws FilterException
+    {
+        ImportMetrics metrics = getMetrics();
+        if (metrics != null) {
+            metrics.start(ImportMetrics.Stage.PROPERTY, null);
         }
+        try {
+            if (inputStream instanceof PathInputStream && this.importContext != null) {
+                // Read the file directly instead of going through the stream.
+                PathInputStream pathInputStream = (PathInputStream) inputStream;
+                if (metrics != null) {
+                    metrics.addBytes(pathInputStream.getSize());
+                }
+                return this.importContext.readProperty(pathInputStream.getPath());
+            }
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            String message = String.format("Unable to read a string from '%s'.", path.toString());
+            throw new FilterException(message, e);
+        } finally {
+            if (metrics != null) {
+                metrics.stop();
+            }
+        }
+    }
+
+    /**
+     * @return what the readers of the import share, or null if this reader is not part of an import
+     * @since 0.4.1
+     */
+    protected ImportContext getImportContext()
+    {
+        return this.importContext;
+    }
+
+    /**
+     * @return the metrics of the import, or null if they are not collected
+     * @since 0.4.1
+     */
+    protected ImportMetrics getMetrics()
+    {
+        return this.importContext != null ? this.importContext.getMetrics() : null;
     }
 
     /**
@@ -108,8 +233,14 @@ public abstract class AbstractReader implements Reader
      */
     protected Reader getReader(String hint) throws FilterException
     {
+        this.readerHint = hint;
+        if (this.importContext != null) {
+            this.reader = this.importContext.acquireReader(hint);
+            return this.reader;
+        }
         try {
             this.reader = (Reader) this.componentManager.getInstance(Reader.class, hint);
+            this.reader.setProperties(this.properties);
             return this.reader;
         } catch (ComponentLookupException e) {
             String message =
@@ -118,6 +249,24 @@ public abstract class AbstractReader implements Reader
         }
     }
 
+    /**
+     * Close the child reader, if any, and give it back to the pool of readers.
+     *
+     * @throws FilterException whenever there is problem to close the child reader
+     * @since 0.4.1
+     */
+    protected void closeReader() throws FilterException
+    {
+        if (this.reader != null) {
+            Reader closedReader = this.reader;
+            this.reader = null;
+            closedReader.close();
+            if (this.importContext != null) {
+                this.importContext.releaseReader(this.readerHint, closedReader);
+            }
+        }
+    }
+
     protected void setFilters(Object filter, XFFInputFilter proxyFilter)
     {
         this.filter = filter;
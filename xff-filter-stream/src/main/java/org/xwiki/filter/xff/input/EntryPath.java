@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.input;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Path of a file of a XFF package, split once in its names so that the {@link Reader}s can route it without
+ * building new {@link Path}s at each level: a sub-path is only a view on the same names.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class EntryPath
+{
+    /**
+     * Separator of the names in a zip entry name.
+     */
+    private static final char SEPARATOR = '/';
+
+    /**
+     * All the names of the path, shared by its sub-paths.
+     */
+    private final String[] names;
+
+    /**
+     * Index of the first name of this path.
+     */
+    private final int begin;
+
+    private EntryPath(String[] names, int begin)
+    {
+        this.names = names;
+        this.begin = begin;
+    }
+
+    /**
+     * Split the name of a zip entry.
+     *
+     * @param entryName is the name of the entry, with '/' as separator
+     * @return the path of the entry
+     */
+    public static EntryPath parse(String entryName)
+    {
+        List<String> names = new ArrayList<String>();
+        int start = 0;
+        int length = entryName.length();
+        while (start <= length) {
+            int end = entryName.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                names.add(entryName.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return new EntryPath(names.toArray(new String[names.size()]), 0);
+    }
+
+    /**
+     * @param path is a relative path of a file of the package
+     * @return the same path, split in names
+     */
+    public static EntryPath of(Path path)
+    {
+        String[] names = new String[path.getNameCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = path.getName(i).toString();
+        }
+        return new EntryPath(names, 0);
+    }
+
+    /**
+     * @return the number of names in the path
+     */
+    public int getNameCount()
+    {
+        return this.names.length - this.begin;
+    }
+
+    /**
+     * @param index is the index of the name, 0 being the first name of this path
+     * @return the name
+     */
+    public String getName(int index)
+    {
+        return this.names[this.begin + index];
+    }
+
+    /**
+     * @return the last name of the path
+     */
+    public String getFileName()
+    {
+        return this.names[this.names.length - 1];
+    }
+
+    /**
+     * @param index is the index of the first name of the sub-path
+     * @return the path without its first names, sharing the names of this path
+     */
+    public EntryPath subpath(int index)
+    {
+        return new EntryPath(this.names, this.begin + index);
+    }
+
+    /**
+     * @param beginIndex is the index of the first name
+     * @param endIndex is the index after the last name
+     * @return the names between the two indexes, separated with '/'
+     */
+    public String join(int beginIndex, int endIndex)
+    {
+        if (endIndex - beginIndex == 1) {
+            return getName(beginIndex);
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = beginIndex; i < endIndex; i++) {
+            if (i > beginIndex) {
+                builder.append(SEPARATOR);
+            }
+            builder.append(getName(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the same path as a {@link Path}, for the readers which still use them
+     */
+    public Path toPath()
+    {
+        return Paths.get(getName(0), Arrays.copyOfRange(this.names, this.begin + 1, this.names.length));
+    }
+
+    @Override
+    public String toString()
+    {
+        return join(0, getNameCount());
+    }
+}
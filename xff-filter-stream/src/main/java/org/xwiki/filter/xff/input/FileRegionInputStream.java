@@ -0,0 +1,180 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.input;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Content of an attachment stored as is in a XFF file, read directly from its position in the archive. Output filters
+ * writing attachments to files can use {@link #transferTo(WritableByteChannel)} to let the system copy the attachment
+ * from the archive to their target, without going through the heap; other filters read it as any stream.
+ * <p>
+ * The channel belongs to the import: it's only valid during the
+ * {@link org.xwiki.filter.event.model.WikiAttachmentFilter#onWikiAttachment} event, and closing this stream doesn't
+ * close it.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Unstable
+public class FileRegionInputStream extends InputStream
+{
+    private final FileChannel channel;
+
+    private final long position;
+
+    private final long size;
+
+    /**
+     * Number of bytes already read or transferred.
+     */
+    private long offset;
+
+    private long mark;
+
+    /**
+     * @param channel is the archive
+     * @param position is the position of the attachment in the archive
+     * @param size is the size of the attachment
+     */
+    public FileRegionInputStream(FileChannel channel, long position, long size)
+    {
+        this.channel = channel;
+        this.position = position;
+        this.size = size;
+    }
+
+    /**
+     * @return the archive, which must not be closed nor moved, since reads are done at a given position
+     */
+    public FileChannel getChannel()
+    {
+        return this.channel;
+    }
+
+    /**
+     * @return the position of the attachment in the archive
+     */
+    public long getPosition()
+    {
+        return this.position;
+    }
+
+    /**
+     * @return the size of the attachment
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Copy the remaining content of the attachment to a channel, e.g. the {@link FileChannel} of the file where the
+     * attachment is stored, with {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+     *
+     * @param target is where to copy the attachment
+     * @return the number of bytes copied
+     * @throws IOException if the attachment cannot be read or written
+     */
+    public long transferTo(WritableByteChannel target) throws IOException
+    {
+        long start = this.offset;
+        while (this.offset < this.size) {
+            long count = this.channel.transferTo(this.position + this.offset, this.size - this.offset, target);
+            if (count <= 0) {
+                throw new EOFException("Unexpected end of the attachment in the archive.");
+            }
+            this.offset += count;
+        }
+        return this.offset - start;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+        if (this.offset >= this.size) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, this.size - this.offset));
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, this.position + this.offset + buffer.position() - off) < 0) {
+                throw new EOFException("Unexpected end of the attachment in the archive.");
+            }
+        }
+        int count = buffer.position() - off;
+        this.offset += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        long count = Math.max(0, Math.min(n, this.size - this.offset));
+        this.offset += count;
+        return count;
+    }
+
+    @Override
+    public int available()
+    {
+        return (int) Math.min(Integer.MAX_VALUE, this.size - this.offset);
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit)
+    {
+        this.mark = this.offset;
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        this.offset = this.mark;
+    }
+
+    @Override
+    public void close()
+    {
+        // The channel is closed at the end of the import.
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.input;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Intercept the events sent to a filter, e.g. to count or measure them, through a proxy implementing all the
+ * interfaces of the filter. The methods of {@link Object} are sent directly to the filter.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Unstable
+public abstract class FilterInterceptor implements InvocationHandler
+{
+    private final Object filter;
+
+    /**
+     * @param filter is the filter receiving the events
+     */
+    protected FilterInterceptor(Object filter)
+    {
+        this.filter = filter;
+    }
+
+    /**
+     * @return a proxy implementing the interfaces of the filter and of its super classes, whose events are given to
+     *         {@link #intercept(Method, Object[])}
+     */
+    public Object createProxy()
+    {
+        Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+        for (Class<?> type = this.filter.getClass(); type != null; type = type.getSuperclass()) {
+            addInterfaces(type, interfaces);
+        }
+        return Proxy.newProxyInstance(this.filter.getClass().getClassLoader(),
+            interfaces.toArray(new Class<?>[interfaces.size()]), this);
+    }
+
+    private static void addInterfaces(Class<?> type, Set<Class<?>> interfaces)
+    {
+        for (Class<?> typeInterface : type.getInterfaces()) {
+            if (interfaces.add(typeInterface)) {
+                addInterfaces(typeInterface, interfaces);
+            }
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+        if (method.getDeclaringClass() == Object.class) {
+            return proceed(method, args);
+        }
+        return intercept(method, args);
+    }
+
+    /**
+     * Called for each event sent to the proxy, which has to be given to the filter with
+     * {@link #proceed(Method, Object[])}.
+     *
+     * @param method is the event
+     * @param args are the parameters of the event
+     * @return what the filter returned
+     * @throws Throwable whatever the filter threw
+     */
+    protected abstract Object intercept(Method method, Object[] args) throws Throwable;
+
+    /**
+     * Give an event to the filter.
+     *
+     * @param method is the event
+     * @param args are the parameters of the event
+     * @return what the filter returned
+     * @throws Throwable whatever the filter threw
+     */
+    protected Object proceed(Method method, Object[] args) throws Throwable
+    {
+        try {
+            return method.invoke(this.filter, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.input;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Keep the checkpoints of the XFF imports, so that an import which has been interrupted can be resumed with
+ * {@link XFFInputProperties#setResumeFrom(String)} instead of being started again. When at least one store is
+ * registered as a component, a checkpoint is given to all the stores every
+ * {@link XFFInputProperties#getCheckpointInterval()} pages.
+ * <p>
+ * A checkpoint is the path of the last page fully read (e.g. <tt>wikis/xwiki/spaces/Space/pages/Page</tt>): all the
+ * events of this page and of the ones before it in the XFF order have been sent to the filter.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Role
+@Unstable
+public interface ImportCheckpointStore
+{
+    /**
+     * Called each time a checkpoint is reached.
+     *
+     * @param properties are the properties of the import
+     * @param checkpoint is the path of the last page fully read
+     */
+    void saveCheckpoint(XFFInputProperties properties, String checkpoint);
+
+    /**
+     * Called when the whole package has been read, the checkpoints of the import being no longer needed.
+     *
+     * @param properties are the properties of the import
+     */
+    void onImportFinished(XFFInputProperties properties);
+}
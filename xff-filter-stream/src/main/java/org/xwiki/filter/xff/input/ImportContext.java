@@ -0,0 +1,85 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.input;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.xwiki.filter.FilterException;
+import org.xwiki.stability.Unstable;
+
+/**
+ * What the {@link Reader}s of an import share: the child readers to reuse, the metrics, the buffers used to read the
+ * property files and the attachments already seen. A context is used by a single import, on a single thread.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Unstable
+public interface ImportContext
+{
+    /**
+     * Get a reader for a child element, reused from a previous element when possible.
+     *
+     * @param hint is the role hint of the {@link Reader} component
+     * @return a reader ready to be opened
+     * @throws FilterException if there is no reader for this hint
+     */
+    Reader acquireReader(String hint) throws FilterException;
+
+    /**
+     * Give back a closed reader, to be reused for another element.
+     *
+     * @param hint is the role hint of the reader
+     * @param reader is the reader, already closed
+     */
+    void releaseReader(String hint, Reader reader);
+
+    /**
+     * @return the metrics of the import, or null if they are not collected
+     */
+    ImportMetrics getMetrics();
+
+    /**
+     * Read a property file of a package folder as a UTF-8 string, reusing the buffers of the import.
+     *
+     * @param path is the file to read
+     * @return the content of the file
+     * @throws IOException if the file cannot be read
+     */
+    String readProperty(Path path) throws IOException;
+
+    /**
+     * @return true if the attachments with the same content as a previous attachment of the import are looked for
+     * @see XFFInputProperties#isDeduplicateAttachments()
+     */
+    boolean isDeduplicatingAttachments();
+
+    /**
+     * Remember an attachment of the import, unless an attachment with the same content has already been seen.
+     *
+     * @param hash is the SHA-256 hash of the content of the attachment, in hexadecimal
+     * @param reference identifies the attachment
+     * @param size is the size of the attachment
+     * @return the reference of the previous attachment with the same content, or null if there is none or if the
+     *         attachments are not deduplicated
+     */
+    Object addAttachment(String hash, Object reference, long size);
+}
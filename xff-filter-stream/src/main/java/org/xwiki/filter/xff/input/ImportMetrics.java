@@ -0,0 +1,280 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.input;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Counters and timers of an import, telling where the time goes: reading the files of the package (I/O and zip
+ * inflation), parsing the descriptors, reading the property files, and sending the events to the filter. The time
+ * is measured on the thread routing the files, each stage being counted without the stages nested in it (e.g. the
+ * parsing of a descriptor does not include the reading of its file). The time and the bytes read are also given by
+ * kind of entity.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Unstable
+public class ImportMetrics
+{
+    /**
+     * Stages of the import.
+     */
+    public enum Stage
+    {
+        /** Routing the files to the readers, and everything else not measured by the other stages. */
+        ROUTING,
+        /** Reading the files of the package: I/O and zip inflation. */
+        READ,
+        /** Parsing the descriptors (e.g. <tt>page.xml</tt>). */
+        UNMARSHAL,
+        /** Reading the property files (e.g. <tt>properties/content.xwiki21</tt>) as strings. */
+        PROPERTY,
+        /** Sending the events to the filter. */
+        FILTER
+    }
+
+    /**
+     * Kinds of entities of a package.
+     */
+    public enum Entity
+    {
+        /** A wiki. */
+        WIKI("wiki", "wikis"),
+        /** A space. */
+        SPACE("space", "spaces"),
+        /** A page. */
+        PAGE("page", "pages"),
+        /** A class. */
+        CLASS("class", "classes"),
+        /** An object. */
+        OBJECT("object", "objects"),
+        /** An attachment. */
+        ATTACHMENT("attachment", "attachments");
+
+        private final String singular;
+
+        private final String plural;
+
+        Entity(String singular, String plural)
+        {
+            this.singular = singular;
+            this.plural = plural;
+        }
+
+        /**
+         * @param count is a number of entities
+         * @return the label of this kind of entity for this number, e.g. "1 class" or "2 classes"
+         */
+        public String getLabel(long count)
+        {
+            return count + " " + (count == 1 ? this.singular : this.plural);
+        }
+    }
+
+    private static final int ENTITIES = Entity.values().length;
+
+    private static final int INITIAL_DEPTH = 8;
+
+    private static final long KILOBYTE = 1024;
+
+    /**
+     * Time spent in each stage, for each kind of entity plus one for the time not related to an entity.
+     */
+    private final long[][] times = new long[Stage.values().length][ENTITIES + 1];
+
+    private final long[] counts = new long[ENTITIES];
+
+    private final long[] bytes = new long[ENTITIES + 1];
+
+    private final long start = System.nanoTime();
+
+    private long end;
+
+    /**
+     * Stages being measured, from the outermost one, with the kind of entity they are related to.
+     */
+    private Stage[] stages = new Stage[INITIAL_DEPTH];
+
+    private int[] entities = new int[INITIAL_DEPTH];
+
+    private int depth;
+
+    private long since;
+
+    /**
+     * Start a stage, nested in the current one if any: the time of the current stage is suspended until the new
+     * stage is stopped.
+     *
+     * @param stage is the new stage
+     * @param entity is the kind of entity the stage is related to, or null to keep the one of the current stage
+     */
+    public void start(Stage stage, Entity entity)
+    {
+        long now = System.nanoTime();
+        int entityIndex = ENTITIES;
+        if (entity != null) {
+            entityIndex = entity.ordinal();
+        } else if (this.depth > 0) {
+            entityIndex = this.entities[this.depth - 1];
+        }
+        if (this.depth > 0) {
+            this.times[this.stages[this.depth - 1].ordinal()][this.entities[this.depth - 1]] += now - this.since;
+        }
+        if (this.depth == this.stages.length) {
+            this.stages = Arrays.copyOf(this.stages, this.depth * 2);
+            this.entities = Arrays.copyOf(this.entities, this.depth * 2);
+        }
+        this.stages[this.depth] = stage;
+        this.entities[this.depth] = entityIndex;
+        this.depth++;
+        this.since = now;
+    }
+
+    /**
+     * Stop the current stage, resuming the stage it was nested in.
+     */
+    public void stop()
+    {
+        if (this.depth > 0) {
+            long now = System.nanoTime();
+            this.depth--;
+            this.times[this.stages[this.depth].ordinal()][this.entities[this.depth]] += now - this.since;
+            this.since = now;
+        }
+    }
+
+    /**
+     * Count an entity sent to the filter.
+     *
+     * @param entity is the kind of entity
+     */
+    public void count(Entity entity)
+    {
+        this.counts[entity.ordinal()]++;
+    }
+
+    /**
+     * Count bytes read from the package, for the entity of the current stage.
+     *
+     * @param count is the number of bytes read
+     */
+    public void addBytes(long count)
+    {
+        this.bytes[this.depth > 0 ? this.entities[this.depth - 1] : ENTITIES] += count;
+    }
+
+    /**
+     * Mark the end of the import.
+     */
+    public void finish()
+    {
+        while (this.depth > 0) {
+            stop();
+        }
+        this.end = System.nanoTime();
+    }
+
+    /**
+     * @param entity is a kind of entity
+     * @return the number of entities of this kind sent to the filter
+     */
+    public long getCount(Entity entity)
+    {
+        return this.counts[entity.ordinal()];
+    }
+
+    /**
+     * @param entity is a kind of entity
+     * @return the number of bytes read from the files of the entities of this kind
+     */
+    public long getBytes(Entity entity)
+    {
+        return this.bytes[entity.ordinal()];
+    }
+
+    /**
+     * @return the number of bytes read from the package
+     */
+    public long getBytes()
+    {
+        long total = 0;
+        for (long count : this.bytes) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param stage is a stage of the import
+     * @param entity is a kind of entity
+     * @return the time spent in this stage for the entities of this kind, in nanoseconds
+     */
+    public long getTime(Stage stage, Entity entity)
+    {
+        return this.times[stage.ordinal()][entity.ordinal()];
+    }
+
+    /**
+     * @param stage is a stage of the import
+     * @return the time spent in this stage, in nanoseconds
+     */
+    public long getTime(Stage stage)
+    {
+        long total = 0;
+        for (long time : this.times[stage.ordinal()]) {
+            total += time;
+        }
+        return total;
+    }
+
+    /**
+     * @return the duration of the import, in nanoseconds, until now if the import is not finished
+     */
+    public long getDuration()
+    {
+        return (this.end > 0 ? this.end : System.nanoTime()) - this.start;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder summary = new StringBuilder("Read");
+        for (Entity entity : Entity.values()) {
+            summary.append(entity.ordinal() > 0 ? ", " : " ").append(entity.getLabel(getCount(entity)));
+        }
+        summary.append(" (").append(getBytes() / KILOBYTE).append(" KB) in ").append(toMillis(getDuration()))
+            .append(" ms:");
+        for (Stage stage : Stage.values()) {
+            summary.append(stage.ordinal() > 0 ? ", " : " ").append(stage.name().toLowerCase(Locale.ROOT))
+                .append(' ').append(toMillis(getTime(stage))).append(" ms");
+        }
+        return summary.append('.').toString();
+    }
+
+    private static long toMillis(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
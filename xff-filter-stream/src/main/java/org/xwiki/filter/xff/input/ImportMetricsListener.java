@@ -0,0 +1,43 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.input;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Receive the metrics of the XFF imports. When at least one listener is registered as a component, the metrics of
+ * all the imports are collected, as if {@link XFFInputProperties#isMetrics()} was enabled.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Role
+@Unstable
+public interface ImportMetricsListener
+{
+    /**
+     * Called at the end of each import.
+     *
+     * @param properties are the properties of the import
+     * @param metrics are the metrics of the import
+     */
+    void onImportFinished(XFFInputProperties properties, ImportMetrics metrics);
+}
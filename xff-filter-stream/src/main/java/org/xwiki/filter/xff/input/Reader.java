@@ -29,7 +29,8 @@ import org.xwiki.model.reference.EntityReference;
 
 /**
  * Interface for {@link Reader} that defines 3 methods, one for initializing the {@link Reader}, one for routing and
- * parsing the input elements, and finally one to close the {@link Reader}.
+ * parsing the input elements, and finally one to close the {@link Reader}. A closed {@link Reader} which is reusable
+ * can be reset to be reused for another element.
  * 
  * @version $Id$
  * @since 7.1
@@ -37,6 +38,18 @@ import org.xwiki.model.reference.EntityReference;
 @Role
 public interface Reader
 {
+    /**
+     * Give the properties of the import to the {@link Reader}. It's called before {@link #open}. The default
+     * implementation ignores them, for the readers which don't need them.
+     * 
+     * @param properties are the properties of the XFF input filter stream
+     * @since 0.4.1
+     */
+    default void setProperties(XFFInputProperties properties)
+    {
+        // The properties are not needed.
+    }
+
     /**
      * Initialize a new {@link Reader} before using it.
      * 
@@ -61,10 +74,49 @@ public interface Reader
      */
     void route(Path path, InputStream inputStream) throws FilterException;
 
+    /**
+     * Push a new file to the reader, its path being already split in names. The readers of the XFF filter stream
+     * implement this method so that a file is routed through all the readers without building new paths; the default
+     * implementation falls back on {@link #route(Path, InputStream)}.
+     *
+     * @param path is the relative path of the file being read
+     * @param inputStream is the stream of the read file
+     * @throws FilterException whenever there is problem to generate an event
+     * @since 0.4.1
+     */
+    default void route(EntryPath path, InputStream inputStream) throws FilterException
+    {
+        route(path.toPath(), inputStream);
+    }
+
     /**
      * When all elements has been pushed, this method should be called to close properly the filter.
      * 
      * @throws FilterException whenever there is problem to generate an event
      */
     void close() throws FilterException;
+
+    /**
+     * Tell whether the {@link Reader} can be {@link #reset} and opened again for another element of the same import.
+     * The default implementation returns false, so that the readers which don't support it are not reused but looked
+     * up again.
+     *
+     * @return true if the {@link Reader} can be reused once closed
+     * @since 0.4.1
+     */
+    default boolean isReusable()
+    {
+        return false;
+    }
+
+    /**
+     * Forget the element read, once closed, so that a {@link #isReusable() reusable} {@link Reader} can be opened
+     * again for another element of the same import. The properties given with {@link #setProperties} are kept. The
+     * default implementation does nothing.
+     *
+     * @since 0.4.1
+     */
+    default void reset()
+    {
+    }
 }
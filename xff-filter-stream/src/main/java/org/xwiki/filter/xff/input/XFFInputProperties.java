@@ -19,7 +19,11 @@
  */
 package org.xwiki.filter.xff.input;
 
+import java.util.List;
+
 import org.xwiki.filter.xml.input.XMLInputProperties;
+import org.xwiki.properties.annotation.PropertyDescription;
+import org.xwiki.properties.annotation.PropertyName;
 import org.xwiki.stability.Unstable;
 
 /**
@@ -31,5 +35,400 @@ import org.xwiki.stability.Unstable;
 @Unstable
 public class XFFInputProperties extends XMLInputProperties
 {
+    /**
+     * Default value of {@link #getAttachmentMemoryThreshold()}.
+     * 
+     * @since 0.4.1
+     */
+    public static final int DEFAULT_ATTACHMENT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Default value of {@link #getDeduplicationCacheSize()}.
+     *
+     * @since 0.4.1
+     */
+    public static final int DEFAULT_DEDUPLICATION_CACHE_SIZE = 10000;
+
+    /**
+     * Default value of {@link #getCheckpointInterval()}.
+     *
+     * @since 0.4.1
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+    /**
+     * Parameter of the attachment events containing the SHA-256 hash of the content of the attachment, in
+     * hexadecimal, when {@link #isDeduplicateAttachments()} is enabled.
+     *
+     * @since 0.4.1
+     */
+    public static final String PARAMETER_ATTACHMENT_HASH = "xff_hash";
+
+    /**
+     * Parameter of the attachment events containing the {@link org.xwiki.model.reference.AttachmentReference} of a
+     * previous attachment with the same content, when {@link #isDeduplicateAttachments()} is enabled. An output can
+     * then refer to the previous attachment instead of copying the content again.
+     *
+     * @since 0.4.1
+     */
+    public static final String PARAMETER_ATTACHMENT_DUPLICATE_OF = "xff_duplicate_of";
+
+    /**
+     * @see #isStreamingDescriptors()
+     */
+    private boolean streamingDescriptors;
+
+    /**
+     * @see #isRandomAccess()
+     */
+    private boolean randomAccess;
+
+    /**
+     * @see #getThreads()
+     */
+    private int threads;
+
+    /**
+     * @see #getAttachmentMemoryThreshold()
+     */
+    private int attachmentMemoryThreshold = DEFAULT_ATTACHMENT_MEMORY_THRESHOLD;
+
+    /**
+     * @see #getWiki()
+     */
+    private String wiki;
+
+    /**
+     * @see #getIncludes()
+     */
+    private List<String> includes;
+
+    /**
+     * @see #getExcludes()
+     */
+    private List<String> excludes;
+
+    /**
+     * @see #getPages()
+     */
+    private List<String> pages;
+
+    /**
+     * @see #isMetrics()
+     */
+    private boolean metrics;
+
+    /**
+     * @see #isDeduplicateAttachments()
+     */
+    private boolean deduplicateAttachments;
+
+    /**
+     * @see #getDeduplicationCacheSize()
+     */
+    private int deduplicationCacheSize = DEFAULT_DEDUPLICATION_CACHE_SIZE;
+
+    /**
+     * @see #getCheckpointInterval()
+     */
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    /**
+     * @see #getResumeFrom()
+     */
+    private String resumeFrom;
+
+    /**
+     * @return true if the XML descriptors (wiki, space, page, object and class) are read with a streaming StAX
+     *         parser instead of being fully bound with JAX-B
+     * @since 0.4.1
+     */
+    @PropertyName("Streaming descriptors")
+    @PropertyDescription("Read the XML descriptors with a streaming parser which only keeps the needed elements "
+        + "instead of binding the whole REST model")
+    public boolean isStreamingDescriptors()
+    {
+        return this.streamingDescriptors;
+    }
+
+    /**
+     * @param streamingDescriptors true if the XML descriptors should be read with a streaming StAX parser
+     * @since 0.4.1
+     */
+    public void setStreamingDescriptors(boolean streamingDescriptors)
+    {
+        this.streamingDescriptors = streamingDescriptors;
+    }
+
+    /**
+     * @return true if a XFF file is read through the central directory of the zip, which allows to read the entries
+     *         in the XFF order whatever the order in which they have been written in the archive
+     * @since 0.4.1
+     */
+    @PropertyName("Random access")
+    @PropertyDescription("Read XFF files through the zip central directory, in the XFF order, instead of reading the "
+        + "entries sequentially in the order of the archive")
+    public boolean isRandomAccess()
+    {
+        return this.randomAccess;
+    }
+
+    /**
+     * @param randomAccess true if a XFF file should be read through the central directory of the zip
+     * @since 0.4.1
+     */
+    public void setRandomAccess(boolean randomAccess)
+    {
+        this.randomAccess = randomAccess;
+    }
+
+    /**
+     * @return the number of threads reading and parsing the files of a XFF folder, or the entries of a XFF archive
+     *         read sequentially, ahead of time, 0 or 1 meaning that the files are read one by one. The entries of an
+     *         archive are inflated by one of the threads and parsed by the other ones
+     * @since 0.4.1
+     */
+    @PropertyName("Threads")
+    @PropertyDescription("Number of threads reading and parsing the files of a XFF folder or archive ahead of time, "
+        + "while the events are sent (still in the same order)")
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    /**
+     * @param threads is the number of threads reading and parsing the files of the package ahead of time
+     * @since 0.4.1
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * @return the size (in bytes) above which an attachment whose size is not known in advance is copied in a
+     *         temporary file instead of memory. It's also the size of the biggest file read ahead in memory when
+     *         reading on several threads (see {@link #getThreads()})
+     * @since 0.4.1
+     */
+    @PropertyName("Attachment memory threshold")
+    @PropertyDescription("Size (in bytes) above which an attachment whose size is not known in advance is copied in a "
+        + "temporary file instead of memory, and above which a file is not read ahead in memory")
+    public int getAttachmentMemoryThreshold()
+    {
+        return this.attachmentMemoryThreshold;
+    }
+
+    /**
+     * @param attachmentMemoryThreshold is the size (in bytes) above which an attachment is copied in a temporary file
+     * @since 0.4.1
+     */
+    public void setAttachmentMemoryThreshold(int attachmentMemoryThreshold)
+    {
+        this.attachmentMemoryThreshold = attachmentMemoryThreshold;
+    }
+
+    /**
+     * @return the name of the only wiki of the package to read, or null to read the whole package
+     * @since 0.4.1
+     */
+    @PropertyName("Wiki")
+    @PropertyDescription("Name of the only wiki of the package to read, the files outside of this wiki being skipped "
+        + "(e.g. to import the wikis of a package in parallel)")
+    public String getWiki()
+    {
+        return this.wiki;
+    }
+
+    /**
+     * @param wiki is the name of the only wiki of the package to read
+     * @since 0.4.1
+     */
+    public void setWiki(String wiki)
+    {
+        this.wiki = wiki;
+    }
+
+    /**
+     * @return the patterns of the files of the package to read (e.g. <tt>wikis/xwiki/spaces/Sandbox/**</tt>), all
+     *         the files being read when empty
+     * @see org.xwiki.xff.core.EntryFilter
+     * @since 0.4.1
+     */
+    @PropertyName("Includes")
+    @PropertyDescription("Patterns of the files of the package to read, relative to its root (e.g. "
+        + "wikis/xwiki/spaces/Sandbox/**), the other files being skipped before being parsed")
+    public List<String> getIncludes()
+    {
+        return this.includes;
+    }
+
+    /**
+     * @param includes are the patterns of the files of the package to read
+     * @since 0.4.1
+     */
+    public void setIncludes(List<String> includes)
+    {
+        this.includes = includes;
+    }
+
+    /**
+     * @return the patterns of the files of the package to skip, whatever the includes
+     * @see org.xwiki.xff.core.EntryFilter
+     * @since 0.4.1
+     */
+    @PropertyName("Excludes")
+    @PropertyDescription("Patterns of the files of the package to skip, relative to its root (e.g. "
+        + "wikis/*/spaces/Trash/**), whole folders being skipped when possible")
+    public List<String> getExcludes()
+    {
+        return this.excludes;
+    }
+
+    /**
+     * @param excludes are the patterns of the files of the package to skip
+     * @since 0.4.1
+     */
+    public void setExcludes(List<String> excludes)
+    {
+        this.excludes = excludes;
+    }
+
+    /**
+     * @return the paths of the only pages of the package to read (e.g. <tt>wikis/xwiki/spaces/Space/pages/Page</tt>),
+     *         with the descriptors of their wikis and spaces, or null to read the whole package
+     * @see org.xwiki.xff.core.PackageIndex
+     * @since 0.4.1
+     */
+    @PropertyName("Pages")
+    @PropertyDescription("Paths of the only pages of the package to read (e.g. wikis/xwiki/spaces/Space/pages/Page). "
+        + "When the package has an index, the pages are read directly from their position in the package")
+    public List<String> getPages()
+    {
+        return this.pages;
+    }
+
+    /**
+     * @param pages are the paths of the only pages of the package to read
+     * @since 0.4.1
+     */
+    public void setPages(List<String> pages)
+    {
+        this.pages = pages;
+    }
+
+    /**
+     * @return true if the time spent in each stage of the import is measured and summarized in the log at the end of
+     *         the import
+     * @see ImportMetrics
+     * @since 0.4.1
+     */
+    @PropertyName("Metrics")
+    @PropertyDescription("Measure the time spent reading the files, parsing the descriptors and sending the events, "
+        + "and log a summary at the end of the import")
+    public boolean isMetrics()
+    {
+        return this.metrics;
+    }
+
+    /**
+     * @param metrics true if the time spent in each stage of the import should be measured
+     * @since 0.4.1
+     */
+    public void setMetrics(boolean metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return true if the attachments with the same content as a previous one are reported. The hash of an
+     *         attachment and the previous attachment with the same content are given in the
+     *         {@link #PARAMETER_ATTACHMENT_HASH} and {@link #PARAMETER_ATTACHMENT_DUPLICATE_OF} parameters when the
+     *         attachment is smaller than {@link #getAttachmentMemoryThreshold()} or is in a file (package folder or
+     *         random access); the hash of the other attachments is only known once they are sent
+     * @since 0.4.1
+     */
+    @PropertyName("Deduplicate attachments")
+    @PropertyDescription("Compute the hash of the attachments to find the ones with the same content as a previous "
+        + "one, and tell the output about them when possible so that it doesn't copy the content again")
+    public boolean isDeduplicateAttachments()
+    {
+        return this.deduplicateAttachments;
+    }
+
+    /**
+     * @param deduplicateAttachments true if the attachments with the same content as a previous one should be found
+     * @since 0.4.1
+     */
+    public void setDeduplicateAttachments(boolean deduplicateAttachments)
+    {
+        this.deduplicateAttachments = deduplicateAttachments;
+    }
+
+    /**
+     * @return the number of attachments whose hash is remembered to find the next ones with the same content
+     * @since 0.4.1
+     */
+    @PropertyName("Deduplication cache size")
+    @PropertyDescription("Number of attachments whose hash is remembered to find the next ones with the same content")
+    public int getDeduplicationCacheSize()
+    {
+        return this.deduplicationCacheSize;
+    }
+
+    /**
+     * @param deduplicationCacheSize is the number of attachments whose hash is remembered
+     * @since 0.4.1
+     */
+    public void setDeduplicationCacheSize(int deduplicationCacheSize)
+    {
+        this.deduplicationCacheSize = deduplicationCacheSize;
+    }
+
+    /**
+     * @return the number of pages read between two checkpoints given to the {@link ImportCheckpointStore}s, 0 to
+     *         not give any checkpoint
+     * @since 0.4.1
+     */
+    @PropertyName("Checkpoint interval")
+    @PropertyDescription("Number of pages read between two checkpoints given to the checkpoint stores, from which an "
+        + "interrupted import can be resumed (0 to disable the checkpoints)")
+    public int getCheckpointInterval()
+    {
+        return this.checkpointInterval;
+    }
+
+    /**
+     * @param checkpointInterval is the number of pages read between two checkpoints
+     * @since 0.4.1
+     */
+    public void setCheckpointInterval(int checkpointInterval)
+    {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * @return the checkpoint from which an interrupted import is resumed (e.g.
+     *         <tt>wikis/xwiki/spaces/Space/pages/Page</tt>), or null to read the whole package. The files of the
+     *         pages up to the checkpoint are skipped without being read, except the descriptors of the wikis and
+     *         spaces containing the checkpoint. The import fails if the checkpoint is not in the package
+     * @see ImportCheckpointStore
+     * @since 0.4.1
+     */
+    @PropertyName("Resume from")
+    @PropertyDescription("Checkpoint from which an interrupted import is resumed (e.g. "
+        + "wikis/xwiki/spaces/Space/pages/Page), the pages up to it being skipped without being read")
+    public String getResumeFrom()
+    {
+        return this.resumeFrom;
+    }
 
+    /**
+     * @param resumeFrom is the checkpoint from which an interrupted import is resumed
+     * @since 0.4.1
+     */
+    public void setResumeFrom(String resumeFrom)
+    {
+        this.resumeFrom = resumeFrom;
+    }
 }
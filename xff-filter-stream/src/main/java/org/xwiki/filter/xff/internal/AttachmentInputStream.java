@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * Content of an attachment given to the filter. It cannot read more than the attachment nor close the stream of the
+ * package. Since some filters read the content with a single {@link #read(byte[])} call, the reads fill the buffer
+ * as long as the end of the attachment is not reached, even when the underlying stream (e.g. an inflater) gives back
+ * less bytes at a time.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class AttachmentInputStream extends BoundedInputStream
+{
+    /**
+     * @param inputStream is the stream of the package, positioned at the beginning of the attachment
+     * @param size is the size of the attachment
+     */
+    public AttachmentInputStream(InputStream inputStream, long size)
+    {
+        super(inputStream, size);
+        setPropagateClose(false);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int total = 0;
+        while (total < len) {
+            int count = super.read(b, off + total, len - total);
+            if (count < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Content of a file of the package which has already been read in memory, and possibly already parsed. When the
+ * descriptor is available, {@link org.xwiki.filter.xff.input.AbstractReader} uses it instead of parsing the content
+ * again.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class DescriptorInputStream extends ByteArrayInputStream
+{
+    /**
+     * The parsed REST model object, if any.
+     */
+    private final Object descriptor;
+
+    /**
+     * @param content is the content of the file
+     * @param descriptor is the REST model object parsed from the content, or null if not parsed
+     */
+    public DescriptorInputStream(byte[] content, Object descriptor)
+    {
+        super(content);
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * @param content contains the content of the file
+     * @param length is the length of the content
+     * @param descriptor is the REST model object parsed from the content, or null if not parsed
+     */
+    public DescriptorInputStream(byte[] content, int length, Object descriptor)
+    {
+        super(content, 0, length);
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * @return the REST model object parsed from the content, or null if the content has not been parsed
+     */
+    public Object getDescriptor()
+    {
+        return this.descriptor;
+    }
+}
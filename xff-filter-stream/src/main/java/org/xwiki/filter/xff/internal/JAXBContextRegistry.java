@@ -0,0 +1,148 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * Shared registry of {@link JAXBContext}, one per REST model type (wiki, space, page, object, class). Creating a
+ * {@link JAXBContext} is expensive while it is thread-safe once built, so it is created only once per type. The
+ * {@link Unmarshaller}s and {@link Marshaller}s are not thread-safe, so they are pooled and each one is used by a
+ * single thread at a time. The pools keep at most one idle (un)marshaller per processor, the extra ones created during
+ * a burst being dropped once used.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class JAXBContextRegistry
+{
+    /**
+     * Maximum number of idle (un)marshallers kept for each type.
+     */
+    private static final int MAX_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The contexts, by the type they have been created for.
+     */
+    private static final ConcurrentMap<Class<?>, JAXBContext> CONTEXTS =
+        new ConcurrentHashMap<Class<?>, JAXBContext>();
+
+    /**
+     * The idle unmarshallers, by the type they are unmarshalling.
+     */
+    private static final ConcurrentMap<Class<?>, Queue<Unmarshaller>> UNMARSHALLERS =
+        new ConcurrentHashMap<Class<?>, Queue<Unmarshaller>>();
+
+    /**
+     * The idle marshallers, by the type they are marshalling.
+     */
+    private static final ConcurrentMap<Class<?>, Queue<Marshaller>> MARSHALLERS =
+        new ConcurrentHashMap<Class<?>, Queue<Marshaller>>();
+
+    private JAXBContextRegistry()
+    {
+    }
+
+    /**
+     * Get the context for a type, creating it the first time it's asked.
+     *
+     * @param type is the JAX-B annotated class
+     * @return the shared context for this type
+     * @throws JAXBException if the context cannot be created
+     */
+    public static JAXBContext getContext(Class<?> type) throws JAXBException
+    {
+        JAXBContext context = CONTEXTS.get(type);
+        if (context == null) {
+            context = JAXBContext.newInstance(type);
+            JAXBContext previous = CONTEXTS.putIfAbsent(type, context);
+            if (previous != null) {
+                context = previous;
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Convert XML input stream into a JAX-B object, using a pooled {@link Unmarshaller}.
+     *
+     * @param inputStream is the XML as input
+     * @param type is the class in which the XML should be converted
+     * @return the converted object
+     * @throws JAXBException if the XML cannot be converted
+     */
+    public static Object unmarshal(InputStream inputStream, Class<?> type) throws JAXBException
+    {
+        Queue<Unmarshaller> pool = getPool(UNMARSHALLERS, type);
+        Unmarshaller unmarshaller = pool.poll();
+        if (unmarshaller == null) {
+            unmarshaller = getContext(type).createUnmarshaller();
+        }
+        // The unmarshaller is given back only on success, so that an unmarshaller left in an unknown state by a
+        // malformed XML is never reused.
+        Object result = unmarshaller.unmarshal(inputStream);
+        pool.offer(unmarshaller);
+        return result;
+    }
+
+    /**
+     * Convert a JAX-B object into indented XML, using a pooled {@link Marshaller}. The output stream is left open.
+     *
+     * @param object is the JAX-B object to convert
+     * @param outputStream is where the XML is written
+     * @throws JAXBException if the object cannot be converted
+     * @since 0.4.1
+     */
+    public static void marshal(Object object, OutputStream outputStream) throws JAXBException
+    {
+        Queue<Marshaller> pool = getPool(MARSHALLERS, object.getClass());
+        Marshaller marshaller = pool.poll();
+        if (marshaller == null) {
+            marshaller = getContext(object.getClass()).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        }
+        marshaller.marshal(object, outputStream);
+        pool.offer(marshaller);
+    }
+
+    private static <T> Queue<T> getPool(ConcurrentMap<Class<?>, Queue<T>> pools, Class<?> type)
+    {
+        Queue<T> pool = pools.get(type);
+        if (pool == null) {
+            // Offering to a full pool drops the (un)marshaller.
+            pool = new ArrayBlockingQueue<T>(MAX_POOL_SIZE);
+            Queue<T> previous = pools.putIfAbsent(type, pool);
+            if (previous != null) {
+                pool = previous;
+            }
+        }
+        return pool;
+    }
+}
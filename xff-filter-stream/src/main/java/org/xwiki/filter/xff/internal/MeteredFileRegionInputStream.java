@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.xwiki.filter.xff.input.FileRegionInputStream;
+import org.xwiki.filter.xff.input.ImportMetrics;
+
+/**
+ * Content of an attachment stored as is in the archive, counting the time spent and the bytes read or transferred in
+ * {@link ImportMetrics}. Unlike {@link MeteredInputStream}, it's still a {@link FileRegionInputStream}, so that the
+ * filters can transfer it directly.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class MeteredFileRegionInputStream extends FileRegionInputStream
+{
+    private final ImportMetrics metrics;
+
+    /**
+     * @param channel is the archive
+     * @param position is the position of the attachment in the archive
+     * @param size is the size of the attachment
+     * @param metrics are the metrics of the import
+     */
+    public MeteredFileRegionInputStream(FileChannel channel, long position, long size, ImportMetrics metrics)
+    {
+        super(channel, position, size);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target) throws IOException
+    {
+        this.metrics.start(ImportMetrics.Stage.READ, null);
+        try {
+            long count = super.transferTo(target);
+            this.metrics.addBytes(count);
+            return count;
+        } finally {
+            this.metrics.stop();
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        this.metrics.start(ImportMetrics.Stage.READ, null);
+        try {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                this.metrics.addBytes(count);
+            }
+            return count;
+        } finally {
+            this.metrics.stop();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xwiki.filter.xff.input.ImportMetrics;
+
+/**
+ * Content of a file of the package, counting the time spent and the bytes read in {@link ImportMetrics}.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class MeteredInputStream extends FilterInputStream
+{
+    private final ImportMetrics metrics;
+
+    /**
+     * @param inputStream is the content of the file
+     * @param metrics are the metrics of the import
+     */
+    public MeteredInputStream(InputStream inputStream, ImportMetrics metrics)
+    {
+        super(inputStream);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        this.metrics.start(ImportMetrics.Stage.READ, null);
+        try {
+            int b = this.in.read();
+            if (b >= 0) {
+                this.metrics.addBytes(1);
+            }
+            return b;
+        } finally {
+            this.metrics.stop();
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        this.metrics.start(ImportMetrics.Stage.READ, null);
+        try {
+            int count = this.in.read(b, off, len);
+            if (count > 0) {
+                this.metrics.addBytes(count);
+            }
+            return count;
+        } finally {
+            this.metrics.stop();
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        this.metrics.start(ImportMetrics.Stage.READ, null);
+        try {
+            return this.in.skip(n);
+        } finally {
+            this.metrics.stop();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Content of a file of a package folder, whose path is known so that readers can read it directly from the file
+ * system (e.g. by mapping it in memory) instead of going through the stream.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class PathInputStream extends SizedInputStream
+{
+    /**
+     * The file.
+     */
+    private final Path path;
+
+    /**
+     * @param inputStream is the content of the file
+     * @param path is the file
+     * @param size is the size of the file
+     */
+    public PathInputStream(InputStream inputStream, Path path, long size)
+    {
+        super(inputStream, size);
+        this.path = path;
+    }
+
+    /**
+     * @return the file
+     */
+    public Path getPath()
+    {
+        return this.path;
+    }
+}
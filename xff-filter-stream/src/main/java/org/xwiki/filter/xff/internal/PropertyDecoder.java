@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read the property files of a package folder (e.g. <tt>properties/content.xwiki21</tt>) as UTF-8 strings, without
+ * the intermediate buffers of a stream. Small files are read in a buffer reused from one file to the other, big files
+ * are mapped in memory, and both are decoded in a reused char buffer, so that the only copy made for each file is the
+ * final string.
+ * <p>
+ * A decoder is used by a single import, on a single thread.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class PropertyDecoder
+{
+    /**
+     * Files at least this big are mapped in memory instead of being read.
+     */
+    public static final long DEFAULT_MAP_THRESHOLD = 1024L * 1024;
+
+    /**
+     * Buffers bigger than this are not kept for the next file, so that one huge file doesn't hold memory for the
+     * whole import.
+     */
+    private static final int MAX_RETAINED_SIZE = 4 * 1024 * 1024;
+
+    private final long mapThreshold;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private ByteBuffer bytes;
+
+    private CharBuffer chars;
+
+    /**
+     * Create a decoder mapping the files of {@link #DEFAULT_MAP_THRESHOLD} bytes or more.
+     */
+    public PropertyDecoder()
+    {
+        this(DEFAULT_MAP_THRESHOLD);
+    }
+
+    /**
+     * @param mapThreshold is the size from which the files are mapped in memory instead of being read
+     */
+    public PropertyDecoder(long mapThreshold)
+    {
+        this.mapThreshold = mapThreshold;
+    }
+
+    /**
+     * Read a file as a string.
+     *
+     * @param path is the file, encoded in UTF-8
+     * @return the content of the file
+     * @throws IOException if the file cannot be read, or is too big to be kept in a string
+     */
+    public String decode(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("The file [%s] is too big to be read as a string.", path));
+            }
+            ByteBuffer input;
+            if (size >= this.mapThreshold) {
+                // The mapping is released by the garbage collector, there is no way to unmap it before.
+                input = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                input = getBytes((int) size);
+                while (input.hasRemaining()) {
+                    if (channel.read(input) < 0) {
+                        throw new EOFException(String.format("Unexpected end of the file [%s].", path));
+                    }
+                }
+                input.flip();
+            }
+            return decode(input);
+        }
+    }
+
+    /**
+     * Decode UTF-8 bytes, which never give more chars than bytes.
+     */
+    private String decode(ByteBuffer input) throws CharacterCodingException
+    {
+        CharBuffer output = getChars(input.remaining());
+        this.decoder.reset();
+        CoderResult result = this.decoder.decode(input, output, true);
+        if (result.isUnderflow()) {
+            result = this.decoder.flush(output);
+        }
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        String value = new String(output.array(), 0, output.position());
+        release();
+        return value;
+    }
+
+    private ByteBuffer getBytes(int size)
+    {
+        if (this.bytes == null || this.bytes.capacity() < size) {
+            this.bytes = ByteBuffer.allocate(size);
+        }
+        this.bytes.clear().limit(size);
+        return this.bytes;
+    }
+
+    private CharBuffer getChars(int size)
+    {
+        if (this.chars == null || this.chars.capacity() < size) {
+            this.chars = CharBuffer.allocate(size);
+        }
+        this.chars.clear();
+        return this.chars;
+    }
+
+    /**
+     * Forget the buffers which are too big to be kept.
+     */
+    private void release()
+    {
+        if (this.bytes != null && this.bytes.capacity() > MAX_RETAINED_SIZE) {
+            this.bytes = null;
+        }
+        if (this.chars != null && this.chars.capacity() > MAX_RETAINED_SIZE) {
+            this.chars = null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * Content of a file of the package whose size is known before reading it (from the zip entry or from the file
+ * system), so that readers don't have to read the whole content to know it.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class SizedInputStream extends FilterInputStream
+{
+    /**
+     * The size of the content, or -1 if unknown.
+     */
+    private final long size;
+
+    /**
+     * @param inputStream is the content of the file
+     * @param size is the size of the content, or -1 if unknown
+     */
+    public SizedInputStream(InputStream inputStream, long size)
+    {
+        super(inputStream);
+        this.size = size;
+    }
+
+    /**
+     * @return the size of the content, or -1 if unknown
+     */
+    public long getSize()
+    {
+        return this.size;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal;
+
+import java.io.InputStream;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xwiki.rest.model.jaxb.Attribute;
+import org.xwiki.rest.model.jaxb.Page;
+import org.xwiki.rest.model.jaxb.Property;
+import org.xwiki.rest.model.jaxb.Space;
+import org.xwiki.rest.model.jaxb.Wiki;
+
+/**
+ * Read the XML descriptors of a XFF package (<tt>wiki.xml</tt>, <tt>space.xml</tt>, <tt>page.xml</tt>,
+ * <tt>object.xml</tt> and <tt>class.xml</tt>) with a StAX pull parser. Only the elements used by the readers are
+ * kept, every other element is skipped without being bound, which avoid building the whole JAX-B object graph.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class StAXDescriptorReader
+{
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private static final String ID = "id";
+
+    private static final String NAME = "name";
+
+    private static final String TYPE = "type";
+
+    private static final String VALUE = "value";
+
+    private static final String PROPERTY = "property";
+
+    private static final String ATTRIBUTE = "attribute";
+
+    private StAXDescriptorReader()
+    {
+    }
+
+    private static XMLInputFactory createFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    /**
+     * Read a XML descriptor into the corresponding REST model object.
+     *
+     * @param inputStream is the XML as input
+     * @param type is the REST model class in which the XML should be converted
+     * @return the converted object, with only the fields used by the readers filled
+     * @throws XMLStreamException if the XML is malformed or if the type is not a descriptor type
+     */
+    public static Object read(InputStream inputStream, Class<?> type) throws XMLStreamException
+    {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(inputStream);
+        try {
+            reader.nextTag();
+            if (Wiki.class.equals(type)) {
+                reader.require(XMLStreamConstants.START_ELEMENT, null, "wiki");
+                return readWiki(reader);
+            } else if (Space.class.equals(type)) {
+                reader.require(XMLStreamConstants.START_ELEMENT, null, "space");
+                return readSpace(reader);
+            } else if (Page.class.equals(type)) {
+                reader.require(XMLStreamConstants.START_ELEMENT, null, "page");
+                return readPage(reader);
+            } else if (org.xwiki.rest.model.jaxb.Object.class.equals(type)) {
+                reader.require(XMLStreamConstants.START_ELEMENT, null, "object");
+                return readObject(reader);
+            } else if (org.xwiki.rest.model.jaxb.Class.class.equals(type)) {
+                reader.require(XMLStreamConstants.START_ELEMENT, null, "class");
+                return readClass(reader);
+            }
+            String message = String.format("The type '%s' is not a XFF descriptor.", type.toString());
+            throw new XMLStreamException(message);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Wiki readWiki(XMLStreamReader reader) throws XMLStreamException
+    {
+        Wiki wiki = new Wiki();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (ID.equals(element)) {
+                wiki.setId(reader.getElementText());
+            } else if (NAME.equals(element)) {
+                wiki.setName(reader.getElementText());
+            } else {
+                skipElement(reader);
+            }
+        }
+        return wiki;
+    }
+
+    private static Space readSpace(XMLStreamReader reader) throws XMLStreamException
+    {
+        Space space = new Space();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (ID.equals(element)) {
+                space.setId(reader.getElementText());
+            } else if ("wiki".equals(element)) {
+                space.setWiki(reader.getElementText());
+            } else if (NAME.equals(element)) {
+                space.setName(reader.getElementText());
+            } else {
+                skipElement(reader);
+            }
+        }
+        return space;
+    }
+
+    private static Page readPage(XMLStreamReader reader) throws XMLStreamException
+    {
+        Page page = new Page();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (NAME.equals(element)) {
+                page.setName(reader.getElementText());
+            } else if ("title".equals(element)) {
+                page.setTitle(reader.getElementText());
+            } else if ("parent".equals(element)) {
+                page.setParent(reader.getElementText());
+            } else if ("content".equals(element)) {
+                page.setContent(reader.getElementText());
+            } else {
+                skipElement(reader);
+            }
+        }
+        return page;
+    }
+
+    private static org.xwiki.rest.model.jaxb.Object readObject(XMLStreamReader reader) throws XMLStreamException
+    {
+        org.xwiki.rest.model.jaxb.Object object = new org.xwiki.rest.model.jaxb.Object();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (ID.equals(element)) {
+                object.setId(reader.getElementText());
+            } else if ("className".equals(element)) {
+                object.setClassName(reader.getElementText());
+            } else if (PROPERTY.equals(element)) {
+                readProperty(reader, object.getProperties());
+            } else {
+                skipElement(reader);
+            }
+        }
+        return object;
+    }
+
+    private static org.xwiki.rest.model.jaxb.Class readClass(XMLStreamReader reader) throws XMLStreamException
+    {
+        org.xwiki.rest.model.jaxb.Class xClass = new org.xwiki.rest.model.jaxb.Class();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (ID.equals(element)) {
+                xClass.setId(reader.getElementText());
+            } else if (NAME.equals(element)) {
+                xClass.setName(reader.getElementText());
+            } else if (PROPERTY.equals(element)) {
+                readProperty(reader, xClass.getProperties());
+            } else {
+                skipElement(reader);
+            }
+        }
+        return xClass;
+    }
+
+    private static void readProperty(XMLStreamReader reader, List<Property> properties) throws XMLStreamException
+    {
+        Property property = new Property();
+        property.setName(reader.getAttributeValue(null, NAME));
+        property.setType(reader.getAttributeValue(null, TYPE));
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (VALUE.equals(element)) {
+                property.setValue(reader.getElementText());
+            } else if (ATTRIBUTE.equals(element)) {
+                Attribute attribute = new Attribute();
+                attribute.setName(reader.getAttributeValue(null, NAME));
+                attribute.setValue(reader.getAttributeValue(null, VALUE));
+                property.getAttributes().add(attribute);
+                skipElement(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        properties.add(property);
+    }
+
+    /**
+     * Move the cursor to the end of the current element, ignoring all its content.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
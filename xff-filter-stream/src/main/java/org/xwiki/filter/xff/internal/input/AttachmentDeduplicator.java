@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.input;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Find the attachments of an import with the same content as a previous one, from the SHA-256 hash of their content.
+ * Only the last attachments are remembered, so that the memory used doesn't depend on the size of the package.
+ * <p>
+ * A deduplicator is used by a single import, on a single thread.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class AttachmentDeduplicator
+{
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The attachments remembered, by hash, the least recently seen first.
+     */
+    private final Map<String, Object> attachments;
+
+    private long duplicateCount;
+
+    private long duplicateSize;
+
+    /**
+     * @param cacheSize is the number of attachments remembered
+     */
+    public AttachmentDeduplicator(final int cacheSize)
+    {
+        this.attachments = new LinkedHashMap<String, Object>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return a new digest computing the hash of an attachment
+     */
+    public static MessageDigest createDigest()
+    {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param digest is the digest of an attachment, fully read
+     * @return the hash of the attachment, in hexadecimal
+     */
+    public static String toHash(MessageDigest digest)
+    {
+        byte[] bytes = digest.digest();
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Remember an attachment, unless an attachment with the same content has already been seen.
+     *
+     * @param hash is the hash of the content of the attachment
+     * @param reference identifies the attachment
+     * @param size is the size of the attachment
+     * @return the reference of the previous attachment with the same content, or null if there is none
+     */
+    public Object add(String hash, Object reference, long size)
+    {
+        Object original = this.attachments.get(hash);
+        if (original == null) {
+            this.attachments.put(hash, reference);
+        } else {
+            this.duplicateCount++;
+            this.duplicateSize += Math.max(size, 0);
+        }
+        return original;
+    }
+
+    /**
+     * @return the number of attachments with the same content as a previous one
+     */
+    public long getDuplicateCount()
+    {
+        return this.duplicateCount;
+    }
+
+    /**
+     * @return the size of the attachments with the same content as a previous one
+     */
+    public long getDuplicateSize()
+    {
+        return this.duplicateSize;
+    }
+}
@@ -19,19 +19,34 @@
  */
 package org.xwiki.filter.xff.internal.input;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 
 import javax.inject.Named;
 
-import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.filter.FilterEventParameters;
 import org.xwiki.filter.FilterException;
 import org.xwiki.filter.xff.input.AbstractReader;
+import org.xwiki.filter.xff.input.EntryPath;
+import org.xwiki.filter.xff.input.FileRegionInputStream;
+import org.xwiki.filter.xff.input.ImportContext;
+import org.xwiki.filter.xff.input.XFFInputProperties;
+import org.xwiki.filter.xff.internal.AttachmentInputStream;
+import org.xwiki.filter.xff.internal.PathInputStream;
+import org.xwiki.filter.xff.internal.SizedInputStream;
 import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
@@ -46,7 +61,12 @@ import org.xwiki.model.reference.EntityReference;
 @Named(org.xwiki.xff.core.model.Attachment.ATTACHMENTS_HINT)
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
 public class AttachmentsReader extends AbstractReader
-{    
+{
+    /**
+     * Prefix of the temporary files used for attachments whose size is unknown.
+     */
+    private static final String TEMPORARY_PREFIX = "xff-attachment-";
+
     /**
      * Reference to the current attachment.
      */
@@ -68,18 +88,174 @@ public class AttachmentsReader extends AbstractReader
     @Override
     public void route(Path path, InputStream inputStream) throws FilterException
     {
-        byte[] bytes;
+        this.route(EntryPath.of(path), inputStream);
+    }
+
+    @Override
+    public void route(EntryPath path, InputStream inputStream) throws FilterException
+    {
+        long size = -1;
+        if (inputStream instanceof SizedInputStream) {
+            size = ((SizedInputStream) inputStream).getSize();
+        } else if (inputStream instanceof FileRegionInputStream) {
+            size = ((FileRegionInputStream) inputStream).getSize();
+        }
+        ImportContext importContext = getImportContext();
+        boolean deduplicated = importContext != null && importContext.isDeduplicatingAttachments();
         try {
-            bytes = IOUtils.toByteArray(inputStream);
-            // FIXME: Why do we need length if we use an InputStream?
-            this.proxyFilter.onWikiAttachment(this.reference.getName(), inputStream, Long.valueOf(bytes.length),
-                this.parameters);
+            if (size < 0) {
+                this.spool(inputStream, deduplicated);
+            } else if (deduplicated) {
+                this.sendDeduplicated(inputStream, size);
+            } else {
+                this.send(getContent(inputStream, size), size, this.parameters);
+            }
         } catch (IOException e) {
             String message = String.format("Error in writing '%s'.", this.reference.getName());
             throw new FilterException(message, e);
         }
     }
 
+    /**
+     * A region of the archive is given as is, so that the filter can copy it without reading it.
+     */
+    private static InputStream getContent(InputStream inputStream, long size)
+    {
+        if (inputStream instanceof FileRegionInputStream) {
+            return inputStream;
+        }
+        return new AttachmentInputStream(inputStream, size);
+    }
+
+    private void send(InputStream content, long size, FilterEventParameters eventParameters) throws FilterException
+    {
+        this.proxyFilter.onWikiAttachment(this.reference.getName(), content, Long.valueOf(size), eventParameters);
+    }
+
+    /**
+     * Send the attachment with its hash and the previous attachment with the same content, which have to be known
+     * before the attachment is sent. Small attachments are read once in memory, computing their hash on the way. Big
+     * attachments in a file or in a region of the archive (folders and random access) are hashed from the file
+     * first. The other big attachments cannot be read twice: their hash is computed while the filter reads them, so
+     * that the next attachments with the same content are still found.
+     */
+    private void sendDeduplicated(InputStream inputStream, long size) throws IOException, FilterException
+    {
+        if (size <= getMemoryThreshold()) {
+            MessageDigest digest = AttachmentDeduplicator.createDigest();
+            byte[] bytes =
+                IOUtils.toByteArray(new DigestInputStream(new AttachmentInputStream(inputStream, size), digest), size);
+            String hash = AttachmentDeduplicator.toHash(digest);
+            send(new ByteArrayInputStream(bytes), size, getParameters(hash, add(hash, size)));
+            return;
+        }
+        String hash = hashFile(inputStream);
+        if (hash != null) {
+            send(getContent(inputStream, size), size, getParameters(hash, add(hash, size)));
+            return;
+        }
+        MessageDigest digest = AttachmentDeduplicator.createDigest();
+        DigestInputStream content = new DigestInputStream(getContent(inputStream, size), digest);
+        send(content, size, this.parameters);
+        // Read what the filter left, to get the hash of the whole attachment.
+        IOUtils.copy(content, NullOutputStream.NULL_OUTPUT_STREAM);
+        add(AttachmentDeduplicator.toHash(digest), size);
+    }
+
+    /**
+     * Compute the hash of an attachment in a file or in a region of the archive, reading the file directly rather
+     * than the stream of the import, so that the metrics don't count the attachment twice.
+     *
+     * @return the hash of the attachment, or null if it's not in a file
+     */
+    private static String hashFile(InputStream inputStream) throws IOException
+    {
+        InputStream fileInputStream;
+        if (inputStream instanceof PathInputStream) {
+            fileInputStream = Files.newInputStream(((PathInputStream) inputStream).getPath());
+        } else if (inputStream instanceof FileRegionInputStream) {
+            FileRegionInputStream region = (FileRegionInputStream) inputStream;
+            fileInputStream = new FileRegionInputStream(region.getChannel(), region.getPosition(), region.getSize());
+        } else {
+            return null;
+        }
+        MessageDigest digest = AttachmentDeduplicator.createDigest();
+        try (InputStream digestInputStream = new DigestInputStream(fileInputStream, digest)) {
+            IOUtils.copy(digestInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        return AttachmentDeduplicator.toHash(digest);
+    }
+
+    private Object add(String hash, long size)
+    {
+        Object original = getImportContext().addAttachment(hash, this.reference, size);
+        if (original != null) {
+            this.logger.debug("The attachment [{}] has the same content as [{}].", this.reference, original);
+        }
+        return original;
+    }
+
+    private FilterEventParameters getParameters(String hash, Object original)
+    {
+        FilterEventParameters eventParameters = new FilterEventParameters();
+        eventParameters.putAll(this.parameters);
+        eventParameters.put(XFFInputProperties.PARAMETER_ATTACHMENT_HASH, hash);
+        if (original != null) {
+            eventParameters.put(XFFInputProperties.PARAMETER_ATTACHMENT_DUPLICATE_OF, original);
+        }
+        return eventParameters;
+    }
+
+    private int getMemoryThreshold()
+    {
+        if (this.properties != null) {
+            return this.properties.getAttachmentMemoryThreshold();
+        }
+        return XFFInputProperties.DEFAULT_ATTACHMENT_MEMORY_THRESHOLD;
+    }
+
+    /**
+     * The size of the attachment is unknown: it's copied in memory, or in a temporary file when it's bigger than
+     * {@link XFFInputProperties#getAttachmentMemoryThreshold()}, to know its size before sending it to the filter.
+     */
+    private void spool(InputStream inputStream, boolean deduplicated) throws IOException, FilterException
+    {
+        MessageDigest digest = deduplicated ? AttachmentDeduplicator.createDigest() : null;
+        DeferredFileOutputStream outputStream =
+            new DeferredFileOutputStream(getMemoryThreshold(), TEMPORARY_PREFIX, null, null);
+        try {
+            IOUtils.copy(digest != null ? new DigestInputStream(inputStream, digest) : inputStream, outputStream);
+        } finally {
+            outputStream.close();
+        }
+        FilterEventParameters eventParameters = this.parameters;
+        if (digest != null) {
+            String hash = AttachmentDeduplicator.toHash(digest);
+            eventParameters = getParameters(hash, add(hash, outputStream.getByteCount()));
+        }
+        if (outputStream.isInMemory()) {
+            byte[] bytes = outputStream.getData();
+            send(new ByteArrayInputStream(bytes), bytes.length, eventParameters);
+        } else {
+            File file = outputStream.getFile();
+            try (InputStream fileInputStream = new FileInputStream(file)) {
+                send(fileInputStream, outputStream.getByteCount(), eventParameters);
+            } finally {
+                if (!file.delete()) {
+                    this.logger.warn("Unable to delete the temporary file [{}].", file);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void reset()
+    {
+        super.reset();
+        this.reference = null;
+        this.parameters = FilterEventParameters.EMPTY;
+    }
+
     @Override
     public void close() throws FilterException
     {
@@ -0,0 +1,285 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+
+import org.xwiki.filter.xff.input.EntryPath;
+import org.xwiki.filter.xff.internal.DescriptorInputStream;
+import org.xwiki.filter.xff.internal.JAXBContextRegistry;
+import org.xwiki.filter.xff.internal.PathInputStream;
+import org.xwiki.filter.xff.internal.SizedInputStream;
+import org.xwiki.filter.xff.internal.StAXDescriptorReader;
+import org.xwiki.xff.core.model.Page;
+import org.xwiki.xff.core.model.Space;
+import org.xwiki.xff.core.model.Wiki;
+
+/**
+ * Read and parse the files of a XFF folder ahead of time on a pool of threads. The files are given back in the order
+ * of the explorer, so that the events sent by the readers are exactly the ones of a serial read. Only a bounded
+ * number of files are read ahead, and big files (e.g. attachments) are not read ahead but opened when they are asked.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class DirectoryPrefetcher implements Closeable
+{
+    /**
+     * Number of files read ahead by each thread.
+     */
+    private static final int WINDOW_PER_THREAD = 4;
+
+    /**
+     * Root folder of the package.
+     */
+    private final Path rootPath;
+
+    /**
+     * Relative paths of the files, in the XFF order.
+     */
+    private final Iterator<Path> paths;
+
+    /**
+     * True if the descriptors are parsed with {@link StAXDescriptorReader}.
+     */
+    private final boolean streamingDescriptors;
+
+    /**
+     * Files bigger than this are opened when they are asked instead of being read in memory.
+     */
+    private final long maxPrefetchSize;
+
+    /**
+     * Threads reading the files.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Files being read, in the XFF order.
+     */
+    private final Deque<Future<PrefetchedFile>> window = new ArrayDeque<Future<PrefetchedFile>>();
+
+    /**
+     * Maximum number of files being read ahead.
+     */
+    private final int windowSize;
+
+    /**
+     * A file of the package, read ahead.
+     */
+    public final class PrefetchedFile
+    {
+        private final Path path;
+
+        private final byte[] content;
+
+        private final Object descriptor;
+
+        private PrefetchedFile(Path path, byte[] content, Object descriptor)
+        {
+            this.path = path;
+            this.content = content;
+            this.descriptor = descriptor;
+        }
+
+        /**
+         * @return the path of the file, relative to the root of the package
+         */
+        public Path getPath()
+        {
+            return this.path;
+        }
+
+        /**
+         * @return the content of the file, which has to be closed by the caller
+         * @throws IOException if the file has not been read ahead and cannot be opened
+         */
+        public InputStream getInputStream() throws IOException
+        {
+            if (this.content == null) {
+                Path filePath = rootPath.resolve(this.path);
+                return new PathInputStream(Files.newInputStream(filePath), filePath, Files.size(filePath));
+            } else if (this.descriptor != null) {
+                return new DescriptorInputStream(this.content, this.descriptor);
+            }
+            return new SizedInputStream(new ByteArrayInputStream(this.content), this.content.length);
+        }
+    }
+
+    /**
+     * @param rootPath is the root folder of the package
+     * @param paths are the relative paths of the files to read, in the XFF order
+     * @param threads is the number of threads reading the files
+     * @param streamingDescriptors true if the descriptors should be parsed with {@link StAXDescriptorReader}
+     * @param maxPrefetchSize is the size of the biggest file read ahead in memory, the memory used being bounded by
+     *            this size times the number of files read ahead
+     */
+    public DirectoryPrefetcher(Path rootPath, Iterator<Path> paths, int threads, boolean streamingDescriptors,
+        long maxPrefetchSize)
+    {
+        this.rootPath = rootPath;
+        this.paths = paths;
+        this.streamingDescriptors = streamingDescriptors;
+        this.maxPrefetchSize = maxPrefetchSize;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.windowSize = threads * WINDOW_PER_THREAD;
+        fill();
+    }
+
+    private void fill()
+    {
+        while (this.window.size() < this.windowSize && this.paths.hasNext()) {
+            final Path path = this.paths.next();
+            this.window.add(this.executor.submit(new Callable<PrefetchedFile>()
+            {
+                @Override
+                public PrefetchedFile call() throws IOException
+                {
+                    return prefetch(path);
+                }
+            }));
+        }
+    }
+
+    private PrefetchedFile prefetch(Path path) throws IOException
+    {
+        Path filePath = this.rootPath.resolve(path);
+        if (Files.size(filePath) > this.maxPrefetchSize) {
+            return new PrefetchedFile(path, null, null);
+        }
+        byte[] content = Files.readAllBytes(filePath);
+        return new PrefetchedFile(path, content,
+            parse(EntryPath.of(path), content, content.length, this.streamingDescriptors));
+    }
+
+    /**
+     * Parse the file if it's a descriptor. A descriptor which cannot be parsed is left to the reader, which will
+     * report the error.
+     *
+     * @param path is the path of the file relative to the root of the package
+     * @param content contains the content of the file
+     * @param length is the length of the content
+     * @param streamingDescriptors true if the descriptors should be parsed with {@link StAXDescriptorReader}
+     * @return the REST model object parsed from the content, or null if the file is not a descriptor
+     */
+    static Object parse(EntryPath path, byte[] content, int length, boolean streamingDescriptors)
+    {
+        Class<?> type = getDescriptorType(path);
+        if (type != null) {
+            try (InputStream inputStream = new ByteArrayInputStream(content, 0, length)) {
+                if (streamingDescriptors) {
+                    return StAXDescriptorReader.read(inputStream, type);
+                }
+                return JAXBContextRegistry.unmarshal(inputStream, type);
+            } catch (IOException | JAXBException | XMLStreamException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param path is the path of a file relative to the root of the package
+     * @return the type of the REST model object of the file if it's a descriptor, null otherwise
+     */
+    static Class<?> getDescriptorType(EntryPath path)
+    {
+        int count = path.getNameCount();
+        String fileName = path.getFileName();
+        if (count >= 3 && Wiki.WIKI_FILENAME.equals(fileName) && isHint(path, count - 3, Wiki.WIKI_HINT)) {
+            return org.xwiki.rest.model.jaxb.Wiki.class;
+        } else if (count >= 3 && Space.SPACE_FILENAME.equals(fileName) && isHint(path, count - 3, Space.SPACE_HINT)) {
+            return org.xwiki.rest.model.jaxb.Space.class;
+        } else if (count >= 3 && Page.PAGE_FILENAME.equals(fileName) && isHint(path, count - 3, Page.PAGE_HINT)) {
+            return org.xwiki.rest.model.jaxb.Page.class;
+        } else if (count >= 2 && org.xwiki.xff.core.model.Class.CLASS_FILENAME.equals(fileName)
+            && isHint(path, count - 2, org.xwiki.xff.core.model.Class.CLASS_HINT)) {
+            return org.xwiki.rest.model.jaxb.Class.class;
+        } else if (count >= 4 && org.xwiki.xff.core.model.Object.OBJECT_FILENAME.equals(fileName)
+            && isHint(path, count - 4, org.xwiki.xff.core.model.Object.OBJECT_HINT)) {
+            return org.xwiki.rest.model.jaxb.Object.class;
+        }
+        return null;
+    }
+
+    private static boolean isHint(EntryPath path, int index, String hint)
+    {
+        return hint.equals(path.getName(index));
+    }
+
+    /**
+     * @return true if there are still files to read
+     */
+    public boolean hasNext()
+    {
+        return !this.window.isEmpty();
+    }
+
+    /**
+     * Wait for the next file in the XFF order.
+     *
+     * @return the next file
+     * @throws IOException if the file cannot be read
+     */
+    public PrefetchedFile next() throws IOException
+    {
+        Future<PrefetchedFile> future = this.window.poll();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the XFF folder.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to read a file of the XFF folder.", e.getCause());
+        } finally {
+            fill();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        for (Future<PrefetchedFile> future : this.window) {
+            future.cancel(true);
+        }
+        this.window.clear();
+        this.executor.shutdownNow();
+    }
+}
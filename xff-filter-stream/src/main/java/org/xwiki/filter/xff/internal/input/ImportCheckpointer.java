@@ -0,0 +1,223 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.input;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.xwiki.filter.xff.input.EntryPath;
+import org.xwiki.filter.xff.input.ImportCheckpointStore;
+import org.xwiki.filter.xff.input.XFFInputProperties;
+import org.xwiki.xff.core.PackageIndex;
+import org.xwiki.xff.core.model.Page;
+
+/**
+ * Give the checkpoints of an import to the {@link ImportCheckpointStore}s, and skip the files up to the checkpoint
+ * when an import is resumed. The files have to be given in the XFF order, so that all the files of a page are given
+ * one after the other: a page is fully read once a file outside of it has been sent to the readers, since the
+ * readers of the page are closed at that time.
+ * <p>
+ * A checkpointer is used by a single import. The files may be skipped on the thread reading them ahead of time (see
+ * {@link ZipPrefetcher}), the other methods being called on the thread routing them.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class ImportCheckpointer
+{
+    private static final String SEPARATOR = "/";
+
+    private final XFFInputProperties properties;
+
+    private final List<ImportCheckpointStore> stores;
+
+    /**
+     * The checkpoint from which the import is resumed, or null once the files after it are reached.
+     */
+    private String resumeFrom;
+
+    /**
+     * The wikis and spaces containing the checkpoint, whose descriptors are read even when resuming.
+     */
+    private Set<String> resumeAncestors;
+
+    /**
+     * True once the files of the checkpoint are reached.
+     */
+    private boolean checkpointReached;
+
+    /**
+     * The page of the last file sent to the readers, or null if it was not part of a page.
+     */
+    private String currentPage;
+
+    private long pageCount;
+
+    /**
+     * @param properties are the properties of the import, giving the checkpoint interval and the checkpoint from
+     *            which the import is resumed
+     * @param stores are the stores to which the checkpoints are given
+     */
+    public ImportCheckpointer(XFFInputProperties properties, List<ImportCheckpointStore> stores)
+    {
+        this.properties = properties;
+        this.stores = properties.getCheckpointInterval() > 0 ? stores : Collections.<ImportCheckpointStore>emptyList();
+        String checkpoint = properties.getResumeFrom();
+        if (checkpoint != null) {
+            checkpoint = checkpoint.trim();
+            while (checkpoint.endsWith(SEPARATOR)) {
+                checkpoint = checkpoint.substring(0, checkpoint.length() - 1);
+            }
+        }
+        if (checkpoint != null && !checkpoint.isEmpty()) {
+            this.resumeFrom = checkpoint;
+            this.resumeAncestors = new HashSet<String>(PackageIndex.getAncestors(checkpoint));
+        }
+    }
+
+    /**
+     * @return true if the files up to the checkpoint from which the import is resumed are still being skipped
+     */
+    public boolean isResuming()
+    {
+        return this.resumeFrom != null;
+    }
+
+    /**
+     * @return the checkpoint from which the import is resumed, i.e. the path of a page folder relative to the root of
+     *         the package, or null if the import is not resumed or if the files after the checkpoint are reached
+     */
+    public String getCheckpoint()
+    {
+        return this.resumeFrom;
+    }
+
+    /**
+     * Tell if a file is part of the checkpoint from which the import is resumed, to make sure that the checkpoint is
+     * in the package before skipping any file.
+     *
+     * @param name is the path of the file relative to the root of the package, with / as separator
+     * @return true if the file is part of the checkpoint
+     */
+    public boolean isCheckpoint(String name)
+    {
+        return this.resumeFrom != null && this.resumeFrom.equals(PackageIndex.getOwner(name));
+    }
+
+    /**
+     * @return true if the import is resumed but the files of the checkpoint have not been found (yet)
+     */
+    public boolean isCheckpointMissing()
+    {
+        return this.resumeFrom != null && !this.checkpointReached;
+    }
+
+    /**
+     * Tell if a file is before the checkpoint from which the import is resumed, in which case it is neither read nor
+     * sent to the readers. Only the descriptors of the wikis and spaces containing the checkpoint are kept, so that
+     * the next pages are imported in the same wikis and spaces. This has to be called for each file, in the XFF
+     * order.
+     *
+     * @param name is the path of the file relative to the root of the package, with / as separator
+     * @return true if the file is skipped
+     */
+    public boolean skip(String name)
+    {
+        if (this.resumeFrom == null) {
+            return false;
+        }
+        String owner = PackageIndex.getOwner(name);
+        if (this.resumeFrom.equals(owner)) {
+            this.checkpointReached = true;
+            return true;
+        } else if (this.checkpointReached) {
+            this.resumeFrom = null;
+            return false;
+        }
+        return !this.resumeAncestors.contains(owner);
+    }
+
+    /**
+     * Called once a file has been sent to the readers, to find out when a page is fully read.
+     *
+     * @param path is the path of the file relative to the root of the package
+     */
+    public void routed(EntryPath path)
+    {
+        if (this.stores.isEmpty()) {
+            return;
+        }
+        String owner = PackageIndex.getOwner(path.toString());
+        if (this.currentPage != null && !this.currentPage.equals(owner) && !isAncestor(owner, this.currentPage)) {
+            // The readers of the page have been closed to read a file outside of it.
+            pageRead(this.currentPage);
+        }
+        if (isPage(owner)) {
+            this.currentPage = owner;
+        } else if (!isAncestor(owner, this.currentPage)) {
+            this.currentPage = null;
+        }
+    }
+
+    /**
+     * Called once all the readers are closed at the end of the import.
+     */
+    public void finish()
+    {
+        if (this.currentPage != null) {
+            pageRead(this.currentPage);
+            this.currentPage = null;
+        }
+        for (ImportCheckpointStore store : this.stores) {
+            store.onImportFinished(this.properties);
+        }
+    }
+
+    private void pageRead(String page)
+    {
+        this.pageCount++;
+        if (this.pageCount % this.properties.getCheckpointInterval() == 0) {
+            for (ImportCheckpointStore store : this.stores) {
+                store.saveCheckpoint(this.properties, page);
+            }
+        }
+    }
+
+    private static boolean isPage(String owner)
+    {
+        if (owner == null) {
+            return false;
+        }
+        int idStart = owner.lastIndexOf(SEPARATOR);
+        int hintStart = owner.lastIndexOf(SEPARATOR, idStart - 1) + 1;
+        return idStart > 0 && Page.PAGE_HINT.equals(owner.substring(hintStart, idStart));
+    }
+
+    /**
+     * @return true if the owner is a wiki or space containing the page, whose descriptor can be read without closing
+     *         the page
+     */
+    private static boolean isAncestor(String owner, String page)
+    {
+        return owner != null && page != null && page.startsWith(owner + SEPARATOR);
+    }
+}
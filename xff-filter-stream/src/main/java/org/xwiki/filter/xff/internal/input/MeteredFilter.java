@@ -0,0 +1,100 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.input;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.xwiki.filter.xff.input.FilterInterceptor;
+import org.xwiki.filter.xff.input.ImportMetrics;
+import org.xwiki.filter.xff.input.ImportMetrics.Entity;
+
+/**
+ * Wrap the filter receiving the events of an import, to count the entities and the time spent in the filter.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public final class MeteredFilter extends FilterInterceptor
+{
+    /**
+     * The events starting an entity.
+     */
+    private static final Set<String> ENTITY_EVENTS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+        "beginWiki", "beginWikiSpace", "beginWikiDocument", "beginWikiClass", "beginWikiObject", "onWikiAttachment")));
+
+    private final ImportMetrics metrics;
+
+    private MeteredFilter(XFFInputFilter filter, ImportMetrics metrics)
+    {
+        super(filter);
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param filter is the filter receiving the events
+     * @param metrics are the metrics of the import
+     * @return a filter measuring the events before sending them to the filter
+     */
+    public static XFFInputFilter wrap(XFFInputFilter filter, ImportMetrics metrics)
+    {
+        return (XFFInputFilter) new MeteredFilter(filter, metrics).createProxy();
+    }
+
+    @Override
+    protected Object intercept(Method method, Object[] args) throws Throwable
+    {
+        String event = method.getName();
+        Entity entity = getEntity(event);
+        if (entity != null && ENTITY_EVENTS.contains(event)) {
+            this.metrics.count(entity);
+        }
+        this.metrics.start(ImportMetrics.Stage.FILTER, entity);
+        try {
+            return proceed(method, args);
+        } finally {
+            this.metrics.stop();
+        }
+    }
+
+    /**
+     * @return the kind of entity of an event, from its name (e.g. <tt>beginWikiSpace</tt>)
+     */
+    private static Entity getEntity(String event)
+    {
+        if (event.contains("WikiAttachment")) {
+            return Entity.ATTACHMENT;
+        } else if (event.contains("WikiObject")) {
+            return Entity.OBJECT;
+        } else if (event.contains("WikiClass")) {
+            return Entity.CLASS;
+        } else if (event.contains("WikiDocument")) {
+            return Entity.PAGE;
+        } else if (event.contains("WikiSpace")) {
+            return Entity.SPACE;
+        } else if (event.endsWith("Wiki")) {
+            return Entity.WIKI;
+        }
+        return null;
+    }
+}
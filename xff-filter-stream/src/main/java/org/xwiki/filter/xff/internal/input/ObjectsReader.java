@@ -19,19 +19,18 @@
  */
 package org.xwiki.filter.xff.internal.input;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 
 import javax.inject.Named;
 
-import org.apache.commons.io.IOUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.filter.FilterEventParameters;
 import org.xwiki.filter.FilterException;
 import org.xwiki.filter.xff.input.AbstractReader;
+import org.xwiki.filter.xff.input.EntryPath;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.ObjectReference;
@@ -111,18 +110,13 @@ public class ObjectsReader extends AbstractReader
         }
     }
 
-    private void routeProperty(Path path, InputStream inputStream) throws FilterException
+    private void routeProperty(EntryPath path, InputStream inputStream) throws FilterException
     {
-        String filename = path.getFileName().toString();
+        String filename = path.getFileName();
         for (Property property : this.xObject.getProperties()) {
             String propertyName = property.getName();
             if (filename.startsWith(propertyName + '.')) {
-                try {
-                    property.setValue(IOUtils.toString(inputStream));
-                } catch (IOException e) {
-                    String message = String.format("Unable to read a string from '%s'.", path.toString());
-                    throw new FilterException(message, e);
-                }
+                property.setValue(readProperty(path, inputStream));
             }
         }
     }
@@ -142,15 +136,20 @@ public class ObjectsReader extends AbstractReader
     @Override
     public void route(Path path, InputStream inputStream) throws FilterException
     {
-        String fileName = path.toString();
-        if (fileName.equals(org.xwiki.xff.core.model.Object.OBJECT_FILENAME)) {
+        this.route(EntryPath.of(path), inputStream);
+    }
+
+    @Override
+    public void route(EntryPath path, InputStream inputStream) throws FilterException
+    {
+        if (path.getNameCount() == 1 && path.getName(0).equals(org.xwiki.xff.core.model.Object.OBJECT_FILENAME)) {
             this.parseObject(inputStream);
             this.start();
             return;
         } else {
             this.start();
         }
-        if (path.toString().startsWith(org.xwiki.xff.core.model.Property.PROPERTY_HINT)) {
+        if (path.getName(0).startsWith(org.xwiki.xff.core.model.Property.PROPERTY_HINT)) {
             this.routeProperty(path, inputStream);
         } else {
             String message = String.format("ObjectReader don't know how to route '%s'.", path.toString());
@@ -158,6 +157,16 @@ public class ObjectsReader extends AbstractReader
         }
     }
 
+    @Override
+    public void reset()
+    {
+        super.reset();
+        this.reference = null;
+        this.number = -1;
+        this.xObject = new org.xwiki.rest.model.jaxb.Object();
+        this.parameters = FilterEventParameters.EMPTY;
+    }
+
     @Override
     public void close() throws FilterException
     {
@@ -19,14 +19,12 @@
  */
 package org.xwiki.filter.xff.internal.input;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Locale;
 
 import javax.inject.Named;
 
-import org.apache.commons.io.IOUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
@@ -34,6 +32,7 @@ import org.xwiki.filter.FilterEventParameters;
 import org.xwiki.filter.FilterException;
 import org.xwiki.filter.event.model.WikiDocumentFilter;
 import org.xwiki.filter.xff.input.AbstractReader;
+import org.xwiki.filter.xff.input.EntryPath;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.SpaceReference;
@@ -149,17 +148,12 @@ public class PagesReader extends AbstractReader
         }
     }
 
-    private void routeProperty(Path path, InputStream inputStream) throws FilterException
+    private void routeProperty(EntryPath path, InputStream inputStream) throws FilterException
     {
-        String filename = path.getFileName().toString();
+        String filename = path.getFileName();
         // TODO: Make it more generic
         if (filename.startsWith("content.")) {
-            try {
-                this.xPage.setContent(IOUtils.toString(inputStream));
-            } catch (IOException e) {
-                String message = String.format("Unable to read a string from '%s'.", path.toString());
-                throw new FilterException(message, e);
-            }
+            this.xPage.setContent(readProperty(path, inputStream));
         }
     }
 
@@ -174,33 +168,38 @@ public class PagesReader extends AbstractReader
     @Override
     public void route(Path path, InputStream inputStream) throws FilterException
     {
-        String fileName = path.toString();
-        if (fileName.equals(org.xwiki.xff.core.model.Page.PAGE_FILENAME)) {
+        this.route(EntryPath.of(path), inputStream);
+    }
+
+    @Override
+    public void route(EntryPath path, InputStream inputStream) throws FilterException
+    {
+        if (path.getNameCount() == 1 && path.getName(0).equals(org.xwiki.xff.core.model.Page.PAGE_FILENAME)) {
             this.parsePage(inputStream);
             this.start();
             return;
         } else {
             this.start();
         }
-        String hint = path.subpath(0, 1).toString();
+        String hint = path.getName(0);
         if (hint.equals(org.xwiki.xff.core.model.Property.PROPERTY_HINT)) {
             this.routeProperty(path, inputStream);
             return;
         }
         String childId = null;
-        Path childPath = null;
+        EntryPath childPath = null;
         switch (hint) {
             case "attachments":
-                childId = path.subpath(1, 2).toString();
-                childPath = path.subpath(1, path.getNameCount());
+                childId = path.getName(1);
+                childPath = path.subpath(1);
                 break;
             case "classes":
                 childId = this.reference.toString();
-                childPath = path.subpath(1, path.getNameCount());
+                childPath = path.subpath(1);
                 break;
             case "objects":
-                childId = path.subpath(1, 3).toString();
-                childPath = path.subpath(3, path.getNameCount());
+                childId = path.join(1, 3);
+                childPath = path.subpath(3);
                 break;
             default:
                 String message = String.format("PagesReader don't know how to route '%s'.", path.toString());
@@ -209,9 +208,7 @@ public class PagesReader extends AbstractReader
 
         // Get a new reader only if the child change
         if (!childId.equals(this.lastReaderId)) {
-            if (this.reader != null) {
-                this.reader.close();
-            }
+            this.closeReader();
             this.reader = this.getReader(hint);
             this.reader.open(childId, this.reference, this.filter, this.proxyFilter);
         }
@@ -219,12 +216,21 @@ public class PagesReader extends AbstractReader
         this.lastReaderId = childId;
     }
 
+    @Override
+    public void reset()
+    {
+        super.reset();
+        this.reference = null;
+        this.xPage = new Page();
+        this.parameters = FilterEventParameters.EMPTY;
+        this.parametersLocale = FilterEventParameters.EMPTY;
+        this.parametersRevision = FilterEventParameters.EMPTY;
+    }
+
     @Override
     public void close() throws FilterException
     {
-        if (this.reader != null) {
-            this.reader.close();
-        }
+        this.closeReader();
         this.end();
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.input;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.filter.FilterException;
+import org.xwiki.filter.xff.input.Reader;
+import org.xwiki.filter.xff.input.XFFInputProperties;
+
+/**
+ * Keep the {@link Reader}s of an import to reuse them, instead of looking up a new one in the component manager for
+ * each wiki, space, page, object and attachment. A reader is given back to the pool once closed, and reset before
+ * being reused. Since readers of the same kind can be nested (e.g. spaces), several readers are kept for each hint.
+ * <p>
+ * A pool is used by a single import, on a single thread.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class ReaderPool
+{
+    /**
+     * The component manager, to get new readers when none are available.
+     */
+    private final ComponentManager componentManager;
+
+    /**
+     * Properties of the import, given to the new readers.
+     */
+    private final XFFInputProperties properties;
+
+    /**
+     * Readers available, by hint.
+     */
+    private final Map<String, Deque<Reader>> availableReaders = new HashMap<String, Deque<Reader>>();
+
+    /**
+     * Number of readers looked up in the component manager.
+     */
+    private long lookupCount;
+
+    /**
+     * Time spent in the component manager, in nanoseconds.
+     */
+    private long lookupTime;
+
+    /**
+     * Number of readers reused.
+     */
+    private long reuseCount;
+
+    /**
+     * @param componentManager is the component manager where the readers are looked up
+     * @param properties are the properties of the import
+     */
+    public ReaderPool(ComponentManager componentManager, XFFInputProperties properties)
+    {
+        this.componentManager = componentManager;
+        this.properties = properties;
+    }
+
+    /**
+     * Get a reader, reused if one is available or else looked up in the component manager.
+     *
+     * @param hint is the role hint of the {@link Reader} component
+     * @return a reader ready to be opened
+     * @throws FilterException if there is no reader for this hint
+     */
+    public Reader acquire(String hint) throws FilterException
+    {
+        Deque<Reader> readers = this.availableReaders.get(hint);
+        if (readers != null && !readers.isEmpty()) {
+            this.reuseCount++;
+            return readers.pop();
+        }
+
+        long start = System.nanoTime();
+        Reader reader;
+        try {
+            reader = this.componentManager.getInstance(Reader.class, hint);
+        } catch (ComponentLookupException e) {
+            String message =
+                String.format("Unable to find a component org.xwiki.filter.xff.input.Reader with hint '%s'.", hint);
+            throw new FilterException(message, e);
+        } finally {
+            this.lookupTime += System.nanoTime() - start;
+            this.lookupCount++;
+        }
+        reader.setProperties(this.properties);
+        return reader;
+    }
+
+    /**
+     * Give back a closed reader, to be reused for another element. Readers which are not reusable are dropped.
+     *
+     * @param hint is the role hint of the reader
+     * @param reader is the reader, already closed
+     */
+    public void release(String hint, Reader reader)
+    {
+        if (!reader.isReusable()) {
+            return;
+        }
+        reader.reset();
+        Deque<Reader> readers = this.availableReaders.get(hint);
+        if (readers == null) {
+            readers = new ArrayDeque<Reader>();
+            this.availableReaders.put(hint, readers);
+        }
+        readers.push(reader);
+    }
+
+    /**
+     * @return the number of readers looked up in the component manager
+     */
+    public long getLookupCount()
+    {
+        return this.lookupCount;
+    }
+
+    /**
+     * @return the time spent in the component manager, in nanoseconds
+     */
+    public long getLookupTime()
+    {
+        return this.lookupTime;
+    }
+
+    /**
+     * @return the number of readers reused instead of being looked up
+     */
+    public long getReuseCount()
+    {
+        return this.reuseCount;
+    }
+}
@@ -30,6 +30,7 @@ import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.filter.FilterEventParameters;
 import org.xwiki.filter.FilterException;
 import org.xwiki.filter.xff.input.AbstractReader;
+import org.xwiki.filter.xff.input.EntryPath;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.rest.model.jaxb.Wiki;
@@ -92,35 +93,44 @@ public class WikisReader extends AbstractReader
     @Override
     public void route(Path path, InputStream inputStream) throws FilterException
     {
-        String fileName = path.toString();
-        if (fileName.equals(org.xwiki.xff.core.model.Wiki.WIKI_FILENAME)) {
+        this.route(EntryPath.of(path), inputStream);
+    }
+
+    @Override
+    public void route(EntryPath path, InputStream inputStream) throws FilterException
+    {
+        if (path.getNameCount() == 1 && path.getName(0).equals(org.xwiki.xff.core.model.Wiki.WIKI_FILENAME)) {
             this.parseWiki(inputStream);
             this.start();
             return;
         } else {
             this.start();
         }
-        String hint = path.subpath(0, 1).toString();
-        String childId = path.subpath(1, 2).toString();
+        String hint = path.getName(0);
+        String childId = path.getName(1);
         // Get a new reader only if the child change
         if (!childId.equals(this.lastReaderId)) {
-            if (this.reader != null) {
-                this.reader.close();
-            }
+            this.closeReader();
             this.reader = this.getReader(hint);
             this.reader.open(childId, this.reference, this.filter, this.proxyFilter);
         }
-        Path childPath = path.subpath(2, path.getNameCount());
+        EntryPath childPath = path.subpath(2);
         this.reader.route(childPath, inputStream);
         this.lastReaderId = childId;
     }
 
+    @Override
+    public void reset()
+    {
+        super.reset();
+        this.reference = null;
+        this.xWiki = new Wiki();
+    }
+
     @Override
     public void close() throws FilterException
     {
-        if (this.reader != null) {
-            this.reader.close();
-        }
+        this.closeReader();
         this.end();
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.input;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.filter.FilterException;
+import org.xwiki.filter.xff.input.AbstractReader;
+import org.xwiki.filter.xff.input.ImportContext;
+import org.xwiki.filter.xff.input.ImportMetrics;
+import org.xwiki.filter.xff.input.Reader;
+import org.xwiki.filter.xff.input.XFFInputProperties;
+import org.xwiki.filter.xff.internal.PropertyDecoder;
+
+/**
+ * The state of an import shared by its readers: the {@link ReaderPool}, the metrics, the {@link PropertyDecoder} and
+ * the {@link AttachmentDeduplicator}, the last two being created when first needed.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class XFFImportContext implements ImportContext
+{
+    private final XFFInputProperties properties;
+
+    private final ReaderPool readerPool;
+
+    /**
+     * Metrics of the import, or null if they are not collected.
+     */
+    private final ImportMetrics metrics;
+
+    /**
+     * Decoder of the property files, shared by the readers to reuse its buffers.
+     */
+    private PropertyDecoder propertyDecoder;
+
+    /**
+     * Finder of the duplicate attachments, or null if they are not looked for.
+     */
+    private AttachmentDeduplicator attachmentDeduplicator;
+
+    /**
+     * @param componentManager is the component manager where the readers are looked up
+     * @param properties are the properties of the import
+     * @param metrics are the metrics of the import, or null to not collect them
+     */
+    public XFFImportContext(ComponentManager componentManager, XFFInputProperties properties,
+        ImportMetrics metrics)
+    {
+        this.properties = properties;
+        this.readerPool = new ReaderPool(componentManager, properties);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Reader acquireReader(String hint) throws FilterException
+    {
+        Reader reader = this.readerPool.acquire(hint);
+        if (reader instanceof AbstractReader) {
+            ((AbstractReader) reader).setImportContext(this);
+        }
+        return reader;
+    }
+
+    @Override
+    public void releaseReader(String hint, Reader reader)
+    {
+        this.readerPool.release(hint, reader);
+    }
+
+    @Override
+    public ImportMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
+    @Override
+    public String readProperty(Path path) throws IOException
+    {
+        if (this.propertyDecoder == null) {
+            this.propertyDecoder = new PropertyDecoder();
+        }
+        return this.propertyDecoder.decode(path);
+    }
+
+    @Override
+    public boolean isDeduplicatingAttachments()
+    {
+        return this.properties != null && this.properties.isDeduplicateAttachments();
+    }
+
+    @Override
+    public Object addAttachment(String hash, Object reference, long size)
+    {
+        AttachmentDeduplicator deduplicator = getAttachmentDeduplicator();
+        return deduplicator != null ? deduplicator.add(hash, reference, size) : null;
+    }
+
+    /**
+     * @return the readers of the import
+     */
+    public ReaderPool getReaderPool()
+    {
+        return this.readerPool;
+    }
+
+    /**
+     * @return the finder of the duplicate attachments of the import, or null if
+     *         {@link XFFInputProperties#isDeduplicateAttachments()} is not enabled
+     */
+    public AttachmentDeduplicator getAttachmentDeduplicator()
+    {
+        if (this.attachmentDeduplicator == null && isDeduplicatingAttachments()) {
+            this.attachmentDeduplicator = new AttachmentDeduplicator(this.properties.getDeduplicationCacheSize());
+        }
+        return this.attachmentDeduplicator;
+    }
+}
@@ -25,13 +25,18 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.filter.FilterException;
 import org.xwiki.filter.input.AbstractBeanInputFilterStream;
 import org.xwiki.filter.input.InputSource;
 import org.xwiki.filter.input.InputStreamInputSource;
+import org.xwiki.filter.xff.input.ImportMetrics;
+import org.xwiki.filter.xff.input.ImportMetricsListener;
 import org.xwiki.filter.xff.input.XFFInputProperties;
 import org.xwiki.filter.xff.internal.XFFFilterUtils;
 
@@ -47,6 +52,12 @@ public class XFFInputFilterStream extends AbstractBeanInputFilterStream<XFFInput
     @Inject
     private Provider<XFFReader> xffReaderProvider;
 
+    @Inject
+    private ComponentManager componentManager;
+
+    @Inject
+    private Logger logger;
+
     @Override
     public void close() throws IOException
     {
@@ -61,9 +72,41 @@ public class XFFInputFilterStream extends AbstractBeanInputFilterStream<XFFInput
         if (inputSource instanceof InputStreamInputSource) {
             XFFReader xffReader = this.xffReaderProvider.get();
             xffReader.setProperties(this.properties);
-            xffReader.read(filter, proxyFilter);
+            if (isMetered()) {
+                ImportMetrics metrics = new ImportMetrics();
+                xffReader.setMetrics(metrics);
+                try {
+                    xffReader.read(filter, MeteredFilter.wrap(proxyFilter, metrics));
+                } finally {
+                    metrics.finish();
+                    report(metrics);
+                }
+            } else {
+                xffReader.read(filter, proxyFilter);
+            }
         } else {
             throw new FilterException(String.format("Unsupported input source of type [%s]", inputSource.getClass()));
         }
     }
+
+    private boolean isMetered()
+    {
+        return this.properties.isMetrics() || this.componentManager.hasComponent(ImportMetricsListener.class);
+    }
+
+    /**
+     * Log the summary of the import and give its metrics to the listeners.
+     */
+    private void report(ImportMetrics metrics)
+    {
+        this.logger.info("XFF import: {}", metrics);
+        try {
+            for (ImportMetricsListener listener : this.componentManager
+                .<ImportMetricsListener>getInstanceList(ImportMetricsListener.class)) {
+                listener.onImportFinished(this.properties, metrics);
+            }
+        } catch (ComponentLookupException e) {
+            this.logger.warn("Unable to give the metrics of the import to the listeners: {}", e.getMessage());
+        }
+    }
 }
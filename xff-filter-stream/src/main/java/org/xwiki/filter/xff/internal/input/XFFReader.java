@@ -23,13 +23,29 @@ import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import javax.inject.Inject;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
@@ -40,10 +56,28 @@ import org.xwiki.filter.FilterException;
 import org.xwiki.filter.input.FileInputSource;
 import org.xwiki.filter.input.InputSource;
 import org.xwiki.filter.input.InputStreamInputSource;
+import org.xwiki.filter.xff.input.EntryPath;
+import org.xwiki.filter.xff.input.FileRegionInputStream;
+import org.xwiki.filter.xff.input.ImportCheckpointStore;
+import org.xwiki.filter.xff.input.ImportMetrics;
 import org.xwiki.filter.xff.input.Reader;
 import org.xwiki.filter.xff.input.XFFInputProperties;
+import org.xwiki.filter.xff.internal.DescriptorInputStream;
+import org.xwiki.filter.xff.internal.MeteredFileRegionInputStream;
+import org.xwiki.filter.xff.internal.MeteredInputStream;
+import org.xwiki.filter.xff.internal.PathInputStream;
+import org.xwiki.filter.xff.internal.SizedInputStream;
 import org.xwiki.filter.xff.internal.UncloseableZipInputStream;
+import org.xwiki.xff.core.EntryFilter;
+import org.xwiki.xff.core.PackageIndex;
+import org.xwiki.xff.core.PackageIndexReader;
 import org.xwiki.xff.core.XFFExplorer;
+import org.xwiki.xff.core.ZipArchiveIndex;
+import org.xwiki.xff.core.model.Attachment;
+import org.xwiki.xff.core.model.Page;
+import org.xwiki.xff.core.model.Space;
+import org.xwiki.xff.core.model.Wiki;
+import org.xwiki.xff.core.model.XFF;
 
 /**
  * @version $Id$
@@ -53,6 +87,14 @@ import org.xwiki.xff.core.XFFExplorer;
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
 public class XFFReader
 {
+    /**
+     * Separator of the names of the entries.
+     */
+    private static final String SEPARATOR = "/";
+
+    private static final String MISSING_CHECKPOINT =
+        "The checkpoint [%s] from which the import is resumed is not in the package.";
+
     /**
      * The component manager. We need it because we have to access components dynamically.
      */
@@ -70,6 +112,41 @@ public class XFFReader
      */
     private XFFInputProperties properties;
 
+    /**
+     * Reader of the current top level element (e.g. a wiki).
+     */
+    private Reader reader;
+
+    /**
+     * Hint of the current top level reader.
+     */
+    private String readerHint;
+
+    /**
+     * Id of the current top level element.
+     */
+    private String previousId;
+
+    /**
+     * What the readers of the current import share, e.g. the readers reused from one element to the other.
+     */
+    private XFFImportContext importContext;
+
+    /**
+     * Selection of the files to read, from the include and exclude patterns of the properties.
+     */
+    private EntryFilter entryFilter = EntryFilter.ALL;
+
+    /**
+     * Metrics of the import, or null if they are not collected.
+     */
+    private ImportMetrics metrics;
+
+    /**
+     * Checkpoints of the import, and skipping of the files when the import is resumed.
+     */
+    private ImportCheckpointer checkpointer;
+
     /**
      * Set the properties before launching the reader.
      * 
@@ -80,6 +157,17 @@ public class XFFReader
         this.properties = properties;
     }
 
+    /**
+     * Collect the metrics of the import while reading it.
+     *
+     * @param metrics are the metrics of the import, or null to not collect them
+     * @since 0.4.1
+     */
+    public void setMetrics(ImportMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
     /**
      * Test if a file is a zip. From http://www.java2s.com/Code/Java/File-Input-Output/
      * DeterminewhetherafileisaZIPFile.htm
@@ -114,115 +202,517 @@ public class XFFReader
      * 
      * @param filter is the input filter
      * @param proxyFilter is the filter into which you translate
+     * @throws FilterException when the package cannot be read or filtered
      */
-    public void read(Object filter, XFFInputFilter proxyFilter)
+    public void read(Object filter, XFFInputFilter proxyFilter) throws FilterException
     {
+        this.importContext = new XFFImportContext(this.componentManager, this.properties, this.metrics);
+        this.entryFilter = new EntryFilter(isReadingPages() ? getPagePatterns() : this.properties.getIncludes(),
+            this.properties.getExcludes());
+        this.checkpointer = new ImportCheckpointer(this.properties, getCheckpointStores());
         InputSource source = this.properties.getSource();
         if (source instanceof FileInputSource) {
             try {
                 Path path = ((FileInputSource) source).getFile().toPath();
-                if (isZip(path)) {
+                if (isZip(path) && isReadingPages()) {
+                    parseXFFPages(path, filter, proxyFilter);
+                } else if (isZip(path)) {
                     parseXFFFile(path, filter, proxyFilter);
                 } else if (Files.isDirectory(path)) {
                     parseXFFDir(path, filter, proxyFilter);
                 } else {
                     this.logger.error("Don't know how to parse this kind of XFF format");
                 }
-            } catch (FilterException e) {
-                this.logger.error("Fail to filter the file from input source", e);
             } catch (IOException e) {
-                this.logger.error("Fail to get file from input source.", e);
+                throw new FilterException("Fail to get file from input source.", e);
             }
         } else if (source instanceof InputStreamInputSource) {
             try {
                 InputStream inputStream = ((InputStreamInputSource) source).getInputStream();
                 parseXFFInputStream(inputStream, filter, proxyFilter);
-            } catch (FilterException e) {
-                this.logger.error("Fail to filter from input stream input source", e);
             } catch (IOException e) {
-                this.logger.error("Fail to get input stream input source.", e);
+                throw new FilterException("Fail to get input stream input source.", e);
             }
         } else {
             this.logger.error("Fail to read XFF file descriptor.");
         }
     }
 
-    private Reader updateReader(Reader reader, String hint, String id, String previousId, Object filter,
-        XFFInputFilter proxyFilter) throws FilterException
+    /**
+     * @return the stores to which the checkpoints of the import are given, empty if there are no checkpoints
+     */
+    private List<ImportCheckpointStore> getCheckpointStores()
     {
-        Reader newReader = reader;
-        if (!id.equals(previousId)) {
-            if (reader != null) {
-                reader.close();
-            }
+        if (this.properties.getCheckpointInterval() > 0
+            && this.componentManager.hasComponent(ImportCheckpointStore.class)) {
             try {
-                newReader = this.componentManager.getInstance(Reader.class, hint);
-                newReader.open(id, null, filter, proxyFilter);
+                return this.componentManager.<ImportCheckpointStore>getInstanceList(ImportCheckpointStore.class);
             } catch (ComponentLookupException e) {
-                String message = String.format("Incorrect hint '%s', cannot get the corresponding Reader.", hint);
-                throw new FilterException(message, e);
+                this.logger.warn("Unable to get the stores of the checkpoints of the import: {}", e.getMessage());
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private void updateReader(String hint, String id, Object filter, XFFInputFilter proxyFilter)
+        throws FilterException
+    {
+        if (!id.equals(this.previousId)) {
+            releaseReader();
+            this.reader = this.importContext.acquireReader(hint);
+            this.readerHint = hint;
+            this.reader.open(id, null, filter, proxyFilter);
+        }
+    }
+
+    /**
+     * Close the current top level reader and give it back to the pool.
+     */
+    private void releaseReader() throws FilterException
+    {
+        if (this.reader != null) {
+            Reader closedReader = this.reader;
+            this.reader = null;
+            closedReader.close();
+            this.importContext.releaseReader(this.readerHint, closedReader);
+        }
+    }
+
+    private boolean isReadingPages()
+    {
+        return this.properties.getPages() != null && !this.properties.getPages().isEmpty();
+    }
+
+    /**
+     * @return the paths of the pages to read, without separator at the end
+     */
+    private List<String> getPages()
+    {
+        List<String> pages = new ArrayList<String>();
+        for (String page : this.properties.getPages()) {
+            String trimmed = page.trim();
+            while (trimmed.endsWith(SEPARATOR)) {
+                trimmed = trimmed.substring(0, trimmed.length() - 1);
+            }
+            if (!trimmed.isEmpty()) {
+                pages.add(trimmed);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * When reading only some pages, the files read are the ones of the pages and the descriptors of their wikis and
+     * spaces.
+     */
+    private List<String> getPagePatterns()
+    {
+        List<String> patterns = new ArrayList<String>();
+        for (String page : getPages()) {
+            patterns.add(page + SEPARATOR + "**");
+            for (String ancestor : PackageIndex.getAncestors(page)) {
+                patterns.add(ancestor + SEPARATOR + "*.xml");
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Tell if a file has to be read, from its raw name so that the skipped files are neither parsed nor routed.
+     *
+     * @param name is the path of the file relative to the root of the package, with / as separator
+     * @return true if the file is part of the wiki to read, when only one wiki is read, and is selected by the
+     *         include and exclude patterns
+     */
+    private boolean isSelected(String name)
+    {
+        String wiki = this.properties.getWiki();
+        if (wiki != null && !(name.startsWith(Wiki.WIKI_HINT + '/' + wiki + '/'))) {
+            return false;
+        }
+        return this.entryFilter.accept(name);
+    }
+
+    /**
+     * Tell if a file is sent to the readers: it has to be selected, and to be after the checkpoint when the import is
+     * resumed. This is called once for each file, in the order in which the files are read.
+     *
+     * @param name is the path of the file relative to the root of the package, with / as separator
+     * @return true if the file is read
+     */
+    private boolean isRead(String name)
+    {
+        return isSelected(name) && !this.checkpointer.skip(name);
+    }
+
+    /**
+     * Send a file of the package, given by its path relative to the root of the package, to the reader in charge of
+     * it.
+     */
+    private void route(EntryPath path, InputStream inputStream, Object filter, XFFInputFilter proxyFilter)
+        throws FilterException
+    {
+        if (this.metrics != null) {
+            this.metrics.start(ImportMetrics.Stage.ROUTING, getEntity(path));
+        }
+        try {
+            String hint = path.getName(0);
+            String id = path.getName(1);
+            EntryPath subPath = path.subpath(2);
+            updateReader(hint, id, filter, proxyFilter);
+            this.reader.route(subPath, inputStream);
+            this.previousId = id;
+            this.checkpointer.routed(path);
+        } finally {
+            if (this.metrics != null) {
+                this.metrics.stop();
             }
         }
-        return newReader;
+    }
+
+    /**
+     * @return the kind of entity a file of the package belongs to, from its path
+     */
+    private static ImportMetrics.Entity getEntity(EntryPath path)
+    {
+        ImportMetrics.Entity entity = null;
+        for (int i = 0; i < path.getNameCount() - 1; i += 2) {
+            switch (path.getName(i)) {
+                case Wiki.WIKI_HINT:
+                    entity = ImportMetrics.Entity.WIKI;
+                    break;
+                case Space.SPACE_HINT:
+                    entity = ImportMetrics.Entity.SPACE;
+                    break;
+                case Page.PAGE_HINT:
+                    entity = ImportMetrics.Entity.PAGE;
+                    break;
+                case Attachment.ATTACHMENTS_HINT:
+                    return ImportMetrics.Entity.ATTACHMENT;
+                case org.xwiki.xff.core.model.Class.CLASS_HINT:
+                    return ImportMetrics.Entity.CLASS;
+                case org.xwiki.xff.core.model.Object.OBJECT_HINT:
+                    return ImportMetrics.Entity.OBJECT;
+                default:
+                    return entity;
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Count the reading of a file in the metrics, if they are collected.
+     */
+    private InputStream meter(InputStream inputStream)
+    {
+        if (this.metrics == null || inputStream instanceof DescriptorInputStream) {
+            return inputStream;
+        }
+        return new MeteredInputStream(inputStream, this.metrics);
+    }
+
+    /**
+     * Give an attachment stored as is in the archive, its reading being counted in the metrics if they are collected.
+     */
+    private FileRegionInputStream meter(FileChannel channel, long position, long size)
+    {
+        if (this.metrics == null) {
+            return new FileRegionInputStream(channel, position, size);
+        }
+        return new MeteredFileRegionInputStream(channel, position, size, this.metrics);
+    }
+
+    /**
+     * Go to the next entry of the archive, the inflation of the data skipped being counted in the metrics.
+     */
+    private ZipEntry nextEntry(ZipInputStream zis) throws IOException
+    {
+        if (this.metrics == null) {
+            return zis.getNextEntry();
+        }
+        this.metrics.start(ImportMetrics.Stage.READ, null);
+        try {
+            return zis.getNextEntry();
+        } finally {
+            this.metrics.stop();
+        }
+    }
+
+    private void closeReader() throws FilterException
+    {
+        releaseReader();
+        this.previousId = null;
+        if (this.checkpointer.isCheckpointMissing()) {
+            throw new FilterException(String.format(MISSING_CHECKPOINT, this.checkpointer.getCheckpoint()));
+        }
+        this.checkpointer.finish();
+        ReaderPool readerPool = this.importContext.getReaderPool();
+        this.logger.debug("Looked up {} readers in {} ms, reused {} readers.", readerPool.getLookupCount(),
+            TimeUnit.NANOSECONDS.toMillis(readerPool.getLookupTime()), readerPool.getReuseCount());
+        AttachmentDeduplicator deduplicator = this.importContext.getAttachmentDeduplicator();
+        if (deduplicator != null && deduplicator.getDuplicateCount() > 0) {
+            this.logger.info("Found {} attachments ({} bytes) with the same content as a previous attachment.",
+                deduplicator.getDuplicateCount(), deduplicator.getDuplicateSize());
+        }
     }
 
     private void parseXFFFile(Path path, Object filter, XFFInputFilter proxyFilter) throws IOException, FilterException
     {
         if (isZip(path)) {
-            InputStream inputStream = Files.newInputStream(path);
-            parseXFFInputStream(inputStream, filter, proxyFilter);
+            // When resuming, the files before the checkpoint are not even inflated.
+            if (this.properties.isRandomAccess() || this.checkpointer.isResuming()) {
+                parseXFFZipFile(path, filter, proxyFilter);
+            } else {
+                InputStream inputStream = Files.newInputStream(path);
+                parseXFFInputStream(inputStream, filter, proxyFilter);
+            }
         }
     }
 
+    /**
+     * Read the XFF file through the central directory of the zip. The entries are indexed first, and then read in
+     * the XFF order whatever the order of the archive; entries which are not part of the XFF structure are skipped
+     * without being inflated. The attachments stored as is are given as a {@link FileRegionInputStream}, so that the
+     * filter can copy them directly from the archive.
+     */
+    private void parseXFFZipFile(Path path, Object filter, XFFInputFilter proxyFilter)
+        throws IOException, FilterException
+    {
+        try (ZipFile zipFile = new ZipFile(path.toFile());
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Map<String, ZipArchiveIndex.Entry> storedEntries = null;
+            XFF xff = new XFF();
+            Map<Path, ZipEntry> entries = new HashMap<Path, ZipEntry>();
+            // The checkpoint is looked for before skipping anything.
+            boolean checkpointFound = false;
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                if (!entry.isDirectory() && isSelected(entry.getName())) {
+                    // The XFF model of xff-core, which orders the files, only knows java.nio.file.Path.
+                    Path entryPath = Paths.get(entry.getName());
+                    entries.put(entryPath, entry);
+                    xff.store(entryPath);
+                    if (this.checkpointer.isCheckpoint(entry.getName())) {
+                        checkpointFound = true;
+                    }
+                }
+            }
+            if (this.checkpointer.isResuming() && !checkpointFound) {
+                throw new FilterException(String.format(MISSING_CHECKPOINT, this.checkpointer.getCheckpoint()));
+            }
+            for (Path entryPath : xff.orderedPaths()) {
+                ZipEntry entry = entries.get(entryPath);
+                if (entry == null) {
+                    String message = String.format("The file [%s] is not an entry of the archive.", entryPath);
+                    throw new FilterException(message);
+                }
+                if (this.checkpointer.skip(entry.getName())) {
+                    continue;
+                }
+                EntryPath routedPath = EntryPath.parse(entry.getName());
+                if (entry.getMethod() == ZipEntry.STORED && isAttachment(routedPath)) {
+                    if (storedEntries == null) {
+                        storedEntries = ZipArchiveIndex.read(channel);
+                    }
+                    ZipArchiveIndex.Entry storedEntry = storedEntries.get(entry.getName());
+                    if (storedEntry != null) {
+                        long position = ZipArchiveIndex.getDataOffset(channel, storedEntry);
+                        route(routedPath, meter(channel, position, entry.getSize()), filter, proxyFilter);
+                        continue;
+                    }
+                }
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    route(routedPath, new SizedInputStream(meter(inputStream), entry.getSize()), filter,
+                        proxyFilter);
+                }
+            }
+            closeReader();
+        }
+    }
+
+    private static boolean isAttachment(EntryPath path)
+    {
+        int count = path.getNameCount();
+        return count >= 2 && Attachment.ATTACHMENTS_HINT.equals(path.getName(count - 2));
+    }
+
+    /**
+     * Read only some pages of a XFF file. When the package has an index, the entries of the pages and of their wikis
+     * and spaces are read directly from their position in the archive, otherwise the entries are found through the
+     * central directory.
+     */
+    private void parseXFFPages(Path path, Object filter, XFFInputFilter proxyFilter)
+        throws IOException, FilterException
+    {
+        List<PackageIndex.Range> ranges = null;
+        try (PackageIndexReader index = PackageIndexReader.open(PackageIndex.getIndexPath(path), path)) {
+            if (index != null) {
+                ranges = findRanges(index);
+            }
+        }
+        if (ranges == null) {
+            this.logger.debug("No index of the pages of [{}], reading them through the central directory.", path);
+            parseXFFZipFile(path, filter, proxyFilter);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (PackageIndex.Range range : ranges) {
+                channel.position(range.getOffset());
+                BoundedInputStream rangeStream =
+                    new BoundedInputStream(Channels.newInputStream(channel), range.getLength());
+                // The channel is closed once all the ranges are read.
+                rangeStream.setPropagateClose(false);
+                UncloseableZipInputStream zis = new UncloseableZipInputStream(new BufferedInputStream(rangeStream));
+                ZipEntry entry;
+                while ((entry = nextEntry(zis)) != null) {
+                    if (!entry.isDirectory() && isRead(entry.getName())) {
+                        route(EntryPath.parse(entry.getName()), new SizedInputStream(meter(zis), entry.getSize()),
+                            filter, proxyFilter);
+                    }
+                }
+                zis.close(true);
+            }
+        }
+        closeReader();
+    }
+
+    /**
+     * @return the ranges of the archive to read, in the order of the archive, or null if a page is not in the index
+     */
+    private List<PackageIndex.Range> findRanges(PackageIndexReader index) throws IOException
+    {
+        Map<Long, PackageIndex.Range> ranges = new TreeMap<Long, PackageIndex.Range>();
+        for (String page : getPages()) {
+            PackageIndex.Range pageRange = index.find(page);
+            if (pageRange == null) {
+                return null;
+            }
+            ranges.put(pageRange.getOffset(), pageRange);
+            for (String ancestor : PackageIndex.getAncestors(page)) {
+                PackageIndex.Range range = index.find(ancestor);
+                if (range != null) {
+                    ranges.put(range.getOffset(), range);
+                }
+            }
+        }
+        return new ArrayList<PackageIndex.Range>(ranges.values());
+    }
+
     private void parseXFFInputStream(InputStream inputStream, Object filter, XFFInputFilter proxyFilter)
         throws FilterException, IOException
     {
         UncloseableZipInputStream zis = new UncloseableZipInputStream(inputStream);
-        ZipEntry entry = null;
-        Reader reader = null;
-        String previousId = null;
-
-        while ((entry = zis.getNextEntry()) != null) {
-            if (!entry.isDirectory()) {
-                Path path = Paths.get(entry.getName());
-                String hint = path.subpath(0, 1).toString();
-                String id = path.subpath(1, 2).toString();
-                Path subPath = path.subpath(2, path.getNameCount());
-                reader = updateReader(reader, hint, id, previousId, filter, proxyFilter);
-                reader.route(subPath, zis);
-                previousId = id;
+        if (this.properties.getThreads() > 1) {
+            parseXFFInputStream(zis, filter, proxyFilter);
+        } else {
+            ZipEntry entry = null;
+            while ((entry = nextEntry(zis)) != null) {
+                if (!entry.isDirectory() && isRead(entry.getName())) {
+                    EntryPath path = EntryPath.parse(entry.getName());
+                    route(path, new SizedInputStream(meter(zis), entry.getSize()), filter, proxyFilter);
+                }
             }
-            zis.closeEntry();
-        }
-        if (reader != null) {
-            reader.close();
         }
+        closeReader();
         zis.close(true);
     }
 
+    /**
+     * Inflate the entries of the archive and parse the descriptors ahead of time on other threads, while routing them
+     * in the order of the archive.
+     */
+    private void parseXFFInputStream(UncloseableZipInputStream zis, Object filter, XFFInputFilter proxyFilter)
+        throws IOException, FilterException
+    {
+        Predicate<String> selection = new Predicate<String>()
+        {
+            @Override
+            public boolean test(String name)
+            {
+                return isRead(name);
+            }
+        };
+        try (ZipPrefetcher prefetcher = new ZipPrefetcher(zis, selection, this.properties.getThreads(),
+            this.properties.isStreamingDescriptors(), this.properties.getAttachmentMemoryThreshold())) {
+            ZipPrefetcher.PrefetchedEntry entry;
+            while ((entry = prefetcher.next()) != null) {
+                try (ZipPrefetcher.PrefetchedEntry routedEntry = entry) {
+                    InputStream inputStream = routedEntry.getInputStream();
+                    if (!(inputStream instanceof DescriptorInputStream)) {
+                        inputStream = new SizedInputStream(meter(inputStream), routedEntry.getSize());
+                    }
+                    route(EntryPath.parse(routedEntry.getName()), inputStream, filter, proxyFilter);
+                }
+            }
+        }
+    }
+
     private void parseXFFDir(Path rootPath, Object filter, XFFInputFilter proxyFilter) throws IOException,
         FilterException
     {
-        XFFExplorer packageExplorer = new XFFExplorer(rootPath);
-        Reader reader = null;
-        String previousId = null;
+        String checkpoint = this.checkpointer.getCheckpoint();
+        if (checkpoint != null && !Files.isDirectory(rootPath.resolve(checkpoint))) {
+            throw new FilterException(String.format(MISSING_CHECKPOINT, checkpoint));
+        }
+        Iterator<Path> paths = resume(new XFFExplorer(rootPath, this.entryFilter));
+        if (this.properties.getThreads() > 1) {
+            parseXFFDir(rootPath, paths, filter, proxyFilter);
+            return;
+        }
 
-        while (packageExplorer.hasNext()) {
-            Path path = packageExplorer.next();
-            String hint = path.subpath(0, 1).toString();
-            String id = path.subpath(1, 2).toString();
-            Path subPath = path.subpath(2, path.getNameCount());
-            reader = updateReader(reader, hint, id, previousId, filter, proxyFilter);
+        while (paths.hasNext()) {
+            Path path = paths.next();
             Path filePath = rootPath.resolve(path);
-            if (!Files.isDirectory(filePath)) {
+            EntryPath entryPath = EntryPath.of(path);
+            if (!Files.isDirectory(filePath) && isSelected(entryPath.toString())) {
                 InputStream inputStream = Files.newInputStream(filePath);
-                reader.route(subPath, inputStream);
+                route(entryPath, new PathInputStream(meter(inputStream), filePath, Files.size(filePath)), filter,
+                    proxyFilter);
                 inputStream.close();
             }
-            previousId = id;
         }
-        if (reader != null) {
-            reader.close();
+        closeReader();
+    }
+
+    /**
+     * When resuming, skip the files of the folder up to the checkpoint before they are read (possibly ahead of time).
+     */
+    private Iterator<Path> resume(XFFExplorer packageExplorer)
+    {
+        if (!this.checkpointer.isResuming()) {
+            return packageExplorer;
+        }
+        return packageExplorer.stream().filter(new Predicate<Path>()
+        {
+            @Override
+            public boolean test(Path path)
+            {
+                return isRead(EntryPath.of(path).toString());
+            }
+        }).iterator();
+    }
+
+    /**
+     * Read the files of the folder ahead of time on several threads, while routing them in the XFF order.
+     */
+    private void parseXFFDir(Path rootPath, Iterator<Path> paths, Object filter, XFFInputFilter proxyFilter)
+        throws IOException, FilterException
+    {
+        try (DirectoryPrefetcher prefetcher = new DirectoryPrefetcher(rootPath, paths,
+            this.properties.getThreads(), this.properties.isStreamingDescriptors(),
+            this.properties.getAttachmentMemoryThreshold())) {
+            while (prefetcher.hasNext()) {
+                DirectoryPrefetcher.PrefetchedFile file = prefetcher.next();
+                EntryPath path = EntryPath.of(file.getPath());
+                if (isSelected(path.toString())) {
+                    try (InputStream inputStream = file.getInputStream()) {
+                        route(path, meter(inputStream), filter, proxyFilter);
+                    }
+                }
+            }
         }
+        closeReader();
     }
 }
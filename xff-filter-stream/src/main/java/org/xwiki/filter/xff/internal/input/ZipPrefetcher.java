@@ -0,0 +1,384 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.xwiki.filter.xff.input.EntryPath;
+import org.xwiki.filter.xff.internal.DescriptorInputStream;
+
+/**
+ * Inflate and parse the entries of a XFF archive ahead of time, while they are routed in the order of the archive.
+ * The entries are inflated one after the other on a dedicated thread, in buffers reused from one entry to the other,
+ * and the descriptors are parsed on a pool of threads, so that a slow filter overlaps with the inflation and the
+ * parsing instead of waiting for them. The number of buffers bounds the number of entries read ahead and the memory
+ * used. Entries too big to be kept in a buffer (e.g. attachments) are given directly from the archive, the inflation
+ * of the next entries waiting for them to be read.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class ZipPrefetcher implements Closeable
+{
+    /**
+     * Number of entries read ahead by each thread.
+     */
+    private static final int WINDOW_PER_THREAD = 4;
+
+    private static final int MIN_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Marks the end of the archive in the window.
+     */
+    private static final Future<PrefetchedEntry> END = CompletableFuture.completedFuture(null);
+
+    /**
+     * The archive, only read by the inflating thread.
+     */
+    private final ZipInputStream zis;
+
+    /**
+     * Selection of the entries to read, the other ones being skipped. It's called on the inflating thread, in the
+     * order of the archive.
+     */
+    private final Predicate<String> selection;
+
+    /**
+     * True if the descriptors are parsed with {@link org.xwiki.filter.xff.internal.StAXDescriptorReader}.
+     */
+    private final boolean streamingDescriptors;
+
+    /**
+     * Entries bigger than this are given directly from the archive instead of being inflated in a buffer.
+     */
+    private final int maxBufferSize;
+
+    /**
+     * Buffers which are not used by an entry waiting to be routed.
+     */
+    private final BlockingQueue<byte[]> buffers;
+
+    /**
+     * Entries read ahead, in the order of the archive.
+     */
+    private final BlockingQueue<Future<PrefetchedEntry>> window;
+
+    /**
+     * Threads parsing the descriptors.
+     */
+    private final ExecutorService parsers;
+
+    /**
+     * Thread inflating the entries.
+     */
+    private final Thread inflater;
+
+    /**
+     * True once the end of the archive has been given back.
+     */
+    private boolean finished;
+
+    /**
+     * An entry of the archive, read ahead. It has to be closed once routed, so that its buffer can be reused.
+     */
+    public final class PrefetchedEntry implements Closeable
+    {
+        private final String name;
+
+        private final long size;
+
+        private final byte[] buffer;
+
+        private final Object descriptor;
+
+        private final InputStream inputStream;
+
+        private final CountDownLatch read = new CountDownLatch(1);
+
+        private PrefetchedEntry(String name, byte[] buffer, int length, Object descriptor)
+        {
+            this.name = name;
+            this.size = length;
+            this.buffer = buffer;
+            this.descriptor = descriptor;
+            this.inputStream = null;
+        }
+
+        private PrefetchedEntry(String name, long size, byte[] buffer, InputStream inputStream)
+        {
+            this.name = name;
+            this.size = size;
+            this.buffer = buffer;
+            this.descriptor = null;
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * @return the name of the entry
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * @return the size of the uncompressed data of the entry, or -1 if not known
+         */
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        /**
+         * @return the content of the entry, which is a {@link DescriptorInputStream} when the entry is a descriptor
+         *         already parsed
+         */
+        public InputStream getInputStream()
+        {
+            if (this.inputStream != null) {
+                return this.inputStream;
+            } else if (this.descriptor != null) {
+                return new DescriptorInputStream(this.buffer, (int) this.size, this.descriptor);
+            }
+            return new ByteArrayInputStream(this.buffer, 0, (int) this.size);
+        }
+
+        @Override
+        public void close()
+        {
+            if (this.read.getCount() > 0) {
+                this.read.countDown();
+                buffers.add(this.buffer);
+            }
+        }
+    }
+
+    /**
+     * @param zis is the archive, positioned before its first entry
+     * @param selection selects the entries to read, it's called on the inflating thread in the order of the archive
+     * @param threads is the number of threads inflating and parsing the entries, one of them inflating the entries
+     * @param streamingDescriptors true if the descriptors should be parsed with
+     *            {@link org.xwiki.filter.xff.internal.StAXDescriptorReader}
+     * @param maxBufferSize is the size of the biggest entry inflated in a buffer
+     */
+    public ZipPrefetcher(ZipInputStream zis, Predicate<String> selection, int threads, boolean streamingDescriptors,
+        int maxBufferSize)
+    {
+        this.zis = zis;
+        this.selection = selection;
+        this.streamingDescriptors = streamingDescriptors;
+        this.maxBufferSize = maxBufferSize;
+        int windowSize = threads * WINDOW_PER_THREAD;
+        this.buffers = new ArrayBlockingQueue<byte[]>(windowSize);
+        for (int i = 0; i < windowSize; i++) {
+            this.buffers.add(new byte[0]);
+        }
+        this.window = new ArrayBlockingQueue<Future<PrefetchedEntry>>(windowSize + 1);
+        this.parsers = Executors.newFixedThreadPool(Math.max(1, threads - 1));
+        this.inflater = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                inflate();
+            }
+        }, "XFF inflater");
+        this.inflater.setDaemon(true);
+        this.inflater.start();
+    }
+
+    private void inflate()
+    {
+        try {
+            try {
+                ZipEntry entry;
+                while ((entry = this.zis.getNextEntry()) != null) {
+                    if (!entry.isDirectory() && this.selection.test(entry.getName())) {
+                        prefetch(entry);
+                    }
+                }
+                this.window.put(END);
+            } catch (IOException | RuntimeException e) {
+                CompletableFuture<PrefetchedEntry> failure = new CompletableFuture<PrefetchedEntry>();
+                failure.completeExceptionally(e);
+                this.window.put(failure);
+            }
+        } catch (InterruptedException e) {
+            // The prefetcher has been closed.
+        }
+    }
+
+    private void prefetch(ZipEntry entry) throws IOException, InterruptedException
+    {
+        final String name = entry.getName();
+        long size = entry.getSize();
+        byte[] buffer = this.buffers.take();
+        if (size > this.maxBufferSize) {
+            prefetchDirectly(name, size, buffer, 0, -1);
+            return;
+        }
+        int length = 0;
+        if (size >= 0) {
+            if (buffer.length < size) {
+                buffer = new byte[(int) size];
+            }
+            length = readFully(buffer, (int) size);
+            if (length < size || this.zis.read() >= 0) {
+                // Reaching the end of the entry checks its CRC.
+                throw new ZipException(String.format("Invalid size of the entry [%s].", name));
+            }
+        } else {
+            int count = 0;
+            while (count >= 0) {
+                if (length == buffer.length) {
+                    int nextByte = this.zis.read();
+                    if (nextByte < 0) {
+                        break;
+                    } else if (buffer.length >= this.maxBufferSize) {
+                        prefetchDirectly(name, size, buffer, length, nextByte);
+                        return;
+                    }
+                    buffer = Arrays.copyOf(buffer, Math.min(Math.max(buffer.length * 2, MIN_BUFFER_SIZE),
+                        Math.max(this.maxBufferSize, length + 1)));
+                    buffer[length++] = (byte) nextByte;
+                }
+                count = this.zis.read(buffer, length, buffer.length - length);
+                length += Math.max(count, 0);
+            }
+        }
+
+        final byte[] content = buffer;
+        final int contentLength = length;
+        final EntryPath path = EntryPath.parse(name);
+        if (DirectoryPrefetcher.getDescriptorType(path) == null) {
+            this.window.put(CompletableFuture.completedFuture(new PrefetchedEntry(name, content, length, null)));
+        } else {
+            this.window.put(this.parsers.submit(new Callable<PrefetchedEntry>()
+            {
+                @Override
+                public PrefetchedEntry call()
+                {
+                    return new PrefetchedEntry(name, content, contentLength,
+                        DirectoryPrefetcher.parse(path, content, contentLength, streamingDescriptors));
+                }
+            }));
+        }
+    }
+
+    /**
+     * Give the rest of the entry directly from the archive, after the part already inflated in the buffer, and wait
+     * for it to be read before inflating the next entries.
+     */
+    private void prefetchDirectly(String name, long size, byte[] buffer, int length, int nextByte)
+        throws IOException, InterruptedException
+    {
+        PushbackInputStream rest = new PushbackInputStream(new CloseShieldInputStream(this.zis), 1);
+        if (nextByte >= 0) {
+            rest.unread(nextByte);
+        }
+        InputStream inputStream =
+            length > 0 ? new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), rest) : rest;
+        PrefetchedEntry prefetchedEntry = new PrefetchedEntry(name, size, buffer, inputStream);
+        this.window.put(CompletableFuture.completedFuture(prefetchedEntry));
+        prefetchedEntry.read.await();
+    }
+
+    private int readFully(byte[] buffer, int length) throws IOException
+    {
+        int offset = 0;
+        while (offset < length) {
+            int count = this.zis.read(buffer, offset, length - offset);
+            if (count < 0) {
+                break;
+            }
+            offset += count;
+        }
+        return offset;
+    }
+
+    /**
+     * Wait for the next entry in the order of the archive.
+     *
+     * @return the next entry, which has to be closed once routed, or null at the end of the archive
+     * @throws IOException if the entry cannot be inflated
+     */
+    public PrefetchedEntry next() throws IOException
+    {
+        if (this.finished) {
+            return null;
+        }
+        try {
+            PrefetchedEntry entry = this.window.take().get();
+            this.finished = entry == null;
+            return entry;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the XFF archive.");
+        } catch (ExecutionException e) {
+            this.finished = true;
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to read an entry of the XFF archive.", e.getCause());
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (!this.finished) {
+            this.inflater.interrupt();
+        }
+        boolean interrupted = false;
+        while (this.inflater.isAlive()) {
+            try {
+                this.inflater.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        this.parsers.shutdownNow();
+        this.window.clear();
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.output;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.inject.Named;
+import javax.xml.bind.JAXBException;
+
+import org.apache.commons.io.IOUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.InstantiationStrategy;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.filter.FilterEventParameters;
+import org.xwiki.filter.FilterException;
+import org.xwiki.filter.event.model.WikiDocumentFilter;
+import org.xwiki.filter.output.AbstractBeanOutputFilterStream;
+import org.xwiki.filter.output.OutputStreamOutputTarget;
+import org.xwiki.filter.output.OutputTarget;
+import org.xwiki.filter.xff.internal.JAXBContextRegistry;
+import org.xwiki.filter.xff.internal.XFFFilter;
+import org.xwiki.filter.xff.internal.XFFFilterUtils;
+import org.xwiki.filter.xff.output.XFFOutputProperties;
+import org.xwiki.rest.model.jaxb.Attribute;
+import org.xwiki.rest.model.jaxb.Page;
+import org.xwiki.rest.model.jaxb.Property;
+import org.xwiki.rest.model.jaxb.Space;
+import org.xwiki.rest.model.jaxb.Wiki;
+import org.xwiki.xff.core.model.Attachment;
+
+/**
+ * Write the wiki events in a XFF package, directly in the zip sent to the output target. The files are written as
+ * soon as the events arrive, in the XFF order: the descriptor of a wiki or a space before its content, the pages of a
+ * space before its sub-spaces, and in a page the descriptor, the attachments, the class and the objects sorted on
+ * "className/number". Only the class and the objects of the current page are kept in memory, to sort them, so that a
+ * whole wiki can be exported without buffering it.
+ * <p>
+ * A XFF package only contains the current version of the pages: the other revisions and locales of a document are
+ * skipped.
+ * 
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Component
+@Named(XFFFilterUtils.ROLEHINT)
+@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
+public class XFFOutputFilterStream extends AbstractBeanOutputFilterStream<XFFOutputProperties> implements XFFFilter
+{
+    private static final String SEPARATOR = "/";
+
+    private static final char REFERENCE_SEPARATOR = '.';
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The package being written, created with the first file.
+     */
+    private ZipOutputStream zipOutputStream;
+
+    /**
+     * Path of the folders of the current wiki and spaces, from the deepest one to the root one.
+     */
+    private final Deque<String> folders = new ArrayDeque<String>();
+
+    /**
+     * Names of the current spaces, from the deepest one to the root one.
+     */
+    private final Deque<String> spaces = new ArrayDeque<String>();
+
+    private String wiki;
+
+    /**
+     * Path of the folder of the current document, or null outside of a document.
+     */
+    private String documentFolder;
+
+    private String documentName;
+
+    /**
+     * True once the page descriptor of the current document has been written.
+     */
+    private boolean documentWritten;
+
+    /**
+     * True while receiving the events of a revision or a locale which is not exported.
+     */
+    private boolean skipping;
+
+    /**
+     * The class of the current document, written once the whole document has been received.
+     */
+    private org.xwiki.rest.model.jaxb.Class xClass;
+
+    private byte[] classXML;
+
+    private Property classProperty;
+
+    private org.xwiki.rest.model.jaxb.Object xObject;
+
+    private String objectFolder;
+
+    /**
+     * The objects of the current document, by their relative path which is also their XFF order.
+     */
+    private final Map<String, byte[]> objectXMLs = new TreeMap<String, byte[]>();
+
+    private ZipOutputStream getZipOutputStream() throws FilterException
+    {
+        if (this.zipOutputStream == null) {
+            OutputTarget target = this.properties.getTarget();
+            if (!(target instanceof OutputStreamOutputTarget)) {
+                String message = String.format("Unsupported output target of type [%s]", target.getClass());
+                throw new FilterException(message);
+            }
+            try {
+                this.zipOutputStream = new ZipOutputStream(
+                    new BufferedOutputStream(((OutputStreamOutputTarget) target).getOutputStream(), BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new FilterException("Unable to open the output target.", e);
+            }
+            this.zipOutputStream.setLevel(this.properties.getCompressionLevel());
+        }
+        return this.zipOutputStream;
+    }
+
+    private void writeEntry(String name, byte[] content) throws FilterException
+    {
+        ZipOutputStream zip = getZipOutputStream();
+        try {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(content);
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new FilterException(String.format("Unable to write '%s'.", name), e);
+        }
+    }
+
+    private static byte[] toXML(Object object) throws FilterException
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            JAXBContextRegistry.marshal(object, outputStream);
+        } catch (JAXBException e) {
+            String message = String.format("Unable to convert '%s' into XML.", object.getClass().getSimpleName());
+            throw new FilterException(message, e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Turn a name into a folder name: the separators which would create other folders are escaped, the descriptors
+     * keeping the real name.
+     */
+    private static String toFolderName(String name)
+    {
+        return name.replace("%", "%25").replace(SEPARATOR, "%2F").replace("\\", "%5C");
+    }
+
+    private String getFolder()
+    {
+        return this.folders.isEmpty() ? "" : this.folders.peek();
+    }
+
+    private String getSpaceReference()
+    {
+        StringBuilder reference = new StringBuilder();
+        for (Iterator<String> iterator = this.spaces.descendingIterator(); iterator.hasNext();) {
+            if (reference.length() > 0) {
+                reference.append(REFERENCE_SEPARATOR);
+            }
+            reference.append(iterator.next());
+        }
+        return reference.toString();
+    }
+
+    @Override
+    public void beginWikiFarm(FilterEventParameters parameters) throws FilterException
+    {
+    }
+
+    @Override
+    public void endWikiFarm(FilterEventParameters parameters) throws FilterException
+    {
+    }
+
+    @Override
+    public void beginWiki(String name, FilterEventParameters parameters) throws FilterException
+    {
+        String folder = getFolder() + org.xwiki.xff.core.model.Wiki.WIKI_HINT + SEPARATOR + toFolderName(name)
+            + SEPARATOR;
+        this.folders.push(folder);
+        this.wiki = name;
+
+        Wiki xWiki = new Wiki();
+        xWiki.setId(name);
+        xWiki.setName(name);
+        writeEntry(folder + org.xwiki.xff.core.model.Wiki.WIKI_FILENAME, toXML(xWiki));
+    }
+
+    @Override
+    public void endWiki(String name, FilterEventParameters parameters) throws FilterException
+    {
+        this.folders.pop();
+        this.wiki = null;
+    }
+
+    @Override
+    public void beginWikiSpace(String name, FilterEventParameters parameters) throws FilterException
+    {
+        String folder = getFolder() + org.xwiki.xff.core.model.Space.SPACE_HINT + SEPARATOR + toFolderName(name)
+            + SEPARATOR;
+        this.folders.push(folder);
+        this.spaces.push(name);
+
+        Space xSpace = new Space();
+        xSpace.setId(this.wiki != null ? this.wiki + ':' + getSpaceReference() : getSpaceReference());
+        xSpace.setWiki(this.wiki);
+        xSpace.setName(name);
+        writeEntry(folder + org.xwiki.xff.core.model.Space.SPACE_FILENAME, toXML(xSpace));
+    }
+
+    @Override
+    public void endWikiSpace(String name, FilterEventParameters parameters) throws FilterException
+    {
+        this.folders.pop();
+        this.spaces.pop();
+    }
+
+    @Override
+    public void beginWikiDocument(String name, FilterEventParameters parameters) throws FilterException
+    {
+        this.documentFolder = getFolder() + org.xwiki.xff.core.model.Page.PAGE_HINT + SEPARATOR + toFolderName(name)
+            + SEPARATOR;
+        this.documentName = name;
+        this.documentWritten = false;
+    }
+
+    @Override
+    public void endWikiDocument(String name, FilterEventParameters parameters) throws FilterException
+    {
+        this.documentFolder = null;
+        this.documentName = null;
+    }
+
+    @Override
+    public void beginWikiDocumentLocale(Locale locale, FilterEventParameters parameters) throws FilterException
+    {
+    }
+
+    @Override
+    public void endWikiDocumentLocale(Locale locale, FilterEventParameters parameters) throws FilterException
+    {
+    }
+
+    @Override
+    public void beginWikiDocumentRevision(String revision, FilterEventParameters parameters) throws FilterException
+    {
+        if (this.documentWritten) {
+            this.skipping = true;
+            return;
+        }
+        this.documentWritten = true;
+
+        Page xPage = new Page();
+        if (!toFolderName(this.documentName).equals(this.documentName)) {
+            xPage.setName(this.documentName);
+        }
+        xPage.setTitle(getString(parameters, WikiDocumentFilter.PARAMETER_TITLE));
+        xPage.setParent(getString(parameters, WikiDocumentFilter.PARAMETER_PARENT));
+        xPage.setContent(getString(parameters, WikiDocumentFilter.PARAMETER_CONTENT));
+        writeEntry(this.documentFolder + org.xwiki.xff.core.model.Page.PAGE_FILENAME, toXML(xPage));
+    }
+
+    private static String getString(FilterEventParameters parameters, String name)
+    {
+        Object value = parameters != null ? parameters.get(name) : null;
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    public void endWikiDocumentRevision(String revision, FilterEventParameters parameters) throws FilterException
+    {
+        if (this.skipping) {
+            this.skipping = false;
+            return;
+        }
+        if (this.classXML != null) {
+            writeEntry(this.documentFolder + org.xwiki.xff.core.model.Class.CLASS_HINT + SEPARATOR
+                + org.xwiki.xff.core.model.Class.CLASS_FILENAME, this.classXML);
+            this.classXML = null;
+        }
+        for (Map.Entry<String, byte[]> object : this.objectXMLs.entrySet()) {
+            writeEntry(this.documentFolder + object.getKey(), object.getValue());
+        }
+        this.objectXMLs.clear();
+    }
+
+    @Override
+    public void onWikiAttachment(String name, InputStream content, Long size, FilterEventParameters parameters)
+        throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        String entryName = this.documentFolder + Attachment.ATTACHMENTS_HINT + SEPARATOR + toFolderName(name);
+        ZipOutputStream zip = getZipOutputStream();
+        try {
+            zip.putNextEntry(new ZipEntry(entryName));
+            IOUtils.copyLarge(content, zip);
+            zip.closeEntry();
+        } catch (IOException e) {
+            throw new FilterException(String.format("Unable to write '%s'.", entryName), e);
+        }
+    }
+
+    @Override
+    public void beginWikiClass(FilterEventParameters parameters) throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        this.xClass = new org.xwiki.rest.model.jaxb.Class();
+        String reference =
+            this.spaces.isEmpty() ? this.documentName : getSpaceReference() + REFERENCE_SEPARATOR + this.documentName;
+        this.xClass.setId(reference);
+        this.xClass.setName(reference);
+    }
+
+    @Override
+    public void endWikiClass(FilterEventParameters parameters) throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        this.classXML = toXML(this.xClass);
+        this.xClass = null;
+    }
+
+    @Override
+    public void beginWikiClassProperty(String name, String type, FilterEventParameters parameters)
+        throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        this.classProperty = new Property();
+        this.classProperty.setName(name);
+        this.classProperty.setType(type);
+    }
+
+    @Override
+    public void endWikiClassProperty(String name, String type, FilterEventParameters parameters)
+        throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        this.xClass.getProperties().add(this.classProperty);
+        this.classProperty = null;
+    }
+
+    @Override
+    public void onWikiClassPropertyField(String name, String value, FilterEventParameters parameters)
+        throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        Attribute attribute = new Attribute();
+        attribute.setName(name);
+        attribute.setValue(value);
+        this.classProperty.getAttributes().add(attribute);
+    }
+
+    /**
+     * The name of an object is "className[number]".
+     */
+    @Override
+    public void beginWikiObject(String name, FilterEventParameters parameters) throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        String className = name;
+        String number = "0";
+        int index = name.lastIndexOf('[');
+        if (index > 0 && name.endsWith("]")) {
+            className = name.substring(0, index);
+            number = name.substring(index + 1, name.length() - 1);
+        }
+        this.xObject = new org.xwiki.rest.model.jaxb.Object();
+        this.xObject.setClassName(className);
+        this.objectFolder = org.xwiki.xff.core.model.Object.OBJECT_HINT + SEPARATOR + toFolderName(className)
+            + SEPARATOR + number + SEPARATOR;
+    }
+
+    @Override
+    public void endWikiObject(String name, FilterEventParameters parameters) throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        this.objectXMLs.put(this.objectFolder + org.xwiki.xff.core.model.Object.OBJECT_FILENAME,
+            toXML(this.xObject));
+        this.xObject = null;
+        this.objectFolder = null;
+    }
+
+    @Override
+    public void onWikiObjectProperty(String name, Object value, FilterEventParameters parameters)
+        throws FilterException
+    {
+        if (this.skipping) {
+            return;
+        }
+        Property property = new Property();
+        property.setName(name);
+        property.setValue(value != null ? value.toString() : null);
+        this.xObject.getProperties().add(property);
+    }
+
+    /**
+     * The package is finished only when all the wikis and spaces have been ended: when the export failed, the package
+     * is left without its central directory so that it's never taken for a complete package.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            if (this.folders.isEmpty()) {
+                getZipOutputStream().finish();
+                this.zipOutputStream.flush();
+            }
+        } catch (FilterException e) {
+            throw new IOException("Unable to write the end of the XFF package.", e);
+        } finally {
+            this.properties.getTarget().close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.internal.output;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.filter.output.AbstractBeanOutputFilterStreamFactory;
+import org.xwiki.filter.xff.internal.XFFFilter;
+import org.xwiki.filter.xff.internal.XFFFilterStreamType;
+import org.xwiki.filter.xff.internal.XFFFilterUtils;
+import org.xwiki.filter.xff.output.XFFOutputProperties;
+
+/**
+ * Write wiki events in a XFF package.
+ * 
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Component
+@Named(XFFFilterUtils.ROLEHINT)
+@Singleton
+public class XFFOutputFilterStreamFactory extends
+    AbstractBeanOutputFilterStreamFactory<XFFOutputProperties, XFFFilter>
+{
+    /**
+     * Default constructor.
+     */
+    public XFFOutputFilterStreamFactory()
+    {
+        super(XFFFilterStreamType.XWIKI_XFF_10);
+
+        setName("XFF output stream");
+        setDescription("Writes wiki events into a XFF package.");
+    }
+}
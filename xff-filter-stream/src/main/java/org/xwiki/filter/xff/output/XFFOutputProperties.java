@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.filter.xff.output;
+
+import java.util.zip.Deflater;
+
+import org.xwiki.filter.xml.output.XMLOutputProperties;
+import org.xwiki.properties.annotation.PropertyDescription;
+import org.xwiki.properties.annotation.PropertyName;
+import org.xwiki.stability.Unstable;
+
+/**
+ * XFF output properties.
+ * 
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Unstable
+public class XFFOutputProperties extends XMLOutputProperties
+{
+    /**
+     * @see #getCompressionLevel()
+     */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * @return the compression level of the files of the package, from 0 (stored) to 9 (best compression) or -1 for
+     *         the default level
+     */
+    @PropertyName("Compression level")
+    @PropertyDescription("Compression level of the files of the package, from 0 (no compression) to 9 (best "
+        + "compression), -1 for the default level")
+    public int getCompressionLevel()
+    {
+        return this.compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel is the compression level of the files of the package
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        this.compressionLevel = compressionLevel;
+    }
+}
@@ -19,17 +19,29 @@
  */
 package org.xwiki.filter.xff.test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
 
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
 import org.xwiki.filter.test.integration.FilterTestSuite;
 import org.xwiki.filter.test.integration.FilterTestSuite.Scope;
 import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.xff.core.PackageIndex;
 import org.xwiki.xff.core.XFFZipper;
 
 /**
@@ -53,6 +65,11 @@ public class XFFIntegrationTest
         Path xffPath = Paths.get(outPath.toString(), "test-1.0.xff");
         XFFZipper xffPackageZipper = new XFFZipper(xffInPath);
         xffPackageZipper.xff(xffPath);
+        reverseEntries(xffPath, Paths.get(outPath.toString(), "test-1.0-reversed.xff"));
+        Path indexedPath = Paths.get(outPath.toString(), "test-1.0-indexed.xff");
+        XFFZipper indexedZipper = new XFFZipper(xffInPath);
+        indexedZipper.setIndex(PackageIndex.getIndexPath(indexedPath));
+        indexedZipper.xff(indexedPath);
 
         Path xffDirSrc = Paths.get("target/test-classes/packages/xff");
         Path xffDirDst = Paths.get(outPath.toString() + "/xffdir");
@@ -62,4 +79,25 @@ public class XFFIntegrationTest
 
         System.setProperty("extension.repository", outPath.toAbsolutePath().toString());
     }
+
+    /**
+     * Copy a zip, writing its entries in the reverse order.
+     */
+    private static void reverseEntries(Path fromPath, Path toPath) throws IOException
+    {
+        try (ZipFile zipFile = new ZipFile(fromPath.toFile());
+            OutputStream outputStream = Files.newOutputStream(toPath);
+            ZipOutputStream zos = new ZipOutputStream(outputStream)) {
+            List<? extends ZipEntry> entries = Collections.list(zipFile.entries());
+            List<ZipEntry> reversed = new ArrayList<ZipEntry>(entries);
+            Collections.reverse(reversed);
+            for (ZipEntry entry : reversed) {
+                zos.putNextEntry(new ZipEntry(entry.getName()));
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    IOUtils.copy(inputStream, zos);
+                }
+                zos.closeEntry();
+            }
+        }
+    }
 }
@@ -19,16 +19,63 @@
  */
 package org.xwiki.filter.xff.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.xwiki.filter.FilterEventParameters;
 import org.xwiki.filter.FilterException;
+import org.xwiki.filter.event.model.WikiDocumentFilter;
+import org.xwiki.filter.output.DefaultOutputStreamOutputTarget;
+import org.xwiki.filter.xff.input.EntryPath;
+import org.xwiki.filter.xff.input.FileRegionInputStream;
+import org.xwiki.filter.xff.input.ImportCheckpointStore;
+import org.xwiki.filter.xff.input.ImportMetrics;
 import org.xwiki.filter.xff.input.Reader;
+import org.xwiki.filter.xff.input.XFFInputProperties;
+import org.xwiki.filter.xff.internal.DescriptorInputStream;
+import org.xwiki.filter.xff.internal.JAXBContextRegistry;
+import org.xwiki.filter.xff.internal.MeteredFileRegionInputStream;
+import org.xwiki.filter.xff.internal.PropertyDecoder;
+import org.xwiki.filter.xff.internal.input.AttachmentDeduplicator;
+import org.xwiki.filter.xff.internal.input.ImportCheckpointer;
+import org.xwiki.filter.xff.internal.input.MeteredFilter;
+import org.xwiki.filter.xff.internal.input.ReaderPool;
+import org.xwiki.filter.xff.internal.input.XFFInputFilter;
+import org.xwiki.filter.xff.internal.input.ZipPrefetcher;
+import org.xwiki.filter.xff.internal.output.XFFOutputFilterStream;
+import org.xwiki.filter.xff.output.XFFOutputProperties;
 import org.xwiki.filter.xff.test.internal.input.TestReader;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.rest.model.jaxb.Page;
 import org.xwiki.rest.model.jaxb.Wiki;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
@@ -54,6 +101,337 @@ public class XFFUnitTest
         assertNull(this.testReader.publicUnmarshal(inputStream, Wiki.class));
     }
 
+    @Test
+    public void unmarshalWithSharedContext() throws Exception
+    {
+        String fileName = "packages/xff/wikis/xwiki/wiki.xml";
+        for (int i = 0; i < 2; i++) {
+            InputStream inputStream = getClass().getClassLoader().getResourceAsStream(fileName);
+            Wiki wiki = (Wiki) this.testReader.publicUnmarshal(inputStream, Wiki.class);
+            assertEquals("xwiki", wiki.getName());
+        }
+        assertSame(JAXBContextRegistry.getContext(Wiki.class), JAXBContextRegistry.getContext(Wiki.class));
+    }
+
+    @Test
+    public void reuseReadersFromPool() throws Exception
+    {
+        ReaderPool readerPool = new ReaderPool(this.mocker, new XFFInputProperties());
+        Reader reader = readerPool.acquire("test");
+        readerPool.release("test", reader);
+        assertSame(reader, readerPool.acquire("test"));
+        assertNotSame(reader, readerPool.acquire("test"));
+        assertEquals(2, readerPool.getLookupCount());
+        assertEquals(1, readerPool.getReuseCount());
+    }
+
+    @Test
+    public void dropReadersWhichAreNotReusable() throws Exception
+    {
+        ReaderPool readerPool = new ReaderPool(this.mocker, new XFFInputProperties());
+        Reader reader = new Reader()
+        {
+            @Override
+            public void open(String id, EntityReference parentReference, Object filter, XFFInputFilter proxyFilter)
+            {
+            }
+
+            @Override
+            public void route(Path path, InputStream inputStream)
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        readerPool.release("test", reader);
+        assertNotSame(reader, readerPool.acquire("test"));
+        assertEquals(0, readerPool.getReuseCount());
+    }
+
+    @Test
+    public void splitEntryPath()
+    {
+        EntryPath path = EntryPath.parse("wikis/xwiki/spaces/Space/pages/Page/objects/XWiki.Class/0/object.xml");
+        assertEquals(10, path.getNameCount());
+        assertEquals("wikis", path.getName(0));
+        assertEquals("object.xml", path.getFileName());
+        EntryPath pagePath = path.subpath(6);
+        assertEquals("objects", pagePath.getName(0));
+        assertEquals("XWiki.Class/0", pagePath.join(1, 3));
+        assertEquals("objects/XWiki.Class/0/object.xml", pagePath.toString());
+        assertEquals(Paths.get("objects", "XWiki.Class", "0", "object.xml"), pagePath.toPath());
+        assertEquals(pagePath.toString(), EntryPath.of(pagePath.toPath()).toString());
+    }
+
+    @Test
+    public void writePackageInXFFOrder() throws Exception
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XFFOutputProperties properties = new XFFOutputProperties();
+        properties.setTarget(new DefaultOutputStreamOutputTarget(outputStream));
+        XFFOutputFilterStream output = new XFFOutputFilterStream();
+        output.setProperties(properties);
+
+        FilterEventParameters empty = FilterEventParameters.EMPTY;
+        FilterEventParameters revision = new FilterEventParameters();
+        revision.put(WikiDocumentFilter.PARAMETER_TITLE, "Title");
+        revision.put(WikiDocumentFilter.PARAMETER_CONTENT, "Content");
+        output.beginWiki("xwiki", empty);
+        output.beginWikiSpace("Space", empty);
+        output.beginWikiDocument("Page", empty);
+        output.beginWikiDocumentLocale(Locale.ROOT, empty);
+        output.beginWikiDocumentRevision("1.1", revision);
+        output.beginWikiObject("XWiki.Tag[2]", empty);
+        output.onWikiObjectProperty("tags", "a", empty);
+        output.endWikiObject("XWiki.Tag[2]", empty);
+        output.beginWikiObject("XWiki.Tag[10]", empty);
+        output.endWikiObject("XWiki.Tag[10]", empty);
+        output.beginWikiClass(empty);
+        output.beginWikiClassProperty("answer", "Number", empty);
+        output.onWikiClassPropertyField("numberType", "integer", empty);
+        output.endWikiClassProperty("answer", "Number", empty);
+        output.endWikiClass(empty);
+        output.onWikiAttachment("logo.png", new ByteArrayInputStream(new byte[] {1, 2, 3}), 3L, empty);
+        output.endWikiDocumentRevision("1.1", revision);
+        output.beginWikiDocumentRevision("2.1", revision);
+        output.onWikiAttachment("old.png", new ByteArrayInputStream(new byte[] {4}), 1L, empty);
+        output.endWikiDocumentRevision("2.1", revision);
+        output.endWikiDocumentLocale(Locale.ROOT, empty);
+        output.endWikiDocument("Page", empty);
+        output.beginWikiSpace("SubSpace", empty);
+        output.endWikiSpace("SubSpace", empty);
+        output.endWikiSpace("Space", empty);
+        output.endWiki("xwiki", empty);
+        output.close();
+
+        List<String> names = new ArrayList<String>();
+        Page page = null;
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+                if (entry.getName().endsWith("page.xml")) {
+                    page = (Page) this.testReader.publicUnmarshal(
+                        new ByteArrayInputStream(IOUtils.toByteArray(zip)), Page.class);
+                }
+            }
+        }
+        String pageFolder = "wikis/xwiki/spaces/Space/pages/Page/";
+        assertEquals(Arrays.asList("wikis/xwiki/wiki.xml", "wikis/xwiki/spaces/Space/space.xml",
+            pageFolder + "page.xml", pageFolder + "attachments/logo.png", pageFolder + "classes/class.xml",
+            pageFolder + "objects/XWiki.Tag/10/object.xml", pageFolder + "objects/XWiki.Tag/2/object.xml",
+            "wikis/xwiki/spaces/Space/spaces/SubSpace/space.xml"), names);
+        assertEquals("Title", page.getTitle());
+        assertEquals("Content", page.getContent());
+    }
+
+    @Test
+    public void measureNestedStages() throws Exception
+    {
+        ImportMetrics metrics = new ImportMetrics();
+        metrics.start(ImportMetrics.Stage.ROUTING, ImportMetrics.Entity.PAGE);
+        metrics.start(ImportMetrics.Stage.READ, null);
+        metrics.addBytes(10);
+        Thread.sleep(5);
+        metrics.stop();
+        metrics.stop();
+        metrics.finish();
+
+        assertEquals(10, metrics.getBytes(ImportMetrics.Entity.PAGE));
+        assertEquals(10, metrics.getBytes());
+        assertTrue(metrics.getTime(ImportMetrics.Stage.READ, ImportMetrics.Entity.PAGE) >= 5000000);
+        assertEquals(0, metrics.getTime(ImportMetrics.Stage.READ, ImportMetrics.Entity.SPACE));
+        assertTrue(metrics.getTime(ImportMetrics.Stage.ROUTING) + metrics.getTime(ImportMetrics.Stage.READ) <= metrics
+            .getDuration());
+    }
+
+    @Test
+    public void countFilterEvents() throws Exception
+    {
+        ImportMetrics metrics = new ImportMetrics();
+        XFFInputFilter filter = mock(XFFInputFilter.class);
+        XFFInputFilter meteredFilter = MeteredFilter.wrap(filter, metrics);
+        FilterEventParameters empty = FilterEventParameters.EMPTY;
+        meteredFilter.beginWikiSpace("Space", empty);
+        meteredFilter.beginWikiDocument("Page", empty);
+        meteredFilter.beginWikiDocument("Other", empty);
+        meteredFilter.endWikiDocument("Other", empty);
+        metrics.finish();
+
+        verify(filter).beginWikiDocument("Other", empty);
+        assertEquals(1, metrics.getCount(ImportMetrics.Entity.SPACE));
+        assertEquals(2, metrics.getCount(ImportMetrics.Entity.PAGE));
+        assertEquals(0, metrics.getCount(ImportMetrics.Entity.WIKI));
+        assertTrue(metrics.toString().startsWith("Read 0 wikis, 1 space, 2 pages,"));
+    }
+
+    @Test
+    public void decodeProperties() throws Exception
+    {
+        String content = "Caf\u00e9 \u4e2d\u6587 \ud83d\ude00";
+        Path file = createTempFile(content);
+        assertEquals(content, new PropertyDecoder().decode(file));
+        PropertyDecoder mappingDecoder = new PropertyDecoder(0);
+        assertEquals(content, mappingDecoder.decode(file));
+        assertEquals("short", mappingDecoder.decode(createTempFile("short")));
+    }
+
+    private Path createTempFile(String content) throws Exception
+    {
+        Path file = Files.createTempFile("xff-property-", ".xwiki21");
+        // Mapped files cannot be deleted on some systems until they are unmapped.
+        file.toFile().deleteOnExit();
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readFileRegion() throws Exception
+    {
+        Path archive = createTempFile("headerATTACHMENTtrailer");
+        Path target = createTempFile("");
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            FileRegionInputStream region = new FileRegionInputStream(channel, 6, 10);
+            assertEquals("ATTACHMENT", IOUtils.toString(region, StandardCharsets.UTF_8));
+            assertEquals(-1, region.read());
+
+            region = new FileRegionInputStream(channel, 6, 10);
+            assertEquals('A', region.read());
+            assertEquals(3, region.skip(3));
+            try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                assertEquals(6, region.transferTo(targetChannel));
+            }
+        }
+        assertEquals("CHMENT", new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void meterFileRegion() throws Exception
+    {
+        Path archive = createTempFile("headerATTACHMENTtrailer");
+        Path target = createTempFile("");
+        ImportMetrics metrics = new ImportMetrics();
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            FileRegionInputStream region = new MeteredFileRegionInputStream(channel, 6, 10, metrics);
+            assertEquals('A', region.read());
+            try (FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                assertEquals(9, region.transferTo(targetChannel));
+            }
+        }
+        assertEquals(10, metrics.getBytes());
+    }
+
+    @Test
+    public void findDuplicateAttachments()
+    {
+        AttachmentDeduplicator deduplicator = new AttachmentDeduplicator(2);
+        assertNull(deduplicator.add("a", "first", 10));
+        assertEquals("first", deduplicator.add("a", "second", 10));
+        assertNull(deduplicator.add("b", "third", 20));
+        assertNull(deduplicator.add("c", "fourth", 30));
+        // Only the last attachments are remembered.
+        assertNull(deduplicator.add("a", "fifth", 10));
+        assertEquals("fourth", deduplicator.add("c", "sixth", 30));
+        assertEquals(2, deduplicator.getDuplicateCount());
+        assertEquals(40, deduplicator.getDuplicateSize());
+    }
+
+    @Test
+    public void checkpointReadPages()
+    {
+        XFFInputProperties properties = new XFFInputProperties();
+        properties.setCheckpointInterval(2);
+        ImportCheckpointStore store = mock(ImportCheckpointStore.class);
+        ImportCheckpointer checkpointer = new ImportCheckpointer(properties, Arrays.asList(store));
+        String space = "wikis/xwiki/spaces/Space/";
+        checkpointer.routed(EntryPath.parse(space + "space.xml"));
+        checkpointer.routed(EntryPath.parse(space + "pages/A/page.xml"));
+        checkpointer.routed(EntryPath.parse(space + "pages/A/attachments/logo.png"));
+        checkpointer.routed(EntryPath.parse(space + "pages/B/page.xml"));
+        // The descriptor of the space doesn't close the page.
+        checkpointer.routed(EntryPath.parse(space + "space.xml"));
+        verify(store, never()).saveCheckpoint(properties, space + "pages/A");
+        checkpointer.routed(EntryPath.parse(space + "spaces/SubSpace/space.xml"));
+        verify(store).saveCheckpoint(properties, space + "pages/B");
+        checkpointer.routed(EntryPath.parse(space + "spaces/SubSpace/pages/C/page.xml"));
+        checkpointer.finish();
+        verify(store).onImportFinished(properties);
+        verify(store, never()).saveCheckpoint(properties, space + "spaces/SubSpace/pages/C");
+    }
+
+    @Test
+    public void skipFilesUpToCheckpoint()
+    {
+        XFFInputProperties properties = new XFFInputProperties();
+        String space = "wikis/xwiki/spaces/Space/";
+        properties.setResumeFrom(space + "pages/B/");
+        ImportCheckpointer checkpointer = new ImportCheckpointer(properties, new ArrayList<ImportCheckpointStore>());
+        assertTrue(checkpointer.isCheckpoint(space + "pages/B/page.xml"));
+        assertFalse(checkpointer.isCheckpoint(space + "pages/BB/page.xml"));
+        assertTrue(checkpointer.skip("wikis/templatewiki/wiki.xml"));
+        assertFalse(checkpointer.skip("wikis/xwiki/wiki.xml"));
+        assertTrue(checkpointer.skip("wikis/xwiki/spaces/Other/space.xml"));
+        assertFalse(checkpointer.skip(space + "space.xml"));
+        assertTrue(checkpointer.skip(space + "pages/A/page.xml"));
+        assertTrue(checkpointer.isCheckpointMissing());
+        assertTrue(checkpointer.skip(space + "pages/B/page.xml"));
+        assertTrue(checkpointer.skip(space + "pages/B/properties/content.xwiki21"));
+        assertTrue(checkpointer.isResuming());
+        assertFalse(checkpointer.isCheckpointMissing());
+        assertFalse(checkpointer.skip(space + "pages/C/page.xml"));
+        assertFalse(checkpointer.isResuming());
+        assertFalse(checkpointer.skip("wikis/xwiki/spaces/Other/space.xml"));
+    }
+
+    @Test
+    public void prefetchZipEntries() throws Exception
+    {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] attachment = new byte[5000];
+        Arrays.fill(attachment, (byte) 'a');
+        String pageFolder = "wikis/xwiki/spaces/Space/pages/Page/";
+        try (InputStream wiki = getClass().getClassLoader().getResourceAsStream("packages/xff/wikis/xwiki/wiki.xml");
+            ZipOutputStream zip = new ZipOutputStream(outputStream)) {
+            zip.putNextEntry(new ZipEntry("wikis/xwiki/wiki.xml"));
+            IOUtils.copy(wiki, zip);
+            zip.putNextEntry(new ZipEntry(pageFolder + "attachments/skipped.txt"));
+            zip.write(attachment);
+            zip.putNextEntry(new ZipEntry(pageFolder + "attachments/big.txt"));
+            zip.write(attachment);
+            zip.putNextEntry(new ZipEntry(pageFolder + "properties/content.xwiki21"));
+            zip.write("content".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Predicate<String> selection = new Predicate<String>()
+        {
+            @Override
+            public boolean test(String name)
+            {
+                return !name.endsWith("skipped.txt");
+            }
+        };
+        ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        try (ZipPrefetcher prefetcher = new ZipPrefetcher(zis, selection, 2, false, 1024)) {
+            ZipPrefetcher.PrefetchedEntry entry = prefetcher.next();
+            assertEquals("wikis/xwiki/wiki.xml", entry.getName());
+            assertEquals("xwiki", ((Wiki) ((DescriptorInputStream) entry.getInputStream()).getDescriptor()).getName());
+            entry.close();
+            // The size of the entries is not known in advance, the big ones are given directly from the archive.
+            entry = prefetcher.next();
+            assertEquals(pageFolder + "attachments/big.txt", entry.getName());
+            assertEquals(-1, entry.getSize());
+            assertTrue(Arrays.equals(attachment, IOUtils.toByteArray(entry.getInputStream())));
+            entry.close();
+            entry = prefetcher.next();
+            assertEquals("content", IOUtils.toString(entry.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(7, entry.getSize());
+            entry.close();
+            assertNull(prefetcher.next());
+        }
+    }
+
     @Test(expected = FilterException.class)
     public void wrongHintComponent() throws FilterException
     {
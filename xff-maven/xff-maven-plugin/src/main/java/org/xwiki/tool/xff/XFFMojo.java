@@ -21,9 +21,15 @@ package org.xwiki.tool.xff;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.xwiki.xff.core.PackageIndex;
 import org.xwiki.xff.core.XFFZipper;
 
 /**
@@ -35,6 +41,46 @@ import org.xwiki.xff.core.XFFZipper;
 @Mojo(name = "xff")
 public class XFFMojo extends AbstractXFFMojo
 {
+    /**
+     * Number of threads compressing the files of the package, 0 to use all the available processors.
+     */
+    @Parameter(property = "xff.threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * Compression level of the files of the package, from 0 to 9, -1 for the default level.
+     */
+    @Parameter(property = "xff.compressionLevel", defaultValue = "-1")
+    private int compressionLevel;
+
+    /**
+     * Extensions of the attachments stored without compression because they are already compressed. When not set,
+     * the usual image, archive and media formats are stored.
+     */
+    @Parameter(property = "xff.storedExtensions")
+    private List<String> storedExtensions;
+
+    /**
+     * Package only the files which have changed since the last build, the other ones being copied from the previous
+     * package.
+     */
+    @Parameter(property = "xff.incremental", defaultValue = "false")
+    private boolean incremental;
+
+    /**
+     * Write an index of the wikis, spaces and pages next to the package, to read a single page without going through
+     * the whole package.
+     */
+    @Parameter(property = "xff.index", defaultValue = "false")
+    private boolean index;
+
+    /**
+     * Modification time of the files in the package, to get reproducible builds: either a number of seconds since the
+     * epoch or an ISO-8601 date. When not set, the modification time of the files is used.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+
     @Override
     public void execute() throws MojoExecutionException
     {
@@ -54,8 +100,49 @@ public class XFFMojo extends AbstractXFFMojo
 
         Path xffFile = Paths.get(this.project.getBuild().getDirectory(), this.project.getArtifactId() + ".xff");
         XFFZipper xffZipper = new XFFZipper(sourceDir);
+        if (this.threads > 0) {
+            xffZipper.setThreads(this.threads);
+        }
+        xffZipper.setCompressionLevel(this.compressionLevel);
+        if (this.storedExtensions != null) {
+            xffZipper.setStoredExtensions(this.storedExtensions);
+        }
+        xffZipper.setTimestamp(getTimestamp());
+        if (this.incremental) {
+            xffZipper.setManifest(Paths.get(this.project.getBuild().getDirectory(),
+                this.project.getArtifactId() + ".xff.manifest"));
+        }
+        if (this.index) {
+            xffZipper.setIndex(PackageIndex.getIndexPath(xffFile));
+        }
         xffZipper.xff(xffFile);
+        getLog().info(String.format("Packaged %d files (%d bytes) into %s (%d bytes) in %d ms (%d bytes/s).",
+            xffZipper.getEntryCount(), xffZipper.getSize(), xffFile.getFileName(), xffZipper.getCompressedSize(),
+            xffZipper.getDuration(), xffZipper.getThroughput()));
+        if (this.incremental) {
+            getLog().info(String.format("Reused %d unchanged files from the previous package.",
+                xffZipper.getReusedCount()));
+        }
 
         this.project.getArtifact().setFile(xffFile.toFile());
     }
+
+    /**
+     * Parse the output timestamp the same way as the Maven archivers: a single character disables it.
+     */
+    private long getTimestamp() throws MojoExecutionException
+    {
+        if (this.outputTimestamp == null || this.outputTimestamp.length() < 2) {
+            return -1;
+        }
+        try {
+            if (this.outputTimestamp.chars().allMatch(Character::isDigit)) {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(this.outputTimestamp));
+            }
+            return OffsetDateTime.parse(this.outputTimestamp).toInstant().toEpochMilli();
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new MojoExecutionException(String.format("Invalid output timestamp [%s].", this.outputTimestamp),
+                e);
+        }
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.internal.resources.xff;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rest.XWikiRestComponent;
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.rest.resources.xff.XFFJobResource;
+import org.xwiki.rest.resources.xff.XFFJobStatus;
+
+/**
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Component
+@Named("org.xwiki.rest.internal.resources.xff.DefaultXFFJobResource")
+@Singleton
+public class DefaultXFFJobResource implements XFFJobResource, XWikiRestComponent
+{
+    @Inject
+    private XFFImportJobManager jobManager;
+
+    @Override
+    public XFFJobStatus getJob(String wikiName, String jobId) throws XWikiRestException
+    {
+        XFFImportJob job = this.jobManager.getJob(jobId);
+        if (job == null || !job.getWiki().equals(wikiName)) {
+            throw new WebApplicationException(Status.NOT_FOUND);
+        }
+        return job.getStatus();
+    }
+}
@@ -21,17 +21,45 @@ package org.xwiki.rest.internal.resources.xff;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
 import org.xwiki.filter.FilterEventParameters;
 import org.xwiki.filter.FilterException;
+import org.xwiki.filter.input.DefaultFileInputSource;
 import org.xwiki.filter.input.InputFilterStream;
 import org.xwiki.filter.input.InputFilterStreamFactory;
 import org.xwiki.filter.output.DefaultOutputStreamOutputTarget;
@@ -40,8 +68,11 @@ import org.xwiki.filter.output.OutputFilterStreamFactory;
 import org.xwiki.filter.output.OutputStreamOutputTarget;
 import org.xwiki.filter.type.FilterStreamType;
 import org.xwiki.filter.type.SystemType;
+import org.xwiki.model.reference.EntityReferenceSet;
+import org.xwiki.model.reference.WikiReference;
 import org.xwiki.rest.XWikiRestComponent;
 import org.xwiki.rest.XWikiRestException;
+import org.xwiki.rest.resources.xff.XFFJobResource;
 import org.xwiki.rest.resources.xff.XFFResource;
 
 /**
@@ -60,20 +91,46 @@ public class DefaultXFFResource implements XFFResource, XWikiRestComponent
 
     private static final String TRUE = "true";
 
-    private final FilterStreamType inputFilterStreamType = new FilterStreamType(SystemType.XWIKI, "xff", "1.0");
+    private static final String WIKIS = "wikis";
 
-    private final FilterStreamType outputFilterStreamType = FilterStreamType.XWIKI_INSTANCE;
+    private static final String SEPARATOR = "/";
+
+    private static final String TEMPORARY_PREFIX = "xff-import-";
+
+    private static final String TARGET = "target";
+
+    private final FilterStreamType xffFilterStreamType = new FilterStreamType(SystemType.XWIKI, "xff", "1.0");
+
+    private final FilterStreamType instanceFilterStreamType = FilterStreamType.XWIKI_INSTANCE;
 
     @Inject
     @Named("context")
     private Provider<ComponentManager> componentManagerProvider;
 
-    private FilterEventParameters getInputParameters(InputStream inputStream)
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    private XFFImportJobManager jobManager;
+
+    /**
+     * @param source is the package, either a stream or a {@link org.xwiki.filter.input.FileInputSource}
+     * @param wiki is the only wiki to read, or null to read the whole package
+     */
+    private FilterEventParameters getInputParameters(Object source, String wiki)
     {
         FilterEventParameters inputParameters = new FilterEventParameters();
         inputParameters.put(DEFAULT_ENCODING, DEFAULT_ENCODING_VALUE);
         inputParameters.put(DEFAULT_VERBOSE, TRUE);
-        inputParameters.put("source", inputStream);
+        inputParameters.put("source", source);
+        if (wiki != null) {
+            // Only the files of this wiki are read, the other ones are skipped without being inflated.
+            inputParameters.put("wiki", wiki);
+            inputParameters.put("randomAccess", TRUE);
+        }
         return inputParameters;
     }
 
@@ -83,89 +140,311 @@ public class DefaultXFFResource implements XFFResource, XWikiRestComponent
         outputParameters.put(DEFAULT_ENCODING, DEFAULT_ENCODING_VALUE);
         outputParameters.put("format", TRUE);
         outputParameters.put(DEFAULT_VERBOSE, TRUE);
-        outputParameters.put("target", outputStream);
+        outputParameters.put(TARGET, outputStream);
         return outputParameters;
     }
 
-    private InputFilterStream getInputFilterStream(FilterEventParameters inputParameters) throws XWikiRestException
+    private InputFilterStream getInputFilterStream(FilterStreamType type, FilterEventParameters inputParameters)
+        throws XWikiRestException
     {
         ComponentManager cm = this.componentManagerProvider.get();
         InputFilterStreamFactory inputFactory;
         InputFilterStream inputFilter;
         try {
-            inputFactory = cm.getInstance(InputFilterStreamFactory.class, inputFilterStreamType.serialize());
+            inputFactory = cm.getInstance(InputFilterStreamFactory.class, type.serialize());
         } catch (ComponentLookupException e) {
             String message =
-                String.format("Unable to get an component instance of input filter '%s'",
-                    inputFilterStreamType.serialize());
+                String.format("Unable to get an component instance of input filter '%s'", type.serialize());
             throw new XWikiRestException(message, e);
         }
         try {
             inputFilter = inputFactory.createInputFilterStream(inputParameters);
         } catch (FilterException e) {
-            String message = String.format("Unable to create input filter '%s'", inputFilterStreamType.serialize());
+            String message = String.format("Unable to create input filter '%s'", type.serialize());
             throw new XWikiRestException(message, e);
         }
         return inputFilter;
     }
 
-    private OutputFilterStream getOutputFilterStream(FilterEventParameters outputParameters) throws XWikiRestException
+    private OutputFilterStream getOutputFilterStream(FilterStreamType type, FilterEventParameters outputParameters)
+        throws XWikiRestException
     {
         ComponentManager cm = this.componentManagerProvider.get();
         OutputFilterStreamFactory outputFactory;
         OutputFilterStream outputFilter;
         try {
-            outputFactory = cm.getInstance(OutputFilterStreamFactory.class, outputFilterStreamType.serialize());
+            outputFactory = cm.getInstance(OutputFilterStreamFactory.class, type.serialize());
         } catch (ComponentLookupException e) {
             String message =
-                String.format("Unable to get an component instance of output filter '%s'",
-                    inputFilterStreamType.serialize());
+                String.format("Unable to get an component instance of output filter '%s'", type.serialize());
             throw new XWikiRestException(message, e);
         }
 
         try {
             outputFilter = outputFactory.createOutputFilterStream(outputParameters);
         } catch (FilterException e) {
-            String message = String.format("Unable to create output filter '%s'", outputFilterStreamType.serialize());
+            String message = String.format("Unable to create output filter '%s'", type.serialize());
             throw new XWikiRestException(message, e);
         }
         return outputFilter;
     }
 
-    private void convert(InputFilterStream inputFilter, OutputFilterStream outputFilter) throws XWikiRestException
+    private void convert(InputFilterStream inputFilter, OutputFilterStream outputFilter, FilterStreamType inputType,
+        FilterStreamType outputType, XFFImportJob job) throws XWikiRestException
     {
         try {
-            inputFilter.read(outputFilter.getFilter());
+            Object filter = outputFilter.getFilter();
+            inputFilter.read(job != null ? job.countEvents(filter) : filter);
         } catch (FilterException e) {
             String message =
-                String.format("Unable to filter from '%s' to '%s'", inputFilterStreamType.serialize(),
-                    outputFilterStreamType.serialize());
+                String.format("Unable to filter from '%s' to '%s'", inputType.serialize(), outputType.serialize());
             throw new XWikiRestException(message, e);
         }
     }
 
     @Override
-    public void postXFF(String wikiName, InputStream xff) throws XWikiRestException
+    public Response getXFF(final String wikiName) throws XWikiRestException
+    {
+        StreamingOutput xff = new StreamingOutput()
+        {
+            @Override
+            public void write(OutputStream outputStream) throws IOException
+            {
+                try {
+                    exportWiki(wikiName, outputStream);
+                } catch (XWikiRestException e) {
+                    throw new WebApplicationException(e);
+                }
+            }
+        };
+        String disposition = String.format("attachment; filename=\"%s.xff\"", wikiName);
+        return Response.ok(xff).header("Content-Disposition", disposition).build();
+    }
+
+    /**
+     * Export a wiki through a pipeline of input and output filters, the package being written as the documents are
+     * read.
+     */
+    private void exportWiki(String wikiName, OutputStream outputStream) throws XWikiRestException
+    {
+        FilterEventParameters inputParameters = new FilterEventParameters();
+        inputParameters.put("entities", new EntityReferenceSet().includes(new WikiReference(wikiName)));
+        FilterEventParameters outputParameters = new FilterEventParameters();
+        outputParameters.put(TARGET, new DefaultOutputStreamOutputTarget(outputStream, false));
+
+        // The filters are closed even when the export fails, the package being then left incomplete.
+        try (InputFilterStream inputFilter = this.getInputFilterStream(this.instanceFilterStreamType, inputParameters);
+            OutputFilterStream outputFilter = this.getOutputFilterStream(this.xffFilterStreamType, outputParameters)) {
+            this.convert(inputFilter, outputFilter, this.instanceFilterStreamType, this.xffFilterStreamType, null);
+        } catch (IOException e) {
+            throw new XWikiRestException("Unable to close filters", e);
+        }
+    }
+
+    @Override
+    public Response postXFF(String wikiName, final int threads, boolean async, InputStream xff)
+        throws XWikiRestException
+    {
+        if (!async && threads == 1) {
+            // Nothing is imported in parallel, so the package is read while it is uploaded.
+            importWiki(getInputParameters(xff, null), null);
+            return Response.noContent().build();
+        }
+
+        final Path packagePath = spool(xff);
+        if (!async) {
+            try {
+                importPackage(packagePath, threads, null);
+            } finally {
+                delete(packagePath);
+            }
+            return Response.noContent().build();
+        }
+
+        final ExecutionContext context = cloneContext();
+        XFFImportJob job = this.jobManager.submit(wikiName, new XFFImportJobManager.Task()
+        {
+            @Override
+            public void run(XFFImportJob importJob) throws Exception
+            {
+                execution.setContext(context);
+                try {
+                    importPackage(packagePath, threads, importJob);
+                } finally {
+                    execution.removeContext();
+                }
+            }
+
+            @Override
+            public void dispose()
+            {
+                delete(packagePath);
+            }
+        });
+        if (job == null) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).build();
+        }
+        URI location = UriBuilder.fromResource(XFFJobResource.class).build(wikiName, job.getId());
+        return Response.status(Status.ACCEPTED).location(location).entity(job.getStatus()).build();
+    }
+
+    /**
+     * Import a package, several wikis at the same time when possible.
+     *
+     * @param job is the asynchronous import counting the imported entities, or null
+     */
+    private void importPackage(Path packagePath, int threads, XFFImportJob job) throws XWikiRestException
+    {
+        List<String> wikis = getWikis(packagePath);
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (wikis.size() < 2 || parallelism < 2) {
+            importWiki(packagePath, null, job);
+        } else {
+            importWikis(packagePath, wikis, Math.min(parallelism, wikis.size()), job);
+        }
+    }
+
+    /**
+     * Clone the execution context of the request, on the thread of the request while the context is still in use, to
+     * give it to another thread.
+     */
+    private ExecutionContext cloneContext() throws XWikiRestException
+    {
+        try {
+            return this.executionContextManager.clone(this.execution.getContext());
+        } catch (ExecutionContextException e) {
+            throw new XWikiRestException("Unable to clone the execution context of the request", e);
+        }
+    }
+
+    private static void delete(Path packagePath)
+    {
+        try {
+            Files.deleteIfExists(packagePath);
+        } catch (IOException e) {
+            // The temporary file will be deleted with the temporary directory.
+        }
+    }
+
+    /**
+     * Copy the uploaded package in a temporary file, so that it can be read several times.
+     */
+    private Path spool(InputStream xff) throws XWikiRestException
+    {
+        try {
+            Path packagePath = Files.createTempFile(TEMPORARY_PREFIX, ".xff");
+            try {
+                Files.copy(xff, packagePath, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(packagePath);
+                throw e;
+            }
+            return packagePath;
+        } catch (IOException e) {
+            throw new XWikiRestException("Unable to copy the XFF package in a temporary file", e);
+        }
+    }
+
+    /**
+     * List the wikis of the package, to import them separately. When the package also contains files outside of the
+     * wikis (e.g. spaces of the current wiki) or cannot be read, an empty list is returned and the package is
+     * imported as a whole.
+     */
+    private List<String> getWikis(Path packagePath)
+    {
+        Set<String> wikis = new TreeSet<String>();
+        try (ZipFile zipFile = new ZipFile(packagePath.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String[] names = entry.getName().split(SEPARATOR, 3);
+                if (names.length < 3 || !WIKIS.equals(names[0])) {
+                    return Collections.emptyList();
+                }
+                wikis.add(names[1]);
+            }
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<String>(wikis);
+    }
+
+    /**
+     * Import the package, or only one of its wikis, through a pipeline of input and output filters.
+     */
+    private void importWiki(Path packagePath, String wiki, XFFImportJob job) throws XWikiRestException
+    {
+        importWiki(this.getInputParameters(new DefaultFileInputSource(packagePath.toFile()), wiki), job);
+    }
+
+    private void importWiki(FilterEventParameters inputParameters, XFFImportJob job) throws XWikiRestException
     {
         OutputStreamOutputTarget outputStream = new DefaultOutputStreamOutputTarget(null, true);
 
         // Create map of parameters
-        FilterEventParameters inputParameters = this.getInputParameters(xff);
         FilterEventParameters outputParameters = this.getOutputParameters(outputStream);
 
-        // Initialize the filters
-        InputFilterStream inputFilter = this.getInputFilterStream(inputParameters);
-        OutputFilterStream outputFilter = this.getOutputFilterStream(outputParameters);
+        // Initialize the filters, closed even when the conversion fails
+        try (InputFilterStream inputFilter = this.getInputFilterStream(this.xffFilterStreamType, inputParameters);
+            OutputFilterStream outputFilter =
+                this.getOutputFilterStream(this.instanceFilterStreamType, outputParameters)) {
+            // Do the conversion
+            this.convert(inputFilter, outputFilter, this.xffFilterStreamType, this.instanceFilterStreamType, job);
+        } catch (IOException e) {
+            throw new XWikiRestException("Unable to close filters", e);
+        }
+    }
 
-        // Do the conversion
-        this.convert(inputFilter, outputFilter);
+    /**
+     * Import each wiki of the package with its own pipeline, several at the same time. Each thread works in a clone of
+     * the execution context of the request.
+     */
+    private void importWikis(final Path packagePath, List<String> wikis, int parallelism, final XFFImportJob job)
+        throws XWikiRestException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(wikis.size());
+            for (final String wiki : wikis) {
+                final ExecutionContext context = cloneContext();
+                futures.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        execution.setContext(context);
+                        try {
+                            importWiki(packagePath, wiki, job);
+                        } finally {
+                            execution.removeContext();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                waitFor(futures.get(i), wikis.get(i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        // Close filters
+    private void waitFor(Future<Void> future, String wiki) throws XWikiRestException
+    {
         try {
-            inputFilter.close();
-            outputFilter.close();
-        } catch (IOException e) {
-            throw new XWikiRestException("Unable to close filters", e);
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XWikiRestException(String.format("Interrupted while importing the wiki '%s'", wiki), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XWikiRestException) {
+                throw (XWikiRestException) e.getCause();
+            }
+            throw new XWikiRestException(String.format("Unable to import the wiki '%s'", wiki), e.getCause());
         }
     }
 }
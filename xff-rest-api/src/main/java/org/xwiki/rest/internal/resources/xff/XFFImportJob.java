@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.internal.resources.xff;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xwiki.filter.xff.input.FilterInterceptor;
+import org.xwiki.rest.resources.xff.XFFJobStatus;
+import org.xwiki.rest.resources.xff.XFFJobStatus.State;
+
+/**
+ * An asynchronous XFF import, counting the entities sent to the output filter to report its progress.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+public class XFFImportJob
+{
+    private static final String BEGIN_DOCUMENT = "beginWikiDocument";
+
+    private static final String BEGIN_OBJECT = "beginWikiObject";
+
+    private static final String ON_ATTACHMENT = "onWikiAttachment";
+
+    /**
+     * Index of the size in the parameters of {@code onWikiAttachment}.
+     */
+    private static final int ATTACHMENT_SIZE_INDEX = 2;
+
+    private final String id;
+
+    private final String wiki;
+
+    private volatile State state = State.WAITING;
+
+    private final AtomicLong pages = new AtomicLong();
+
+    private final AtomicLong objects = new AtomicLong();
+
+    private final AtomicLong attachments = new AtomicLong();
+
+    private final AtomicLong attachmentBytes = new AtomicLong();
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    private volatile String error;
+
+    /**
+     * @param id is the id of the import
+     * @param wiki is the name of the wiki where the package is imported
+     */
+    public XFFImportJob(String id, String wiki)
+    {
+        this.id = id;
+        this.wiki = wiki;
+    }
+
+    /**
+     * @return the id of the import
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @return the name of the wiki where the package is imported
+     */
+    public String getWiki()
+    {
+        return this.wiki;
+    }
+
+    /**
+     * @return true if the import is done or has failed
+     */
+    public boolean isFinished()
+    {
+        return this.state == State.DONE || this.state == State.FAILED;
+    }
+
+    /**
+     * Called when the import starts running.
+     */
+    public void start()
+    {
+        this.startTime = System.nanoTime();
+        this.state = State.RUNNING;
+    }
+
+    /**
+     * Called when the import is finished.
+     *
+     * @param failure is the reason of the failure, or null if the import is done
+     */
+    public void finish(Throwable failure)
+    {
+        this.endTime = System.nanoTime();
+        if (failure != null) {
+            this.error = failure.getMessage() != null ? failure.getMessage() : failure.getClass().getName();
+            this.state = State.FAILED;
+        } else {
+            this.state = State.DONE;
+        }
+    }
+
+    /**
+     * Wrap the filter of the output filter stream to count the pages, objects and attachments it receives.
+     *
+     * @param filter is the filter of the output filter stream
+     * @return a filter implementing the same interfaces, counting the events before sending them to the filter
+     */
+    public Object countEvents(Object filter)
+    {
+        return new FilterInterceptor(filter)
+        {
+            @Override
+            protected Object intercept(Method method, Object[] args) throws Throwable
+            {
+                count(method.getName(), args);
+                return proceed(method, args);
+            }
+        }.createProxy();
+    }
+
+    private void count(String event, Object[] args)
+    {
+        if (BEGIN_DOCUMENT.equals(event)) {
+            this.pages.incrementAndGet();
+        } else if (BEGIN_OBJECT.equals(event)) {
+            this.objects.incrementAndGet();
+        } else if (ON_ATTACHMENT.equals(event)) {
+            this.attachments.incrementAndGet();
+            if (args != null && args.length > ATTACHMENT_SIZE_INDEX && args[ATTACHMENT_SIZE_INDEX] instanceof Long) {
+                this.attachmentBytes.addAndGet((Long) args[ATTACHMENT_SIZE_INDEX]);
+            }
+        }
+    }
+
+    /**
+     * @return the current status of the import
+     */
+    public XFFJobStatus getStatus()
+    {
+        XFFJobStatus status = new XFFJobStatus();
+        status.setId(this.id);
+        status.setWiki(this.wiki);
+        status.setState(this.state);
+        status.setPages(this.pages.get());
+        status.setObjects(this.objects.get());
+        status.setAttachments(this.attachments.get());
+        status.setAttachmentBytes(this.attachmentBytes.get());
+        status.setError(this.error);
+        if (this.state != State.WAITING) {
+            long end = isFinished() ? this.endTime : System.nanoTime();
+            long duration = end - this.startTime;
+            status.setDuration(TimeUnit.NANOSECONDS.toMillis(duration));
+            if (duration > 0) {
+                long entities = status.getPages() + status.getObjects() + status.getAttachments();
+                status.setThroughput((double) entities * TimeUnit.SECONDS.toNanos(1) / duration);
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.internal.resources.xff;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+
+/**
+ * Run the asynchronous XFF imports on a bounded pool of threads, and keep them to report their progress.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Component(roles = XFFImportJobManager.class)
+@Singleton
+public class XFFImportJobManager implements Disposable
+{
+    /**
+     * Number of imports running at the same time.
+     */
+    private static final int THREADS = 2;
+
+    /**
+     * Number of imports waiting for a thread, above which new imports are refused.
+     */
+    private static final int QUEUE_SIZE = 16;
+
+    /**
+     * Number of finished imports kept to be polled.
+     */
+    private static final int MAX_FINISHED_JOBS = 100;
+
+    /**
+     * The work of an import.
+     */
+    public interface Task
+    {
+        /**
+         * Run the import.
+         *
+         * @param job is the import, to count the imported entities
+         * @throws Exception if the import fails
+         */
+        void run(XFFImportJob job) throws Exception;
+
+        /**
+         * Release the resources of the import when it is refused or finished.
+         */
+        void dispose();
+    }
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(QUEUE_SIZE));
+
+    private final Map<String, XFFImportJob> jobs = new ConcurrentHashMap<String, XFFImportJob>();
+
+    /**
+     * Ids of the finished imports, from the oldest to the most recent.
+     */
+    private final Queue<String> finishedJobs = new ConcurrentLinkedQueue<String>();
+
+    /**
+     * Start an import in the background.
+     *
+     * @param wiki is the name of the wiki where the package is imported
+     * @param task is the work of the import
+     * @return the import, or null if too many imports are already waiting
+     */
+    public XFFImportJob submit(String wiki, final Task task)
+    {
+        final XFFImportJob job = new XFFImportJob(UUID.randomUUID().toString(), wiki);
+        this.jobs.put(job.getId(), job);
+        try {
+            this.executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    job.start();
+                    try {
+                        task.run(job);
+                        job.finish(null);
+                    } catch (Exception e) {
+                        job.finish(e);
+                    } catch (Error e) {
+                        // The import is not left running forever.
+                        job.finish(e);
+                        throw e;
+                    } finally {
+                        task.dispose();
+                        forgetFinishedJobs(job);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.jobs.remove(job.getId());
+            task.dispose();
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * @param id is the id of an import
+     * @return the import, or null if it does not exist (anymore)
+     */
+    public XFFImportJob getJob(String id)
+    {
+        return this.jobs.get(id);
+    }
+
+    /**
+     * Forget the oldest finished imports when there are too many of them.
+     */
+    private void forgetFinishedJobs(XFFImportJob job)
+    {
+        this.finishedJobs.add(job.getId());
+        while (this.finishedJobs.size() > MAX_FINISHED_JOBS) {
+            String id = this.finishedJobs.poll();
+            if (id != null) {
+                this.jobs.remove(id);
+            }
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.executor.shutdownNow();
+    }
+}
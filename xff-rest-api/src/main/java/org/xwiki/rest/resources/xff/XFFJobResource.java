@@ -0,0 +1,48 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.resources.xff;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+
+import org.xwiki.rest.XWikiRestException;
+
+/**
+ * Follow an asynchronous XFF import started with {@link XFFResource}.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@Path("/wikis/{wikiName}/xff/jobs/{jobId}")
+public interface XFFJobResource
+{
+    /**
+     * Get the progress of an import.
+     *
+     * @param wikiName is the name of the wiki where the package is imported
+     * @param jobId is the id returned when the import has been started
+     * @return the status of the import
+     * @throws XWikiRestException when any problem is raised
+     */
+    @GET
+    XFFJobStatus getJob(@PathParam("wikiName") String wikiName, @PathParam("jobId") String jobId)
+        throws XWikiRestException;
+}
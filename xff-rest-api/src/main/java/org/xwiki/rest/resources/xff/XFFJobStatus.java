@@ -0,0 +1,230 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.resources.xff;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * Status of an asynchronous XFF import, as returned by {@link XFFJobResource}.
+ *
+ * @version $Id$
+ * @since 0.4.1
+ */
+@XmlRootElement(name = "xffJob")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class XFFJobStatus
+{
+    /**
+     * State of an import.
+     */
+    public enum State
+    {
+        /** The import is waiting for a thread. */
+        WAITING,
+        /** The import is running. */
+        RUNNING,
+        /** The import is finished. */
+        DONE,
+        /** The import has failed. */
+        FAILED
+    }
+
+    private String id;
+
+    private String wiki;
+
+    private State state;
+
+    private long pages;
+
+    private long objects;
+
+    private long attachments;
+
+    private long attachmentBytes;
+
+    private long duration;
+
+    private double throughput;
+
+    private String error;
+
+    /**
+     * @return the id of the import
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @param id is the id of the import
+     */
+    public void setId(String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return the name of the wiki where the package is imported
+     */
+    public String getWiki()
+    {
+        return this.wiki;
+    }
+
+    /**
+     * @param wiki is the name of the wiki where the package is imported
+     */
+    public void setWiki(String wiki)
+    {
+        this.wiki = wiki;
+    }
+
+    /**
+     * @return the state of the import
+     */
+    public State getState()
+    {
+        return this.state;
+    }
+
+    /**
+     * @param state is the state of the import
+     */
+    public void setState(State state)
+    {
+        this.state = state;
+    }
+
+    /**
+     * @return the number of pages imported so far
+     */
+    public long getPages()
+    {
+        return this.pages;
+    }
+
+    /**
+     * @param pages is the number of pages imported so far
+     */
+    public void setPages(long pages)
+    {
+        this.pages = pages;
+    }
+
+    /**
+     * @return the number of objects imported so far
+     */
+    public long getObjects()
+    {
+        return this.objects;
+    }
+
+    /**
+     * @param objects is the number of objects imported so far
+     */
+    public void setObjects(long objects)
+    {
+        this.objects = objects;
+    }
+
+    /**
+     * @return the number of attachments imported so far
+     */
+    public long getAttachments()
+    {
+        return this.attachments;
+    }
+
+    /**
+     * @param attachments is the number of attachments imported so far
+     */
+    public void setAttachments(long attachments)
+    {
+        this.attachments = attachments;
+    }
+
+    /**
+     * @return the size of the attachments imported so far, in bytes
+     */
+    public long getAttachmentBytes()
+    {
+        return this.attachmentBytes;
+    }
+
+    /**
+     * @param attachmentBytes is the size of the attachments imported so far, in bytes
+     */
+    public void setAttachmentBytes(long attachmentBytes)
+    {
+        this.attachmentBytes = attachmentBytes;
+    }
+
+    /**
+     * @return the time spent importing so far, in milliseconds
+     */
+    public long getDuration()
+    {
+        return this.duration;
+    }
+
+    /**
+     * @param duration is the time spent importing so far, in milliseconds
+     */
+    public void setDuration(long duration)
+    {
+        this.duration = duration;
+    }
+
+    /**
+     * @return the number of pages, objects and attachments imported per second
+     */
+    public double getThroughput()
+    {
+        return this.throughput;
+    }
+
+    /**
+     * @param throughput is the number of pages, objects and attachments imported per second
+     */
+    public void setThroughput(double throughput)
+    {
+        this.throughput = throughput;
+    }
+
+    /**
+     * @return the reason of the failure, when the import has failed
+     */
+    public String getError()
+    {
+        return this.error;
+    }
+
+    /**
+     * @param error is the reason of the failure
+     */
+    public void setError(String error)
+    {
+        this.error = error;
+    }
+}
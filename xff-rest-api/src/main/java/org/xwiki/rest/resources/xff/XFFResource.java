@@ -21,9 +21,14 @@ package org.xwiki.rest.resources.xff;
 
 import java.io.InputStream;
 
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
 
 import org.xwiki.rest.XWikiRestException;
 
@@ -33,14 +38,33 @@ import org.xwiki.rest.XWikiRestException;
 @Path("/wikis/{wikiName}/xff")
 public interface XFFResource
 {
+    /**
+     * Export a wiki in XFF format. The package is written in the response while the wiki is read, so that a whole wiki
+     * can be exported without keeping it in memory or on disk.
+     *
+     * @param wikiName is the name of the wiki to export
+     * @return the response, streaming the zip file
+     * @throws XWikiRestException when any problem is raised
+     * @since 0.4.1
+     */
+    @GET
+    @Produces("application/zip")
+    Response getXFF(@PathParam("wikiName") String wikiName) throws XWikiRestException;
 
     /**
-     * Import a XFF format into a wiki.
+     * Import a XFF format into a wiki. When the package contains several wikis, they can be imported in parallel. An
+     * asynchronous import returns {@code 202 Accepted} with the status of the import, whose progress can then be
+     * followed with {@link XFFJobResource}, or {@code 503 Service Unavailable} when too many imports are waiting.
      * 
      * @param wikiName is the name of the wiki where to import
+     * @param threads is the maximum number of wikis imported at the same time, 0 to use all the available processors;
+     *            with 1, the default, a synchronous import reads the package while it is uploaded
+     * @param async true to import the package in the background instead of waiting for the end of the import
      * @param xff contain the zip file
+     * @return the response, with the status of the import when it is asynchronous
      * @throws XWikiRestException when any problem is raised
      */
     @POST
-    void postXFF(@PathParam("wikiName") String wikiName, InputStream xff) throws XWikiRestException;
+    Response postXFF(@PathParam("wikiName") String wikiName, @QueryParam("threads") @DefaultValue("1") int threads,
+        @QueryParam("async") @DefaultValue("false") boolean async, InputStream xff) throws XWikiRestException;
 }